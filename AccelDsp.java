@@ -0,0 +1,88 @@
+package com.example.neuroridev2;
+
+// Per-board DSP for the raw 3-axis stream (frame type 0x03). The caller fills ax/ay/az (g) for
+// one frame's samples and calls process(n, periodSec); one pass over the primitive arrays then
+// produces, per sample:
+//
+//   mag    |a|
+//   smooth |a| through a first-order low-pass at smoothHz (road buzz removed)
+//   dyn    |a - gravity|, the high-passed part: what the rider feels on top of 1 g
+//   jerk   |a[i] - a[i-1]| / dt, g/s
+//   tilt   angle between the board's z axis and gravity, degrees (0 = upright)
+//   lean   signed roll about the board's x (forward) axis, degrees, right side down positive
+//
+// gravity is each axis low-passed at gravityHz, so a sustained lean shows up after ~1/gravityHz
+// and brief knocks don't. Filter state carries over between frames; reset() after a gap.
+// Plain Java, no allocation after construction; AccelDspTestRunner checks its throughput.
+public final class AccelDsp {
+
+    public static final class Config {
+        public double gravityHz = 0.5;
+        public double smoothHz = 5.0;
+    }
+
+    // Largest frame: the count byte of a type 0x03 frame
+    public static final int CAPACITY = 255;
+
+    // Inputs
+    public final float[] ax = new float[CAPACITY], ay = new float[CAPACITY], az = new float[CAPACITY];
+    // Outputs, valid for [0, n) after process(n, ...)
+    public final float[] mag = new float[CAPACITY], smooth = new float[CAPACITY], dyn = new float[CAPACITY];
+    public final float[] jerk = new float[CAPACITY], tilt = new float[CAPACITY], lean = new float[CAPACITY];
+
+    private static final double RAD_TO_DEG = 180.0 / Math.PI;
+
+    private final Config cfg;
+    private double dt = -1, kGravity, kSmooth;   // filter coefficients for the current period
+    private boolean primed;
+    private double gx, gy, gz, lp, px, py, pz;   // state carried across frames
+
+    public AccelDsp(Config cfg) { this.cfg = cfg; }
+
+    public void reset() { primed = false; }
+
+    public void process(int n, double periodSec) {
+        if (n <= 0) return;
+        if (periodSec <= 0) periodSec = 0.005;
+        if (periodSec != dt) {
+            dt = periodSec;
+            kGravity = alpha(cfg.gravityHz, dt);
+            kSmooth = alpha(cfg.smoothHz, dt);
+        }
+        double invDt = 1.0 / dt;
+        if (!primed) {
+            gx = px = ax[0]; gy = py = ay[0]; gz = pz = az[0];
+            lp = Math.sqrt(gx * gx + gy * gy + gz * gz);
+            primed = true;
+        }
+        double gx = this.gx, gy = this.gy, gz = this.gz, lp = this.lp, px = this.px, py = this.py, pz = this.pz;
+        final double kG = kGravity, kS = kSmooth;
+
+        for (int i = 0; i < n; i++) {
+            double x = ax[i], y = ay[i], z = az[i];
+            double m = Math.sqrt(x * x + y * y + z * z);
+            gx += kG * (x - gx);
+            gy += kG * (y - gy);
+            gz += kG * (z - gz);
+            lp += kS * (m - lp);
+            double hx = x - gx, hy = y - gy, hz = z - gz;
+            double jx = x - px, jy = y - py, jz = z - pz;
+            px = x; py = y; pz = z;
+
+            double gm = Math.sqrt(gx * gx + gy * gy + gz * gz);
+            mag[i] = (float) m;
+            smooth[i] = (float) lp;
+            dyn[i] = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+            jerk[i] = (float) (Math.sqrt(jx * jx + jy * jy + jz * jz) * invDt);
+            tilt[i] = gm > 1e-6 ? (float) (Math.acos(Math.max(-1, Math.min(1, gz / gm))) * RAD_TO_DEG) : Float.NaN;
+            lean[i] = (float) (Math.atan2(gy, gz) * RAD_TO_DEG);
+        }
+        this.gx = gx; this.gy = gy; this.gz = gz; this.lp = lp; this.px = px; this.py = py; this.pz = pz;
+    }
+
+    // First-order IIR coefficient for a cutoff at hz, sampled every dt seconds
+    static double alpha(double hz, double dt) {
+        double rc = 1.0 / (2 * Math.PI * hz);
+        return dt / (rc + dt);
+    }
+}
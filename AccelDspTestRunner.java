@@ -0,0 +1,52 @@
+package com.example.neuroridev2;
+
+import java.util.Locale;
+import java.util.Random;
+
+// Runs AccelDsp flat out on 200 Hz frames of 37 samples (MTU 247) and checks that it keeps up
+// with at least 10x the fastest sample rate the firmware sends.
+//
+//   java com.example.neuroridev2.AccelDspTestRunner [seconds]
+public final class AccelDspTestRunner {
+
+    static final int TARGET_HZ = 200;
+
+    public static void main(String[] args) {
+        final int perFrame = TelemetryCodec.accelCapacity(247);
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+        AccelDsp dsp = new AccelDsp(new AccelDsp.Config());
+        Random rnd = new Random(1);
+        float[][] frames = new float[64][perFrame * 3];
+        for (float[] f : frames) {
+            for (int i = 0; i < perFrame; i++) {
+                f[i * 3] = (float) (rnd.nextGaussian() * 0.2);
+                f[i * 3 + 1] = (float) (0.3 + rnd.nextGaussian() * 0.2);
+                f[i * 3 + 2] = (float) (0.95 + rnd.nextGaussian() * 0.2);
+            }
+        }
+
+        double sink = 0;
+        long samples = 0, t0 = System.nanoTime(), warmEnd = t0 + 500_000_000L, start = 0;
+        long end = warmEnd + (long) (seconds * 1e9);
+        for (int k = 0; ; k++) {
+            float[] f = frames[k & 63];
+            for (int i = 0; i < perFrame; i++) { dsp.ax[i] = f[i * 3]; dsp.ay[i] = f[i * 3 + 1]; dsp.az[i] = f[i * 3 + 2]; }
+            dsp.process(perFrame, 1.0 / TARGET_HZ);
+            sink += dsp.lean[perFrame - 1];
+            if ((k & 255) != 0) continue;
+            long now = System.nanoTime();
+            if (start == 0) { if (now >= warmEnd) { start = now; samples = 0; } continue; }
+            samples += 256L * perFrame;
+            if (now >= end) {
+                double rate = samples / ((now - start) / 1e9);
+                System.out.println(String.format(Locale.US, "%d samples/frame: %.0f samples/s, %.0fx %d Hz",
+                        perFrame, rate, rate / TARGET_HZ, TARGET_HZ));
+                Checks.check("lean computed", sink != 0);
+                Checks.check("at least 10x " + TARGET_HZ + " Hz", rate >= 10.0 * TARGET_HZ);
+                Checks.exit();
+            }
+        }
+    }
+
+    private AccelDspTestRunner() {}
+}
@@ -0,0 +1,522 @@
+package com.example.neuroridev2;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.BluetoothProfile;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+// GATT link to the ESP32 as a TelemetryTransport, with reconnects handled here instead of by the user.
+//
+//   IDLE --start--> SCANNING (no known device) or CONNECTING (direct, to the cached address)
+//   SCANNING --found--> CONNECTING --connected--> SETUP (MTU, services, CCCD via GattOpQueue) --> READY
+//   any failure or link loss --> WAITING --backoff--> CONNECTING / SCANNING ... until stop()
+//
+// Scans use hardware ScanFilters (service UUID, or the name for firmware that doesn't advertise
+// it). The device address is cached across launches, so a reconnect skips scanning entirely; every
+// few failed attempts a scan runs instead, in case the rider switched boards. A manager pinned to
+// one address (MultiDeviceSessions, one per board) never caches and only scans for that address.
+//
+// All state lives on a private handler thread, and every listener callback is made there:
+// notifications are posted from the binder thread behind the setup callbacks, so the listener
+// sees onSchema, onConnected, onFrame and onDisconnected one at a time and in order.
+//
+// As a LinkControl it applies LinkTuner's choices (connection priority, preferred PHY, the
+// board's sample rate via the optional control characteristic) as optional GATT operations, and
+// re-applies the latest ones after every reconnect.
+//
+// Boards with a schema characteristic have it read on every connect, before notifications are
+// enabled, and passed to the listener's onSchema (see TelemetrySchema); failing that read is not fatal.
+public final class BleConnectionManager implements TelemetryTransport, TelemetryTransport.LinkControl {
+
+    public static final int IDLE = 0, SCANNING = 1, CONNECTING = 2, SETUP = 3, READY = 4, WAITING = 5;
+
+    // Status passed to StateListener when a call failed for lack of BLUETOOTH_SCAN / _CONNECT
+    public static final int STATUS_NO_PERMISSION = -100;
+    // Status when a scan ended without finding the device
+    public static final int STATUS_NOT_FOUND = -101;
+    // Status when the device connected but lacks the service or data characteristic
+    public static final int STATUS_WRONG_DEVICE = -102;
+
+    // GATT status codes seen from the ESP32
+    public static final int GATT_CONN_TIMEOUT = 8;          // supervision timeout: out of range / powered off
+    public static final int GATT_CONN_TERMINATE_PEER = 19;  // board reset or closed the link
+    public static final int GATT_CONN_FAIL_ESTABLISH = 62;  // connect request not answered
+    public static final int GATT_ERROR = 133;               // generic stack failure, needs a fresh BluetoothGatt
+
+    public interface StateListener {
+        // Called on the manager's thread; status is the GATT status behind the change, 0 if none.
+        void onStateChanged(int state, int status);
+    }
+
+    private static final String TAG = "NeuroRideBLE";
+    private static final UUID CCC_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+    private static final String PREFS = "ble";
+    private static final String KEY_ADDRESS = "last_address";
+
+    private static final int REQUEST_MTU = 247;
+    private static final long SCAN_TIMEOUT_MS = 10_000;
+    private static final long CONNECT_TIMEOUT_MS = 5_000;   // the stack's own direct-connect timeout is ~30 s
+    private static final long OP_TIMEOUT_MS = 3_000;
+    private static final long BACKOFF_MIN_MS = 200;
+    private static final long BACKOFF_MAX_MS = 15_000;
+    private static final int SCAN_EVERY_N_ATTEMPTS = 4;
+
+    private final Context ctx;
+    private final String targetName;
+    private final UUID serviceUuid, charUuid;
+    private final SharedPreferences prefs;
+    private final HandlerThread thread = new HandlerThread("ble-conn");
+    private final Handler handler;
+    private final GattOpQueue ops;
+    private final Random jitter = new Random();
+
+    // ===== Handler-thread state =====
+    private int state = IDLE;
+    private boolean wanted;          // start() called and not stopped: keep reconnecting
+    private boolean everReady;       // reached READY once this session; a failed first scan then retries
+    private int attempt;
+    private BluetoothGatt gatt;
+    private BluetoothGattCharacteristic dataChar;
+    private volatile BluetoothGattCharacteristic controlChar;   // null: firmware without one
+    private volatile UUID controlUuid;
+    private volatile UUID schemaUuid;
+    private int wantPriority = -1, wantPhyMask, wantRateHz;      // last LinkControl requests
+    private volatile int phy = BluetoothDevice.PHY_LE_1M;
+    private String address;
+    private final boolean pinned;
+    private volatile int mtu = 23;
+    private long lostAtMs;           // when the link dropped, for time-to-first-sample
+    private boolean awaitingFirstFrame;
+
+    private volatile Listener listener;
+    private volatile StateListener stateListener;
+    private volatile boolean connected;
+
+    public BleConnectionManager(Context ctx, String targetName, UUID serviceUuid, UUID charUuid) {
+        this(ctx, targetName, serviceUuid, charUuid, null);
+    }
+
+    // pinnedAddress != null: always this board, nothing cached
+    public BleConnectionManager(Context ctx, String targetName, UUID serviceUuid, UUID charUuid,
+                                String pinnedAddress) {
+        this.ctx = ctx.getApplicationContext();
+        this.targetName = targetName;
+        this.serviceUuid = serviceUuid;
+        this.charUuid = charUuid;
+        this.prefs = this.ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.pinned = pinnedAddress != null;
+        this.address = pinned ? pinnedAddress : prefs.getString(KEY_ADDRESS, null);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        ops = new GattOpQueue(handler, (name, status) -> linkFailed(status));
+    }
+
+    public void setStateListener(StateListener l) { stateListener = l; }
+
+    // Characteristic for control writes (TelemetryCodec TYPE_SET_RATE); looked up on the next connect.
+    public void setControlUuid(UUID uuid) { controlUuid = uuid; }
+
+    // Characteristic holding the board's TelemetrySchema; read on the next connect.
+    public void setSchemaUuid(UUID uuid) { schemaUuid = uuid; }
+
+    // ===== TelemetryTransport =====
+
+    @Override public void start(Listener l) {
+        listener = l;
+        handler.post(() -> {
+            if (wanted) return;
+            wanted = true;
+            everReady = false;
+            attempt = 0;
+            lostAtMs = SystemClock.elapsedRealtime();
+            nextAttempt();
+        });
+    }
+
+    @Override public void stop() {
+        handler.post(() -> {
+            wanted = false;
+            handler.removeCallbacksAndMessages(null);
+            stopScan();
+            closeGatt(0);
+            setState(IDLE, 0);
+        });
+    }
+
+    @Override public boolean isConnected() { return connected; }
+
+    public int state() { return state; }
+    public String address() { return address; }
+    public int mtu()   { return mtu; }
+    public int phy()   { return phy; }
+
+    // Stops for good and ends the handler thread.
+    public void release() {
+        stop();
+        thread.quitSafely();
+    }
+
+    // Forgets the cached device so the next start() scans again.
+    public void forgetDevice() {
+        if (pinned) return;
+        handler.post(() -> {
+            address = null;
+            prefs.edit().remove(KEY_ADDRESS).apply();
+        });
+    }
+
+    // ===== LinkControl (any thread) =====
+
+    @Override public void setConnectionPriority(int priority) {
+        handler.post(() -> {
+            wantPriority = priority;
+            if (state == READY) applyPriority();
+        });
+    }
+
+    @Override public void setPhy2M(boolean prefer2M) {
+        handler.post(() -> {
+            wantPhyMask = prefer2M ? BluetoothDevice.PHY_LE_2M_MASK : BluetoothDevice.PHY_LE_1M_MASK;
+            if (state == READY) applyPhy();
+        });
+    }
+
+    @Override public boolean requestSampleRate(int hz) {
+        if (connected && controlChar == null) return false;
+        handler.post(() -> {
+            wantRateHz = hz;
+            if (state == READY) applyRate();
+        });
+        return true;
+    }
+
+    private void applyPriority() {
+        int p = wantPriority;
+        if (p < 0) return;
+        ops.enqueueOptional("requestConnectionPriority", 0, g -> g.requestConnectionPriority(p));
+    }
+
+    private void applyPhy() {
+        int mask = wantPhyMask;
+        if (mask == 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        ops.enqueueOptional("setPreferredPhy", OP_TIMEOUT_MS, g -> {
+            g.setPreferredPhy(mask, mask, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+            return true;
+        });
+    }
+
+    private void applyRate() {
+        int hz = wantRateHz;
+        BluetoothGattCharacteristic c = controlChar;
+        if (hz <= 0 || c == null) return;
+        byte[] cmd = TelemetryCodec.encodeSetRate(hz);
+        ops.enqueueOptional("setSampleRate", OP_TIMEOUT_MS, g -> {
+            c.setValue(cmd);
+            c.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+            return g.writeCharacteristic(c);
+        });
+    }
+
+    // ===== Attempts and backoff =====
+
+    private void nextAttempt() {
+        if (!wanted) return;
+        attempt++;
+        boolean scan = address == null || attempt % SCAN_EVERY_N_ATTEMPTS == 0;
+        if (scan) startScan();
+        else connect(address);
+    }
+
+    private void linkFailed(int status) {
+        if (!wanted) return;
+        boolean wasReady = state == READY;
+        stopScan();
+        closeGatt(status);
+        if (wasReady) {
+            attempt = 0;
+            lostAtMs = SystemClock.elapsedRealtime();
+        }
+        // A board that reset or dropped out of range is usually advertising again right away
+        long delay = wasReady && status != GATT_ERROR ? 0 : backoffMs();
+        Log.w(TAG, "Link failed (status " + status + "), retry #" + (attempt + 1) + " in " + delay + " ms");
+        setState(WAITING, status);
+        handler.postDelayed(this::nextAttempt, delay);
+    }
+
+    private long backoffMs() {
+        int exp = Math.min(attempt, 16);
+        long base = Math.min(BACKOFF_MAX_MS, BACKOFF_MIN_MS << exp);
+        return base / 2 + (long) (jitter.nextDouble() * base / 2);
+    }
+
+    // ===== Scan (hardware filtered) =====
+
+    private BluetoothLeScanner scanner() {
+        BluetoothManager mgr = ctx.getSystemService(BluetoothManager.class);
+        BluetoothAdapter a = mgr != null ? mgr.getAdapter() : null;
+        return a != null ? a.getBluetoothLeScanner() : null;
+    }
+
+    private void startScan() {
+        BluetoothLeScanner s = scanner();
+        if (s == null) { linkFailed(0); return; }
+        List<ScanFilter> filters = new ArrayList<>();
+        if (pinned) {
+            filters.add(new ScanFilter.Builder().setDeviceAddress(address).build());
+        } else {
+            filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(serviceUuid)).build());
+            filters.add(new ScanFilter.Builder().setDeviceName(targetName).build());   // firmware without the UUID in its advert
+        }
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
+                .build();
+        try {
+            s.startScan(filters, settings, scanCallback);
+        } catch (SecurityException se) {
+            permissionLost();
+            return;
+        }
+        setState(SCANNING, 0);
+        handler.postDelayed(scanTimeout, SCAN_TIMEOUT_MS);
+    }
+
+    private final Runnable scanTimeout = () -> {
+        stopScan();
+        if (!everReady && address == null) {
+            // Nothing to reconnect to: give up until the user presses Sync again
+            wanted = false;
+            setState(IDLE, STATUS_NOT_FOUND);
+        } else {
+            linkFailed(STATUS_NOT_FOUND);
+        }
+    };
+
+    private void stopScan() {
+        handler.removeCallbacks(scanTimeout);
+        if (state != SCANNING) return;
+        BluetoothLeScanner s = scanner();
+        try { if (s != null) s.stopScan(scanCallback); } catch (SecurityException ignored) {}
+    }
+
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override public void onScanResult(int callbackType, ScanResult result) {
+            BluetoothDevice device = result.getDevice();
+            handler.post(() -> {
+                if (state != SCANNING) return;
+                Log.d(TAG, "Found " + targetName + " [" + device.getAddress() + "]");
+                stopScan();
+                connect(device.getAddress());
+            });
+        }
+
+        @Override public void onScanFailed(int errorCode) {
+            handler.post(() -> { if (state == SCANNING) linkFailed(errorCode); });
+        }
+    };
+
+    // ===== Connect -> MTU -> services -> CCCD =====
+
+    private void connect(String addr) {
+        BluetoothManager mgr = ctx.getSystemService(BluetoothManager.class);
+        BluetoothAdapter a = mgr != null ? mgr.getAdapter() : null;
+        if (a == null || !BluetoothAdapter.checkBluetoothAddress(addr)) { linkFailed(0); return; }
+        closeGatt(0);
+        setState(CONNECTING, 0);
+        try {
+            // autoConnect=false: a direct connection, which the stack attempts at once
+            gatt = a.getRemoteDevice(addr).connectGatt(ctx, false, gattCallback, BluetoothDevice.TRANSPORT_LE);
+        } catch (SecurityException se) {
+            permissionLost();
+            return;
+        }
+        if (gatt == null) { linkFailed(GATT_ERROR); return; }
+        ops.attach(gatt);
+        handler.postDelayed(connectTimeout, CONNECT_TIMEOUT_MS);
+    }
+
+    private final Runnable connectTimeout = () -> {
+        if (state == CONNECTING) linkFailed(GATT_CONN_FAIL_ESTABLISH);
+    };
+
+    private void onConnected() {
+        handler.removeCallbacks(connectTimeout);
+        setState(SETUP, 0);
+        ops.enqueue("requestMtu", OP_TIMEOUT_MS, x -> x.requestMtu(REQUEST_MTU));
+        ops.enqueue("discoverServices", OP_TIMEOUT_MS, BluetoothGatt::discoverServices);
+    }
+
+    private void onServices(BluetoothGatt g) {
+        BluetoothGattService svc = g.getService(serviceUuid);
+        dataChar = svc != null ? svc.getCharacteristic(charUuid) : null;
+        UUID ctrl = controlUuid;
+        controlChar = svc != null && ctrl != null ? svc.getCharacteristic(ctrl) : null;
+        UUID sch = schemaUuid;
+        BluetoothGattCharacteristic schemaChar = svc != null && sch != null ? svc.getCharacteristic(sch) : null;
+        if (dataChar == null) {
+            Log.w(TAG, "Service or characteristic missing on " + g.getDevice().getAddress());
+            forgetDevice();   // not our board after all
+            linkFailed(STATUS_WRONG_DEVICE);
+            return;
+        }
+        if (schemaChar != null) ops.enqueueOptional("readSchema", OP_TIMEOUT_MS, x -> x.readCharacteristic(schemaChar));
+        ops.enqueue("enableNotifications", OP_TIMEOUT_MS, x -> {
+            BluetoothGattDescriptor ccc = dataChar.getDescriptor(CCC_UUID);
+            if (!x.setCharacteristicNotification(dataChar, true) || ccc == null) return false;
+            ccc.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+            return x.writeDescriptor(ccc);
+        });
+    }
+
+    private void onReady(BluetoothGatt g) {
+        if (!pinned) {
+            address = g.getDevice().getAddress();
+            prefs.edit().putString(KEY_ADDRESS, address).apply();
+        }
+        attempt = 0;
+        everReady = true;
+        connected = true;
+        awaitingFirstFrame = true;
+        Log.i(TAG, "Ready in " + (SystemClock.elapsedRealtime() - lostAtMs) + " ms, MTU " + mtu);
+        setState(READY, 0);
+        applyPhy();
+        applyPriority();
+        applyRate();
+        Listener l = listener;
+        if (l != null) l.onConnected(mtu);
+    }
+
+    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+        @Override public void onConnectionStateChange(BluetoothGatt g, int status, int newState) {
+            handler.post(() -> {
+                if (g != gatt) { try { g.close(); } catch (SecurityException ignored) {} return; }   // stale
+                if (newState == BluetoothProfile.STATE_CONNECTED && status == BluetoothGatt.GATT_SUCCESS) {
+                    onConnected();
+                } else if (newState == BluetoothProfile.STATE_DISCONNECTED || status != BluetoothGatt.GATT_SUCCESS) {
+                    linkFailed(status);
+                }
+            });
+        }
+
+        @Override public void onMtuChanged(BluetoothGatt g, int newMtu, int status) {
+            handler.post(() -> {
+                if (g != gatt) return;
+                if (status == BluetoothGatt.GATT_SUCCESS) mtu = newMtu;
+                Log.d(TAG, "MTU changed to " + newMtu + " (status=" + status + ")");
+                ops.complete(BluetoothGatt.GATT_SUCCESS);   // a refused MTU is not fatal
+            });
+        }
+
+        @Override public void onServicesDiscovered(BluetoothGatt g, int status) {
+            handler.post(() -> {
+                if (g != gatt) return;
+                if (status == BluetoothGatt.GATT_SUCCESS) onServices(g);
+                ops.complete(status);
+            });
+        }
+
+        @Override public void onDescriptorWrite(BluetoothGatt g, BluetoothGattDescriptor d, int status) {
+            handler.post(() -> {
+                if (g != gatt) return;
+                ops.complete(status);
+                if (status == BluetoothGatt.GATT_SUCCESS && CCC_UUID.equals(d.getUuid())) onReady(g);
+            });
+        }
+
+        @Override public void onPhyUpdate(BluetoothGatt g, int txPhy, int rxPhy, int status) {
+            handler.post(() -> {
+                if (g != gatt) return;
+                if (status == BluetoothGatt.GATT_SUCCESS) phy = rxPhy;
+                Log.d(TAG, "PHY " + rxPhy + " (status=" + status + ")");
+                if (ops.isCurrent("setPreferredPhy")) ops.complete(status);
+            });
+        }
+
+        @Override public void onCharacteristicRead(BluetoothGatt g, BluetoothGattCharacteristic ch, int status) {
+            byte[] value = ch.getValue();
+            handler.post(() -> {
+                if (g != gatt || !ops.isCurrent("readSchema")) return;
+                Listener l = listener;
+                if (status == BluetoothGatt.GATT_SUCCESS && value != null && l != null) l.onSchema(value, value.length);
+                ops.complete(status);
+            });
+        }
+
+        @Override public void onCharacteristicWrite(BluetoothGatt g, BluetoothGattCharacteristic ch, int status) {
+            handler.post(() -> { if (g == gatt && ops.isCurrent("setSampleRate")) ops.complete(status); });
+        }
+
+        @Override public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic ch) {
+            if (!charUuid.equals(ch.getUuid())) return;
+            byte[] value = ch.getValue();   // a new array per notification, so it can cross threads
+            if (value == null) return;
+            handler.post(() -> {
+                Listener l = listener;
+                if (g != gatt || !connected || l == null) return;   // after the link went down
+                if (awaitingFirstFrame) {
+                    awaitingFirstFrame = false;
+                    Log.i(TAG, "First sample " + (SystemClock.elapsedRealtime() - lostAtMs) + " ms after (re)connect started");
+                }
+                l.onFrame(value, value.length);
+            });
+        }
+    };
+
+    // ===== Teardown =====
+
+    private void closeGatt(int status) {
+        handler.removeCallbacks(connectTimeout);
+        ops.attach(null);
+        boolean wasConnected = connected;
+        connected = false;
+        awaitingFirstFrame = false;
+        if (gatt != null) {
+            try { gatt.disconnect(); } catch (SecurityException ignored) {}
+            try { gatt.close(); } catch (SecurityException ignored) {}   // always close: a reused handle keeps failing with 133
+        }
+        gatt = null;
+        dataChar = null;
+        controlChar = null;
+        mtu = 23;
+        phy = BluetoothDevice.PHY_LE_1M;
+        if (wasConnected) {
+            Listener l = listener;
+            if (l != null) l.onDisconnected(status);
+        }
+    }
+
+    private void permissionLost() {
+        wanted = false;
+        closeGatt(0);
+        setState(IDLE, STATUS_NO_PERMISSION);
+    }
+
+    private void setState(int s, int status) {
+        if (state == s && status == 0) return;
+        state = s;
+        StateListener l = stateListener;
+        if (l != null) l.onStateChanged(s, status);
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.neuroridev2;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Publishes a 1 kHz two-board stream through TelemetryBus to subscribers of every policy, one of
+// them far too slow, and checks that publish() never waits for them: the lossless subscriber sees
+// every sample in order, the slow BUFFER one drops and reports it, LATEST ends on the newest
+// sample of each board, SAMPLE keeps to its interval, a subscriber with no demand gets nothing
+// until it asks, one limited to a board sees only that board's samples, and close() completes
+// them all. Then checks that LATEST publishes and delivers without allocating.
+//
+//   java com.example.neuroridev2.BusTestRunner
+public final class BusTestRunner {
+
+    static final int BOARDS = 2;
+    static final int SAMPLES = 20_000;       // per board, 1 ms apart
+    static final long PUBLISH_P99_BUDGET_US = 200;
+
+    private static final ThreadMXBean MX = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOC = MX instanceof com.sun.management.ThreadMXBean
+            ? (com.sun.management.ThreadMXBean) MX : null;
+
+    // Records what it was given; optionally sleeps per sample to play a slow consumer
+    static class Recorder implements TelemetryBus.Subscriber {
+        final long sleepMicros;
+        final long initialDemand;
+        final long[] lastT = new long[BOARDS];
+        final CountDownLatch done = new CountDownLatch(1);
+        TelemetryBus.Subscription sub;
+        volatile long received, outOfOrder, minGapMs = Long.MAX_VALUE;
+
+        Recorder(long sleepMicros, long initialDemand) {
+            this.sleepMicros = sleepMicros;
+            this.initialDemand = initialDemand;
+            for (int i = 0; i < BOARDS; i++) lastT[i] = Long.MIN_VALUE;
+        }
+
+        @Override public void onSubscribe(TelemetryBus.Subscription s) {
+            sub = s;
+            if (initialDemand > 0) s.request(initialDemand);
+        }
+
+        @Override public void onNext(int device, long tMs, TelemetrySample s) {
+            long prev = lastT[device];
+            if (prev != Long.MIN_VALUE) {
+                if (tMs <= prev) outOfOrder++;
+                else minGapMs = Math.min(minGapMs, tMs - prev);
+            }
+            lastT[device] = tMs;
+            received++;
+            if (sleepMicros > 0) LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(sleepMicros));
+        }
+
+        @Override public void onComplete() { done.countDown(); }
+    }
+
+    public static void main(String[] args) throws Exception {
+        TelemetryBus bus = new TelemetryBus(BOARDS);
+
+        Recorder lossless = new Recorder(0, Long.MAX_VALUE);
+        TelemetryBus.Options o = options("lossless", TelemetryBus.Delivery.BUFFER);
+        o.capacity = 1 << 16;
+        bus.subscribe(lossless, o);
+
+        Recorder slow = new Recorder(2000, Long.MAX_VALUE);   // 500 samples/s against 2000 offered
+        o = options("slow", TelemetryBus.Delivery.BUFFER);
+        o.capacity = 256;
+        bus.subscribe(slow, o);
+
+        Recorder latest = new Recorder(5000, Long.MAX_VALUE);
+        bus.subscribe(latest, options("latest", TelemetryBus.Delivery.LATEST));
+
+        Recorder sampled = new Recorder(0, Long.MAX_VALUE);
+        o = options("sampled", TelemetryBus.Delivery.SAMPLE);
+        o.sampleEveryMs = 100;
+        bus.subscribe(sampled, o);
+
+        Recorder idle = new Recorder(0, 0);
+        o = options("no demand", TelemetryBus.Delivery.BUFFER);
+        o.capacity = 64;
+        bus.subscribe(idle, o);
+
+        Recorder inline = new Recorder(0, Long.MAX_VALUE);
+        bus.subscribe(inline, TelemetryBus.inline("inline"));
+
+        Recorder board1 = new Recorder(0, Long.MAX_VALUE);
+        o = options("board 1", TelemetryBus.Delivery.BUFFER);
+        o.device = 1;
+        o.capacity = 1 << 15;
+        bus.subscribe(board1, o);
+
+        // Publish in real time, 2 samples (one per board) per millisecond, timing every call
+        TelemetrySample s = new TelemetrySample();
+        long[] publishNanos = new long[SAMPLES * BOARDS];
+        long start = System.nanoTime();
+        for (int i = 0; i < SAMPLES; i++) {
+            long due = start + TimeUnit.MILLISECONDS.toNanos(i);
+            for (long left = due - System.nanoTime(); left > 0; left = due - System.nanoTime()) LockSupport.parkNanos(left);
+            for (int d = 0; d < BOARDS; d++) {
+                s.clear();
+                s.mask = TelemetrySample.GFORCE;
+                s.gforce = d * 100_000 + i;   // encodes board and index
+                long t0 = System.nanoTime();
+                bus.publish(d, 1_000 + i, s);
+                publishNanos[i * BOARDS + d] = System.nanoTime() - t0;
+            }
+        }
+        Arrays.sort(publishNanos);
+        long p99Us = publishNanos[(int) (publishNanos.length * 0.99)] / 1000;
+        long maxUs = publishNanos[publishNanos.length - 1] / 1000;
+
+        Checks.check("no-demand subscriber got nothing", idle.received == 0);
+        Checks.check("no-demand subscriber dropped past its buffer", idle.sub.dropped() == SAMPLES * BOARDS - 64);
+        idle.sub.request(10);
+        Thread.sleep(100);
+        Checks.check("request(10) delivers 10", idle.received == 10);
+        idle.sub.request(Long.MAX_VALUE);
+
+        System.out.print(bus.report());
+        bus.close();
+        for (Recorder r : new Recorder[]{lossless, slow, latest, sampled, idle, inline, board1}) {
+            Checks.check(r.sub.name() + ": completed", r.done.await(30, TimeUnit.SECONDS));
+        }
+
+        System.out.println(String.format(Locale.US, "publish p99 %d us, max %d us (budget p99 %d us)", p99Us, maxUs,
+                PUBLISH_P99_BUDGET_US));
+        Checks.check("publish p99 within budget", p99Us <= PUBLISH_P99_BUDGET_US);
+        Checks.check("lossless: every sample, in order", lossless.received == SAMPLES * BOARDS
+                && lossless.outOfOrder == 0 && lossless.sub.dropped() == 0);
+        Checks.check("inline: every sample", inline.received == SAMPLES * BOARDS);
+        Checks.check("slow: dropped and said so", slow.sub.dropped() > 0
+                && slow.received + slow.sub.dropped() == SAMPLES * BOARDS && slow.outOfOrder == 0);
+        Checks.check("latest: ends on the newest sample", latest.lastT[0] == 1_000 + SAMPLES - 1
+                && latest.lastT[1] == 1_000 + SAMPLES - 1 && latest.sub.dropped() > 0);
+        Checks.check("latest: dropped + delivered = offered", latest.received + latest.sub.dropped() == SAMPLES * BOARDS);
+        Checks.check("sampled: one per 100 ms per board", sampled.minGapMs >= 100
+                && sampled.received == BOARDS * ((SAMPLES + 99) / 100));
+        Checks.check("no demand: the rest after request()", idle.received == 64);
+        Checks.check("board 1: all of its samples, none of board 0's", board1.received == SAMPLES
+                && board1.lastT[0] == Long.MIN_VALUE && board1.sub.dropped() == 0);
+        latestAllocates();
+        Checks.exit();
+    }
+
+    // LATEST on an executor the test steps by hand: a few publishes per drain, as with a consumer
+    // slower than the stream, then the same on a warm bus under the allocation counter
+    private static void latestAllocates() {
+        Runnable[] pending = new Runnable[1];
+        TelemetryBus bus = new TelemetryBus(BOARDS);
+        Recorder r = new Recorder(0, Long.MAX_VALUE);
+        TelemetryBus.Options o = options("stepped", TelemetryBus.Delivery.LATEST);
+        o.executor = task -> pending[0] = task;
+        bus.subscribe(r, o);
+        TelemetrySample s = new TelemetrySample();
+        s.mask = TelemetrySample.GFORCE;
+        long bytes = Long.MAX_VALUE;
+        for (int pass = 0; pass < 4; pass++) {   // the first warms up the JIT; the fewest of the rest counts
+            long bytes0 = ALLOC != null ? ALLOC.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+            for (int i = 0; i < 100_000; i++) {
+                s.gforce = i;
+                bus.publish(i % BOARDS, i, s);
+                if (i % 3 == 2 && pending[0] != null) {
+                    Runnable task = pending[0];
+                    pending[0] = null;
+                    task.run();
+                }
+            }
+            if (ALLOC != null && pass > 0) {
+                bytes = Math.min(bytes, ALLOC.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes0);
+            }
+        }
+        if (pending[0] != null) pending[0].run();
+        if (ALLOC == null) bytes = -1;
+        System.out.println("latest: " + bytes + " B allocated over 100000 publishes");
+        Checks.check("latest: publish and delivery allocate nothing", bytes <= 0);
+        Checks.check("latest: delivered + dropped = offered", r.received + r.sub.dropped() == 4 * 100_000);
+    }
+
+    private static TelemetryBus.Options options(String name, TelemetryBus.Delivery delivery) {
+        TelemetryBus.Options o = new TelemetryBus.Options();
+        o.name = name;
+        o.delivery = delivery;
+        return o;
+    }
+
+
+    private BusTestRunner() {}
+}
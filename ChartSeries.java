@@ -0,0 +1,172 @@
+package com.example.neuroridev2;
+
+// History of one chart line (g-force, temperature, speed) in a primitive ring, and its layout into
+// a Canvas.drawLines() vertex array. Nothing is allocated after setColumns():
+//
+//   add()     time / value pairs in time order; older ones fall out once the ring is full
+//   layout()  the last spanMs as line segments, at most four points per pixel column (first, min,
+//             max, last of the samples in it), so a spike survives however many samples share a
+//             column and the cost per frame is bounded by the width, not the sample rate
+//
+// Single-threaded (the UI thread, for TelemetryChartView). Plain Java; ChartTestRunner
+// benchmarks it.
+public final class ChartSeries {
+
+    public final String name, unit;
+    public final int decimals;
+    private final float floorMin, floorMax;   // the vertical range never shrinks below this
+
+    // Ring
+    private final long[] t;
+    private final float[] v;
+    private final int mask;
+    private long head, size;
+
+    // Per pixel column, rebuilt by every layout()
+    private int columns;
+    private float[] colFirst, colMin, colMax, colLast;
+    private int[] colFirstMin;   // 1: the min came before the max
+    private boolean[] colUsed;
+
+    // Last layout, for the label and axis
+    private float shownMin, shownMax;
+
+    // capacity: power of two, enough for spanMs at the highest sample rate
+    public ChartSeries(String name, String unit, int decimals, float floorMin, float floorMax, int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a power of two");
+        this.name = name;
+        this.unit = unit;
+        this.decimals = decimals;
+        this.floorMin = floorMin;
+        this.floorMax = floorMax;
+        t = new long[capacity];
+        v = new float[capacity];
+        mask = capacity - 1;
+        setColumns(1);
+    }
+
+    // On a size change only
+    public void setColumns(int n) {
+        n = Math.max(1, n);
+        if (n == columns) return;
+        columns = n;
+        colFirst = new float[n];
+        colMin = new float[n];
+        colMax = new float[n];
+        colLast = new float[n];
+        colFirstMin = new int[n];
+        colUsed = new boolean[n];
+    }
+
+    // Vertex floats layout() can write at most
+    public int maxVertexFloats() { return 4 * 4 * columns; }
+
+    public void add(long tMs, float value) {
+        if (Float.isNaN(value)) return;
+        if (size > 0 && tMs < t[(int) ((head - 1) & mask)]) return;   // out of order: another board's clock
+        t[(int) (head & mask)] = tMs;
+        v[(int) (head & mask)] = value;
+        head++;
+        if (size < t.length) size++;
+    }
+
+    public void clear() { head = size = 0; }
+
+    public boolean isEmpty()  { return size == 0; }
+    public long lastTimeMs()  { return size > 0 ? t[(int) ((head - 1) & mask)] : Long.MIN_VALUE; }
+    public float lastValue()  { return size > 0 ? v[(int) ((head - 1) & mask)] : Float.NaN; }
+    public int size()         { return (int) size; }
+    public float shownMin()   { return shownMin; }
+    public float shownMax()   { return shownMax; }
+
+    // Samples in (endMs - spanMs, endMs] as segments (x0, y0, x1, y1) inside the box; returns the
+    // number of floats written to out (length >= maxVertexFloats()).
+    public int layout(long endMs, long spanMs, float left, float top, float width, float height, float[] out) {
+        if (size == 0 || spanMs <= 0) return 0;
+        long from = endMs - spanMs;
+        int n = columns;
+        for (int c = 0; c < n; c++) colUsed[c] = false;
+
+        // Pass 1: bin the visible samples into columns, and the vertical range
+        float lo = floorMin, hi = floorMax;
+        double colsPerMs = (double) n / spanMs;
+        for (long i = firstAfter(from); i < head; i++) {
+            int k = (int) (i & mask);
+            long tk = t[k];
+            if (tk > endMs) break;
+            float val = v[k];
+            int c = (int) ((tk - from) * colsPerMs);
+            if (c >= n) c = n - 1;
+            if (!colUsed[c]) {
+                colUsed[c] = true;
+                colFirst[c] = colMin[c] = colMax[c] = colLast[c] = val;
+                colFirstMin[c] = 1;
+            } else {
+                if (val < colMin[c]) { colMin[c] = val; colFirstMin[c] = 0; }
+                if (val > colMax[c]) { colMax[c] = val; colFirstMin[c] = 1; }
+                colLast[c] = val;
+            }
+            if (val < lo) lo = val;
+            if (val > hi) hi = val;
+        }
+        shownMin = lo;
+        shownMax = hi;
+
+        // Pass 2: connect first, min / max in the order they came, last, column by column
+        float yScale = hi > lo ? height / (hi - lo) : 0;
+        float colW = width / n;
+        int w = 0;
+        float px = Float.NaN, py = 0;
+        for (int c = 0; c < n; c++) {
+            if (!colUsed[c]) continue;
+            float x = left + (c + 0.5f) * colW;
+            float a = colFirstMin[c] == 1 ? colMin[c] : colMax[c];
+            float b = colFirstMin[c] == 1 ? colMax[c] : colMin[c];
+            for (int p = 0; p < 4; p++) {
+                float val = p == 0 ? colFirst[c] : p == 1 ? a : p == 2 ? b : colLast[c];
+                float y = top + height - (val - lo) * yScale;
+                if (!Float.isNaN(px) && (px != x || py != y)) {
+                    out[w++] = px;
+                    out[w++] = py;
+                    out[w++] = x;
+                    out[w++] = y;
+                }
+                px = x;
+                py = y;
+            }
+        }
+        return w;
+    }
+
+    // Ring position of the first sample after fromMs (binary search; times are ascending)
+    private long firstAfter(long fromMs) {
+        long lo = head - size, hi = head;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (t[(int) (mid & mask)] <= fromMs) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // ===== Labels without String.format =====
+
+    // Writes value with `decimals` digits after the point into buf at off; returns the new end.
+    // NaN is written as "--". buf needs room for 20 + decimals chars.
+    public static int format(double value, int decimals, char[] buf, int off) {
+        if (Double.isNaN(value)) { buf[off++] = '-'; buf[off++] = '-'; return off; }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        long fixed = Math.round(Math.abs(value) * scale);
+        if (value < 0 && fixed != 0) buf[off++] = '-';
+        long whole = fixed / scale, frac = fixed % scale;
+        int start = off;
+        do { buf[off++] = (char) ('0' + whole % 10); whole /= 10; } while (whole > 0);
+        for (int i = start, j = off - 1; i < j; i++, j--) { char x = buf[i]; buf[i] = buf[j]; buf[j] = x; }
+        if (decimals > 0) {
+            buf[off++] = '.';
+            for (long d = scale / 10; d > 0; d /= 10) buf[off++] = (char) ('0' + (frac / d) % 10);
+        }
+        return off;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.neuroridev2;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Benchmarks what TelemetryChartView does per frame, minus the Canvas: three ChartSeries fed at
+// 200 Hz, laid out over a 15 s window (3000 points a lane) at phone widths, plus the value labels,
+// one frame per 5 ms of data so the window scrolls. Checks that a frame stays far inside a 60 fps
+// budget, that nothing is allocated once warmed up, that a one-sample spike still shows after the
+// decimation, and the label formatting.
+//
+//   java com.example.neuroridev2.ChartTestRunner
+public final class ChartTestRunner {
+
+    static final int HZ = 200;
+    static final long WINDOW_MS = 15_000;
+    static final int FRAMES = 20_000;
+    static final long FRAME_P99_BUDGET_US = 2000;   // of 16.7 ms at 60 fps; the Canvas needs the rest
+
+    public static void main(String[] args) {
+        for (int width : new int[]{720, 1080, 1440}) bench(width);
+        spike();
+        labels();
+        Checks.exit();
+    }
+
+    private static void bench(int width) {
+        ChartSeries[] lanes = {
+                new ChartSeries("G", " g", 2, 0, 2, 1 << 13),
+                new ChartSeries("Temp", " °C", 1, 20, 40, 1 << 13),
+                new ChartSeries("Speed", " km/h", 0, 0, 30, 1 << 13),
+        };
+        float[][] vertices = new float[lanes.length][];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i].setColumns(width);
+            vertices[i] = new float[lanes[i].maxVertexFloats()];
+        }
+        char[] label = new char[64];
+        long[] frameNanos = new long[FRAMES];
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean alloc = mx instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) mx : null;
+
+        long tMs = 0;
+        int step = 1000 / HZ;
+        for (int i = 0; i < WINDOW_MS / step; i++, tMs += step) feed(lanes, tMs);   // a full window to start
+        long vertexFloats = 0, allocated = 0;
+        for (int pass = 0; pass < 2; pass++) {   // the first warms up the JIT
+            vertexFloats = 0;
+            long bytes0 = alloc != null ? alloc.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+            for (int f = 0; f < FRAMES; f++) {
+                feed(lanes, tMs);
+                tMs += step;
+                long t0 = System.nanoTime();
+                for (int i = 0; i < lanes.length; i++) {
+                    vertexFloats += lanes[i].layout(tMs, WINDOW_MS, 56, i * 300, width - 56, 280, vertices[i]);
+                    ChartSeries.format(lanes[i].lastValue(), lanes[i].decimals, label, 0);
+                    ChartSeries.format(lanes[i].shownMax(), lanes[i].decimals, label, 0);
+                    ChartSeries.format(lanes[i].shownMin(), lanes[i].decimals, label, 0);
+                }
+                frameNanos[f] = System.nanoTime() - t0;
+            }
+            if (alloc != null) allocated = alloc.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes0;
+        }
+        Arrays.sort(frameNanos);
+        long p50 = frameNanos[FRAMES / 2] / 1000, p99 = frameNanos[(int) (FRAMES * 0.99)] / 1000;
+        long max = frameNanos[FRAMES - 1] / 1000;
+        System.out.println(String.format(Locale.US,
+                "width %4d: %d points/lane, frame p50 %d us p99 %d us max %d us, %.0f segments/frame, allocated %d B in %d frames",
+                width, WINDOW_MS / step, p50, p99, max, vertexFloats / (4.0 * FRAMES), allocated, FRAMES));
+        Checks.check("width " + width + ": p99 within budget", p99 <= FRAME_P99_BUDGET_US);
+        Checks.check("width " + width + ": no allocation per frame", alloc == null || allocated == 0);
+    }
+
+    private static void feed(ChartSeries[] lanes, long tMs) {
+        double s = tMs / 1000.0;
+        lanes[0].add(tMs, (float) (1 + 0.3 * Math.sin(s * 7) + 0.05 * Math.sin(s * 131)));
+        lanes[1].add(tMs, (float) (31 + Math.sin(s / 20)));
+        lanes[2].add(tMs, (float) (25 + 5 * Math.sin(s / 3)));
+    }
+
+    // 3000 samples on 300 columns: the single 6 g sample must still reach the top of the lane
+    private static void spike() {
+        ChartSeries g = new ChartSeries("G", " g", 2, 0, 2, 1 << 13);
+        g.setColumns(300);
+        for (int i = 0; i < 3000; i++) g.add(i * 5L, i == 1234 ? 6f : 1f);
+        float[] out = new float[g.maxVertexFloats()];
+        int n = g.layout(3000 * 5L - 5, 15_000, 0, 0, 300, 100, out);
+        float top = Float.MAX_VALUE;
+        for (int i = 1; i < n; i += 2) top = Math.min(top, out[i]);
+        Checks.check("spike: drawn at the top of the lane", n > 0 && top == 0 && g.shownMax() == 6f);
+        Checks.check("spike: output bounded by the width", n <= g.maxVertexFloats());
+    }
+
+    private static void labels() {
+        char[] buf = new char[64];
+        Checks.check("format 1.234 / 2", "1.23".equals(new String(buf, 0, ChartSeries.format(1.234, 2, buf, 0))));
+        Checks.check("format -0.05 / 1", "-0.1".equals(new String(buf, 0, ChartSeries.format(-0.05, 1, buf, 0))));
+        Checks.check("format -0.004 / 2", "0.00".equals(new String(buf, 0, ChartSeries.format(-0.004, 2, buf, 0))));
+        Checks.check("format 27.6 / 0", "28".equals(new String(buf, 0, ChartSeries.format(27.6, 0, buf, 0))));
+        Checks.check("format 9.995 / 2", "10.00".equals(new String(buf, 0, ChartSeries.format(9.9951, 2, buf, 0))));
+        Checks.check("format NaN", "--".equals(new String(buf, 0, ChartSeries.format(Double.NaN, 2, buf, 0))));
+    }
+
+
+    private ChartTestRunner() {}
+}
@@ -0,0 +1,19 @@
+package com.example.neuroridev2;
+
+// Pass / fail bookkeeping for the off-device harnesses (the *TestRunner classes). They run on a
+// plain JVM without Android classes; each failed check prints a line, and exit() ends the run
+// with status 1 if any failed, so a script or CI step can gate on it.
+final class Checks {
+
+    private static boolean failed;
+
+    static void check(String what, boolean ok) {
+        if (!ok) { failed = true; System.out.println("  FAIL " + what); }
+    }
+
+    static boolean failed() { return failed; }
+
+    static void exit() { System.exit(failed ? 1 : 0); }
+
+    private Checks() {}
+}
@@ -0,0 +1,96 @@
+package com.example.neuroridev2;
+
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// Benchmarks one telemetry notification through each decode path: the binary frame through
+// TelemetryCodec.decode, old firmware's JSON through the same call (TelemetrySchema's dispatch
+// table), and the JSONObject path the app used before the binary frame (String, trim, parse, one
+// optDouble per field). Reports ns/frame, bytes on the air and bytes allocated per frame, and
+// checks that both codec paths allocate nothing and decode what JSONObject does.
+//
+//   java -cp <classes>:json.jar com.example.neuroridev2.CodecTestRunner
+//
+// org.json is part of Android but not of the JDK; without it on the classpath the JSONObject row
+// is skipped (json.org's jar stands in for Android's implementation).
+public final class CodecTestRunner {
+
+    static final int FRAMES = 2_000_000;
+
+    private static final ThreadMXBean MX = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOC = MX instanceof com.sun.management.ThreadMXBean
+            ? (com.sun.management.ThreadMXBean) MX : null;
+
+    interface Decoder {
+        void decode(byte[] data, int len) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        TelemetrySample s = new TelemetrySample();
+        s.mask = TelemetrySample.GFORCE | TelemetrySample.TEMP | TelemetrySample.SPEED | TelemetrySample.BAT | TelemetrySample.VOLT;
+        s.deviceTimeMs = 123_456;
+        s.gforce = 1.234;
+        s.temp = 31.52;
+        s.speed = 25.0;
+        s.battery = 87;
+        s.volt = 4.08;
+        byte[] binary = new byte[TelemetryCodec.SAMPLE_FRAME_LEN];
+        TelemetryCodec.encodeSample(s, binary, 0);
+        // What esp32code2 sent before the binary frame
+        byte[] json = "{\"temp\":31.52,\"speed\":25.00,\"gforce\":1.234,\"bat\":87}".getBytes(StandardCharsets.UTF_8);
+
+        TelemetrySample out = new TelemetrySample();
+        double binaryNs = bench("binary frame", binary, (d, n) -> TelemetryCodec.decode(d, n, out));
+        Checks.check("binary: decodes", TelemetryCodec.decode(binary, binary.length, out) && same(out, 1.234, 31.52, 25.0, 87));
+        bench("JSON, schema table", json, (d, n) -> TelemetryCodec.decode(d, n, out));
+        Checks.check("JSON: decodes", TelemetryCodec.decode(json, json.length, out) && same(out, 1.234, 31.52, 25.0, 87));
+
+        double[] old = new double[4];
+        Decoder jsonObject = (d, n) -> {
+            JSONObject o = new JSONObject(new String(d, 0, n, StandardCharsets.UTF_8).trim());
+            old[0] = o.optDouble("temp", Double.NaN);
+            old[1] = o.optDouble("speed", Double.NaN);
+            old[2] = o.optDouble("gforce", Double.NaN);
+            old[3] = o.optDouble("bat", Double.NaN);
+        };
+        try {
+            double oldNs = bench("JSONObject (before)", json, jsonObject);
+            Checks.check("JSONObject: same values as the codec", old[0] == out.temp && old[1] == out.speed
+                    && old[2] == out.gforce && (int) Math.round(old[3]) == out.battery);
+            System.out.println(String.format(Locale.US, "binary frame is %.0fx faster than JSONObject", oldNs / binaryNs));
+            Checks.check("binary faster than JSONObject", binaryNs < oldNs);
+        } catch (NoClassDefFoundError e) {
+            System.out.println("JSONObject (before): skipped, org.json not on the classpath");
+        }
+        Checks.exit();
+    }
+
+    // Two passes, the first warms up the JIT; reports and checks the second
+    private static double bench(String name, byte[] frame, Decoder decoder) throws Exception {
+        double ns = 0;
+        long allocated = -1;
+        for (int pass = 0; pass < 2; pass++) {
+            long bytes0 = ALLOC != null ? ALLOC.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < FRAMES; i++) decoder.decode(frame, frame.length);
+            ns = (System.nanoTime() - t0) / (double) FRAMES;
+            if (ALLOC != null) allocated = ALLOC.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes0;
+        }
+        double perFrame = allocated < 0 ? Double.NaN : allocated / (double) FRAMES;
+        System.out.println(String.format(Locale.US, "%-20s %6.0f ns/frame  %3d B on the air  %7.1f B allocated/frame",
+                name, ns, frame.length, perFrame));
+        if (!name.startsWith("JSONObject")) Checks.check(name + ": no allocation", allocated <= 0);
+        return ns;
+    }
+
+    private static boolean same(TelemetrySample s, double g, double temp, double speed, int bat) {
+        return Math.abs(s.gforce - g) < 1e-9 && Math.abs(s.temp - temp) < 1e-9
+                && Math.abs(s.speed - speed) < 1e-9 && s.battery == bat;
+    }
+
+    private CodecTestRunner() {}
+}
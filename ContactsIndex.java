@@ -0,0 +1,71 @@
+package com.example.neuroridev2;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Emergency contacts parsed once and kept in memory, instead of re-reading the JSON from
+// SharedPreferences on every SOS. Reloads itself when the stored list changes.
+//
+// Stored as [{"name":..., "phone":...}, ...] under emergency_contacts/list.
+public final class ContactsIndex {
+
+    public static final String SP = "emergency_contacts";
+    public static final String KEY_LIST = "list";
+
+    public static final class Contact {
+        public final String name;
+        public final String dial;     // for SMS: digits with a leading '+' if the number had one (or 00)
+        public final String digits;   // for wa.me links: digits only, no '+'
+
+        Contact(String name, String dial, String digits) { this.name = name; this.dial = dial; this.digits = digits; }
+    }
+
+    private final SharedPreferences prefs;
+    private volatile Contact[] contacts = new Contact[0];
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener onChange = (p, key) -> {
+        if (KEY_LIST.equals(key)) reload();
+    };
+
+    public ContactsIndex(Context ctx) {
+        prefs = ctx.getApplicationContext().getSharedPreferences(SP, Context.MODE_PRIVATE);
+        prefs.registerOnSharedPreferenceChangeListener(onChange);
+        reload();
+    }
+
+    public void release() { prefs.unregisterOnSharedPreferenceChangeListener(onChange); }
+
+    // Contacts with a usable number, in stored order; the first one is the primary.
+    public Contact[] all() { return contacts; }
+
+    public boolean isEmpty() { return contacts.length == 0; }
+
+    private void reload() {
+        JSONArray list;
+        try { list = new JSONArray(prefs.getString(KEY_LIST, "[]")); } catch (JSONException e) { list = new JSONArray(); }
+        Contact[] out = new Contact[list.length()];
+        int n = 0;
+        for (int i = 0; i < list.length(); i++) {
+            JSONObject o = list.optJSONObject(i);
+            if (o == null) continue;
+            Contact c = parse(o.optString("name", ""), o.optString("phone", ""));
+            if (c != null) out[n++] = c;
+        }
+        Contact[] trimmed = new Contact[n];
+        System.arraycopy(out, 0, trimmed, 0, n);
+        contacts = trimmed;
+    }
+
+    static Contact parse(String name, String raw) {
+        if (raw == null) return null;
+        String digits = raw.replaceAll("[^0-9]", "");
+        boolean intl = raw.trim().startsWith("+") || digits.startsWith("00");
+        if (digits.startsWith("00")) digits = digits.substring(2);
+        if (digits.isEmpty()) return null;
+        return new Contact(name, intl ? "+" + digits : digits, digits);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.neuroridev2;
+
+// Incremental crash / fall detector over the g-force magnitude stream.
+//
+//   MONITORING --g >= impactG--> IMPACT --settleMs--> OBSERVING --still or lying for stillMs--> FIRED
+//                                                         |
+//                                                         +--no stillness within observeTimeoutMs--> MONITORING
+//
+// "Still" means the sliding window of the last stillMs has mean within stillBandG of 1 g and
+// standard deviation below stillStdG. "Lying" means tilt (degrees from upright, when the caller
+// has it) stays above lyingTiltDeg for the same window. Runs in constant memory and never
+// allocates after construction. Not thread-safe: feed it from one thread.
+public final class CrashDetector {
+
+    public interface Listener {
+        void onCrashDetected(long impactTimeMs, double peakG, long detectTimeMs);
+    }
+
+    public static final class Config {
+        public double impactG = 3.5;           // peak that starts a candidate
+        public long settleMs = 500;            // ignore the tumble right after impact
+        public long stillMs = 2000;            // how long the rider must stay still / down
+        public long observeTimeoutMs = 6000;   // give up if not still by then
+        public double stillBandG = 0.15;       // |mean - 1 g|
+        public double stillStdG = 0.08;
+        public double lyingTiltDeg = 60;
+        public long maxGapMs = 1000;           // a hole in the stream resets the detector
+        public long cooldownMs = 30_000;       // no second alarm right after one
+        public int windowCapacity = 1024;      // samples held for the still window (>= rate * stillMs)
+    }
+
+    public static final int MONITORING = 0, IMPACT = 1, OBSERVING = 2, FIRED = 3;
+
+    private final Config cfg;
+    private final Listener listener;
+
+    // Sliding window, primitive ring
+    private final long[] wTime;
+    private final float[] wG;
+    private final float[] wTilt;
+    private final int wMask;
+    private int wHead, wSize;
+    private double sum, sumSq;
+    private int lyingCount;
+
+    private int state = MONITORING;
+    private long impactTime, phaseStart, lastTime = Long.MIN_VALUE;
+    private long firedAt = Long.MIN_VALUE / 4;   // far past, without overflowing tMs - firedAt
+    private double peak;
+
+    public CrashDetector(Config cfg, Listener listener) {
+        this.cfg = cfg;
+        this.listener = listener;
+        int cap = Integer.highestOneBit(Math.max(2, cfg.windowCapacity - 1)) << 1;
+        wTime = new long[cap];
+        wG = new float[cap];
+        wTilt = new float[cap];
+        wMask = cap - 1;
+    }
+
+    public void onSample(long tMs, double g) { onSample(tMs, g, Double.NaN); }
+
+    // tiltDeg: angle from upright, NaN when unknown
+    public void onSample(long tMs, double g, double tiltDeg) {
+        if (Double.isNaN(g)) return;
+        if (lastTime != Long.MIN_VALUE && (tMs - lastTime > cfg.maxGapMs || tMs < lastTime)) reset();
+        lastTime = tMs;
+
+        switch (state) {
+            case MONITORING:
+                if (g >= cfg.impactG && tMs - firedAt >= cfg.cooldownMs) {
+                    state = IMPACT;
+                    impactTime = phaseStart = tMs;
+                    peak = g;
+                }
+                break;
+
+            case IMPACT:
+                if (g > peak) peak = g;
+                if (tMs - phaseStart >= cfg.settleMs) {
+                    clearWindow();
+                    state = OBSERVING;
+                    phaseStart = tMs;
+                }
+                break;
+
+            case OBSERVING:
+                if (g > peak) peak = g;
+                push(tMs, g, tiltDeg);
+                if (windowSpan() >= cfg.stillMs && (isStill() || isLying())) {
+                    state = FIRED;
+                    firedAt = tMs;
+                    if (listener != null) listener.onCrashDetected(impactTime, peak, tMs);
+                } else if (tMs - phaseStart >= cfg.observeTimeoutMs) {
+                    state = MONITORING;   // rider kept moving: false alarm
+                }
+                break;
+
+            case FIRED:
+                // One alarm per incident: re-arm only after the cooldown
+                if (tMs - firedAt >= cfg.cooldownMs) state = MONITORING;
+                break;
+        }
+    }
+
+    // ===== Sliding window =====
+    private void push(long t, double g, double tilt) {
+        // Keep just enough history that the window spans at least stillMs
+        int cap = wMask + 1;
+        while (wSize == cap || (wSize >= 2 && t - wTime[(wHead - wSize + 1) & wMask] >= cfg.stillMs)) {
+            evictOldest();
+        }
+        float gf = (float) g;
+        wTime[wHead] = t;
+        wG[wHead] = gf;
+        wTilt[wHead] = (float) tilt;
+        wHead = (wHead + 1) & wMask;
+        wSize++;
+        sum += gf;
+        sumSq += (double) gf * gf;
+        if (tilt >= cfg.lyingTiltDeg) lyingCount++;
+    }
+
+    private void evictOldest() {
+        int i = (wHead - wSize) & wMask;
+        double g = wG[i];
+        sum -= g;
+        sumSq -= g * g;
+        if (wTilt[i] >= cfg.lyingTiltDeg) lyingCount--;
+        wSize--;
+    }
+
+    private long windowSpan() {
+        if (wSize < 2) return 0;
+        return wTime[(wHead - 1) & wMask] - wTime[(wHead - wSize) & wMask];
+    }
+
+    private boolean isStill() {
+        double mean = sum / wSize;
+        double var = Math.max(0, sumSq / wSize - mean * mean);
+        return Math.abs(mean - 1.0) <= cfg.stillBandG && Math.sqrt(var) <= cfg.stillStdG;
+    }
+
+    private boolean isLying() { return lyingCount == wSize; }
+
+    private void clearWindow() {
+        wHead = wSize = lyingCount = 0;
+        sum = sumSq = 0;
+    }
+
+    public void reset() {
+        clearWindow();
+        state = MONITORING;
+        lastTime = Long.MIN_VALUE;
+    }
+
+    public int state() { return state; }
+}
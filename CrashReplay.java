@@ -0,0 +1,162 @@
+package com.example.neuroridev2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+// Off-device replay harness for CrashDetector: feeds recorded or synthetic g-force traces and
+// reports detection latency and false-positive rate. Plain JVM, no Android classes; run through
+// FlightRecorderTestRunner.
+//
+// CSV lines are "t_ms,g" or "t_ms,g,tilt_deg"; a line "#incident,<t_ms>" marks a ground-truth impact.
+public final class CrashReplay {
+
+    public static final class Trace {
+        public final String name;
+        public final long[] t;
+        public final float[] g;
+        public final float[] tilt;         // null when the trace has no orientation
+        public final long[] incidents;     // ground-truth impact times
+
+        public Trace(String name, long[] t, float[] g, float[] tilt, long[] incidents) {
+            this.name = name;
+            this.t = t;
+            this.g = g;
+            this.tilt = tilt;
+            this.incidents = incidents;
+        }
+
+        public long durationMs() { return t.length < 2 ? 0 : t[t.length - 1] - t[0]; }
+    }
+
+    public static final class Result {
+        public int detections, truePositives, falsePositives, missed;
+        public long maxLatencyMs;
+        public double meanLatencyMs;
+        public double falsePositivesPerHour;
+        public double nanosPerSample;
+
+        @Override public String toString() {
+            return String.format(Locale.US,
+                    "detections=%d tp=%d fp=%d missed=%d latency mean=%.0fms max=%dms fp/h=%.2f cost=%.0fns/sample",
+                    detections, truePositives, falsePositives, missed,
+                    meanLatencyMs, maxLatencyMs, falsePositivesPerHour, nanosPerSample);
+        }
+    }
+
+    private CrashReplay() {}
+
+    // A detection within matchToleranceMs after a ground-truth impact counts as a hit.
+    public static Result run(CrashDetector.Config cfg, Trace trace, long matchToleranceMs) {
+        final long[] detectedImpact = new long[trace.t.length];
+        final long[] detectedAt = new long[trace.t.length];
+        final int[] n = {0};
+        CrashDetector det = new CrashDetector(cfg, (impact, peak, at) -> {
+            detectedImpact[n[0]] = impact;
+            detectedAt[n[0]] = at;
+            n[0]++;
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < trace.t.length; i++) {
+            det.onSample(trace.t[i], trace.g[i], trace.tilt == null ? Double.NaN : trace.tilt[i]);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Result r = new Result();
+        r.detections = n[0];
+        r.nanosPerSample = trace.t.length == 0 ? 0 : (double) elapsed / trace.t.length;
+        boolean[] used = new boolean[n[0]];
+        long latencySum = 0;
+        for (long incident : trace.incidents) {
+            int hit = -1;
+            for (int d = 0; d < n[0]; d++) {
+                if (!used[d] && detectedAt[d] >= incident && detectedAt[d] - incident <= matchToleranceMs) { hit = d; break; }
+            }
+            if (hit < 0) { r.missed++; continue; }
+            used[hit] = true;
+            r.truePositives++;
+            long lat = detectedAt[hit] - incident;
+            latencySum += lat;
+            r.maxLatencyMs = Math.max(r.maxLatencyMs, lat);
+        }
+        r.falsePositives = r.detections - r.truePositives;
+        r.meanLatencyMs = r.truePositives == 0 ? 0 : (double) latencySum / r.truePositives;
+        long dur = trace.durationMs();
+        r.falsePositivesPerHour = dur == 0 ? 0 : r.falsePositives * 3_600_000.0 / dur;
+        return r;
+    }
+
+    // ===== Synthetic traces =====
+
+    // Riding noise with potholes and hard-but-harmless hits, plus a crash (spike, tumble, lie still)
+    // at each time in crashAtMs. Deterministic for a given seed.
+    public static Trace synthetic(String name, int hz, long durationMs, long[] crashAtMs, long seed) {
+        Random rnd = new Random(seed);
+        int count = (int) (durationMs * hz / 1000);
+        long[] t = new long[count];
+        float[] g = new float[count];
+        long period = 1000 / hz;
+        long[] crashes = crashAtMs.clone();
+        Arrays.sort(crashes);
+
+        int c = 0;
+        long stillUntil = -1;
+        for (int i = 0; i < count; i++) {
+            long now = i * period;
+            t[i] = now;
+            double v = 1.0 + rnd.nextGaussian() * 0.25;               // road vibration
+            if (rnd.nextInt(hz * 20) == 0) v += 1.0 + rnd.nextDouble() * 1.5;   // pothole
+            if (rnd.nextInt(hz * 300) == 0) v = 3.6 + rnd.nextDouble();   // kerb hit, keeps riding
+
+            if (c < crashes.length && now >= crashes[c]) {
+                long dt = now - crashes[c];
+                if (dt < 60) v = 6.0 + rnd.nextDouble() * 2.0;                 // impact
+                else if (dt < 900) v = 0.3 + rnd.nextDouble() * 2.5;           // tumble
+                else { stillUntil = crashes[c] + 60_000; c++; }
+            }
+            if (now < stillUntil) v = 1.0 + rnd.nextGaussian() * 0.02;        // lying on the road
+            g[i] = (float) Math.max(0, v);
+        }
+        return new Trace(name, t, g, null, crashes);
+    }
+
+    // ===== Recorded traces =====
+
+    public static Trace loadCsv(String name, Reader in) throws IOException {
+        BufferedReader br = new BufferedReader(in);
+        long[] t = new long[1024];
+        float[] g = new float[1024];
+        float[] tilt = new float[1024];
+        long[] inc = new long[8];
+        int n = 0, ni = 0;
+        boolean hasTilt = false;
+        String line;
+        while ((line = br.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            String[] parts = line.split(",");
+            if (line.startsWith("#incident")) {
+                if (ni == inc.length) inc = Arrays.copyOf(inc, ni * 2);
+                inc[ni++] = Long.parseLong(parts[1].trim());
+                continue;
+            }
+            if (line.startsWith("#") || !Character.isDigit(line.charAt(0))) continue;  // comments / header
+            if (n == t.length) {
+                t = Arrays.copyOf(t, n * 2);
+                g = Arrays.copyOf(g, n * 2);
+                tilt = Arrays.copyOf(tilt, n * 2);
+            }
+            t[n] = Long.parseLong(parts[0].trim());
+            g[n] = Float.parseFloat(parts[1].trim());
+            tilt[n] = parts.length > 2 ? Float.parseFloat(parts[2].trim()) : Float.NaN;
+            hasTilt |= parts.length > 2;
+            n++;
+        }
+        return new Trace(name, Arrays.copyOf(t, n), Arrays.copyOf(g, n),
+                hasTilt ? Arrays.copyOf(tilt, n) : null, Arrays.copyOf(inc, ni));
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.neuroridev2;
+
+// Maps the ESP32's millis() onto the phone's elapsedRealtime() so samples from a batch keep their
+// own spacing but land on the phone's timeline.
+//
+// The offset is the smallest (receive time - device time) seen: the sample with the least transit
+// delay gives the tightest bound. A jump beyond REANCHOR_MS (firmware reboot, millis() wrap)
+// re-anchors instead of drifting.
+public final class DeviceClock {
+
+    private static final long REANCHOR_MS = 2000;
+
+    private long offset;
+    private boolean anchored;
+
+    // deviceMs == 0 means the frame had no device clock (legacy JSON): use the receive time.
+    public long toLocal(long deviceMs, long rxElapsedMs) {
+        if (deviceMs == 0) return rxElapsedMs;
+        long candidate = rxElapsedMs - deviceMs;
+        if (!anchored || Math.abs(candidate - offset) > REANCHOR_MS) {
+            offset = candidate;
+            anchored = true;
+        } else if (candidate < offset) {
+            offset = candidate;
+        }
+        return deviceMs + offset;
+    }
+
+    public void reset() { anchored = false; }
+}
@@ -0,0 +1,151 @@
+package com.example.neuroridev2;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.nio.charset.StandardCharsets;
+
+// One peripheral of a (possibly multi-device) ride: its transport, its own decode pipeline
+// (sequence tracking and clock mapping are per device) and its own ring into SessionMerger.
+// Transport callbacks arrive on that device's thread; nothing here is shared with other sessions.
+public final class DeviceSession implements TelemetryTransport.Listener {
+
+    public interface Listener {
+        // Device thread, in arrival order for this device only.
+        void onDeviceSample(DeviceSession d, long tMs, TelemetrySample s);
+        void onLinkChanged(DeviceSession d, boolean up, int status);
+    }
+
+    private static final String TAG = "NeuroRideBLE";
+
+    public final int index;
+    public final String label;
+    public final TelemetryTransport transport;
+    final IngestRing ring;
+    private final TelemetryPipeline pipeline;
+    private final LinkTuner tuner;   // null when the transport has no link knobs
+    private final Listener listener;
+    private final TelemetryMetrics metrics = TelemetryMetrics.get();
+
+    private volatile boolean connected;
+    private boolean everConnected;
+    private volatile int mtu;
+    private volatile long lastFrameMs;
+    private boolean schemaThisLink;   // onSchema came since the last onConnected
+    private int reportedUnadvertised;
+    private long reportedUnknownKeys;
+
+    DeviceSession(int index, String label, TelemetryTransport transport, int ringCapacity, Listener listener) {
+        this.index = index;
+        this.label = label;
+        this.transport = transport;
+        this.listener = listener;
+        this.ring = new IngestRing(ringCapacity, IngestRing.Policy.OVERWRITE_OLDEST);
+        this.tuner = transport instanceof TelemetryTransport.LinkControl
+                ? new LinkTuner(new LinkTuner.Config(), (TelemetryTransport.LinkControl) transport, this::onTuned) : null;
+        this.pipeline = new TelemetryPipeline((t, s) -> {
+            listener.onDeviceSample(this, t, s);
+            ring.offer(s, t);
+            if (tuner != null) tuner.onSample(t, s);
+        });
+    }
+
+    void start() { transport.start(this); }
+    void stop()  { transport.stop(); }
+
+    // ===== TelemetryTransport.Listener =====
+
+    @Override public void onSchema(byte[] data, int len) {
+        long t0 = System.nanoTime();
+        TelemetrySchema s = TelemetrySchema.parse(data, len);
+        long us = (System.nanoTime() - t0) / 1000;
+        schemaThisLink = true;
+        if (s == null) {
+            metrics.onBadSchema();
+            Log.w(TAG, label + ": unreadable schema \"" + new String(data, 0, len, StandardCharsets.US_ASCII) + "\", using defaults");
+            pipeline.setSchema(TelemetrySchema.DEFAULT);
+            return;
+        }
+        metrics.onSchema(s, us);
+        if (s.newer()) Log.w(TAG, label + ": schema v" + s.version + " is newer than v" + TelemetrySchema.VERSION + ", mapping by name");
+        if (s.unmapped() > 0 || s.missing() != 0) Log.w(TAG, label + ": " + s + ", missing mask 0x" + Integer.toHexString(s.missing()));
+        else Log.i(TAG, label + ": " + s);
+        pipeline.setSchema(s);
+    }
+
+    @Override public void onConnected(int mtu) {
+        this.mtu = mtu;
+        pipeline.rearm();   // a rebooted board counts from seq 0 again; not duplicates
+        if (!schemaThisLink) {
+            pipeline.setSchema(TelemetrySchema.DEFAULT);   // firmware without the schema characteristic
+            metrics.onSchema(null, 0);
+        }
+        schemaThisLink = false;   // read again on every connect
+        reportedUnadvertised = 0;
+        if (everConnected) metrics.onReconnect();
+        everConnected = true;
+        connected = true;
+        if (tuner != null) tuner.onConnected(SystemClock.elapsedRealtime(), received(), lost());
+        listener.onLinkChanged(this, true, 0);
+    }
+
+    @Override public void onFrame(byte[] data, int len) {
+        lastFrameMs = SystemClock.elapsedRealtime();
+        boolean timed = metrics.isEnabled();
+        long t0 = timed ? System.nanoTime() : 0;
+        SequenceTracker seq = pipeline.sequence();
+        long lostBefore = seq.lost();
+        int n = pipeline.onFrame(data, len, lastFrameMs);
+        if (timed) metrics.onFrame(System.nanoTime() - t0, n);
+        if (n < 0) {
+            if (metrics.shouldLog(TelemetryMetrics.LOG_BAD_FRAME)) {
+                Log.w(TAG, label + ": bad frame: " + new String(data, 0, len, StandardCharsets.UTF_8));
+            }
+            return;
+        }
+        long lostNow = seq.lost() - lostBefore;
+        if (lostNow != 0) {
+            metrics.onLost(lostNow);
+            if (metrics.shouldLog(TelemetryMetrics.LOG_LOSS)) {
+                Log.w(TAG, label + ": lost " + lostNow + " samples (total " + seq.lost() + ", dup " + seq.duplicates() + ")");
+            }
+        }
+        long unknown = pipeline.unknownKeys();
+        if (unknown != reportedUnknownKeys) {
+            metrics.onUnknownKeys(unknown - reportedUnknownKeys);
+            reportedUnknownKeys = unknown;
+        }
+        int extra = pipeline.unadvertisedFields();
+        if (extra != reportedUnadvertised) {
+            reportedUnadvertised = extra;
+            metrics.onUnadvertised();
+            Log.w(TAG, label + ": frames carry fields the schema didn't list, mask 0x" + Integer.toHexString(extra));
+        }
+        if (tuner != null) tuner.maybeEvaluate(lastFrameMs, seq.received(), seq.lost());
+    }
+
+    private void onTuned(int mode, int rateHz, int priority, boolean phy2M) {
+        Log.i(TAG, label + ": link " + LinkTuner.modeName(mode) + ", " + rateHz + " Hz, priority " + priority
+                + (phy2M ? ", 2M" : ", 1M"));
+    }
+
+    @Override public void onDisconnected(int status) {
+        connected = false;
+        listener.onLinkChanged(this, false, status);
+    }
+
+    // ===== Metrics (read from any thread; counters are single-writer) =====
+
+    public boolean isConnected() { return connected; }
+    public int mtu()             { return mtu; }
+    public long lastFrameMs()    { return lastFrameMs; }
+    public long frames()         { return pipeline.frames(); }
+    public long badFrames()      { return pipeline.badFrames(); }
+    public long received()       { return pipeline.sequence().received(); }
+    public long lost()           { return pipeline.sequence().lost(); }
+    public long duplicates()     { return pipeline.sequence().duplicates(); }
+    public double lossRatio()    { return pipeline.sequence().lossRatio(); }
+    public long ringOverwritten() { return ring.overwritten(); }
+    public LinkTuner tuner()     { return tuner; }
+    public TelemetrySchema schema() { return pipeline.schema(); }
+}
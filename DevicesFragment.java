@@ -2,24 +2,13 @@ package com.example.neuroridev2;
 
 import android.Manifest;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.BluetoothProfile;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanResult;
-import android.content.Context;
-import android.content.Intent;
+import android.content.ComponentName;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.IBinder;
 import android.util.Log;
 import android.view.*;
 import android.widget.Button;
@@ -29,50 +18,65 @@ import android.widget.Toast;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.*;
+import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Locale;
-import java.util.UUID;
 
+// Devices screen: Sync, connection status, SOS. The boards and the whole telemetry path live in
+// TelemetryService; this screen binds to it while started and only subscribes, so leaving it,
+// rotating or turning the screen off doesn't touch the links.
 public class DevicesFragment extends Fragment {
 
-    // ===== Match your friend's working setup =====
-    private static final String TARGET_NAME = "ESP32C3_JSON"; // change if your ESP name differs
-    private static final UUID SERVICE_UUID = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
-    private static final UUID CHAR_UUID    = UUID.fromString("6E400002-B5A3-F393-E0A9-E50E24DCCA9E");
-    private static final UUID CCC_UUID     = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
-
     private static final String TAG = "NeuroRideBLE";
 
-    // ===== Emergency contacts store keys =====
-    private static final String SP = "emergency_contacts";
-    private static final String KEY_LIST = "list";
+    // Bench testing without the ESP32: Sync starts a SimulatedPeripheral instead of scanning
+    private static final boolean USE_SIMULATOR = false;
 
     // ===== UI =====
     private TextView tvConnStatus;
+    private Boolean shownConnected;   // what tvConnStatus shows; null: nothing yet
+    private int shownBattery;
     private Button btnSync;
+    private boolean warnedBusy;
 
     // ===== Shared telemetry VM =====
     private TelemetryViewModel vm;
 
-    // ===== BLE state =====
-    private BluetoothAdapter btAdapter;
-    private BluetoothLeScanner scanner;
-    private BluetoothGatt gatt;
-    private BluetoothGattCharacteristic jsonChar;
-    private final Handler handler = new Handler(Looper.getMainLooper());
-    private boolean scanning = false;
+    // Merge thread -> ring -> one ViewModel update per display frame
+    private static final int INGEST_RING_CAPACITY = 1024;
+    private volatile TelemetryCoalescer coalescer;
+
+    // ===== Service: bound between onStart and onStop =====
+    private TelemetryService service;
+    private TelemetryBus.Subscription uiSamples;   // merged samples into the coalescer
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override public void onServiceConnected(ComponentName name, IBinder b) {
+            service = ((TelemetryService.LocalBinder) b).service();
+            service.addListener(serviceListener);
+            TelemetryCoalescer c = coalescer;
+            if (c != null) uiSamples = service.bus().subscribe(c, TelemetryBus.inline("devices"));
+        }
+        @Override public void onServiceDisconnected(ComponentName name) { service = null; }
+    };
+
+    private final TelemetryService.Listener serviceListener = new TelemetryService.Listener() {
+        @Override public void onConnectionChanged(boolean anyConnected) {
+            if (vm != null) vm.setConnected(anyConnected);
+        }
+        @Override public void onStateChanged(DeviceSession d, int state, int status) { connState(d, state, status); }
+        @Override public void onCrashCountdown(double peakG, int secondsLeft) { showCrashCountdown(peakG, secondsLeft); }
+        @Override public void onCrashCountdownCancelled() { dismissCrashDialog(); }
+        @Override public void onSosSent(int result) {
+            dismissCrashDialog();
+            onSosResult(result);
+        }
+    };
 
-    // ===== Location helper for SOS =====
-    private LocationHelper loc;
+    // ===== Crash countdown dialog (the countdown itself runs in the service) =====
+    private AlertDialog crashDialog;
 
     // ===== Runtime permission helpers =====
     private boolean hasBtScanPerm() {
@@ -92,7 +96,22 @@ public class DevicesFragment extends Fragment {
         if (needConnect && !hasBtConnectPerm()) wanted.add(Manifest.permission.BLUETOOTH_CONNECT);
         if (!wanted.isEmpty()) btPermsLauncher.launch(wanted.toArray(new String[0]));
     }
+    private void requestSosPermsIfNeeded() {
+        ArrayList<String> wanted = new ArrayList<>();
+        for (String p : new String[]{Manifest.permission.ACCESS_FINE_LOCATION, Manifest.permission.SEND_SMS}) {
+            if (ContextCompat.checkSelfPermission(requireContext(), p) != PackageManager.PERMISSION_GRANTED) wanted.add(p);
+        }
+        // The ride notification, and the crash countdown when the screen is off
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            wanted.add(Manifest.permission.POST_NOTIFICATIONS);
+        }
+        if (!wanted.isEmpty()) btPermsLauncher.launch(wanted.toArray(new String[0]));
+    }
     private boolean isBtEnabledSafe() {
+        BluetoothManager mgr = requireContext().getSystemService(BluetoothManager.class);
+        BluetoothAdapter btAdapter = (mgr != null) ? mgr.getAdapter() : null;
         try { return btAdapter != null && btAdapter.isEnabled(); }
         catch (SecurityException se) {
             requestBtPermsIfNeeded(false, true);
@@ -110,276 +129,176 @@ public class DevicesFragment extends Fragment {
     @Override public void onViewCreated(@NonNull View v, @Nullable Bundle s) {
         super.onViewCreated(v, s);
 
-        loc = new LocationHelper(this);
-
         // SOS button
         Button sos = v.findViewById(R.id.button);
         sos.setOnClickListener(view -> onSosPressed());
 
         vm = new ViewModelProvider(requireActivity()).get(TelemetryViewModel.class);
+        coalescer = new TelemetryCoalescer(INGEST_RING_CAPACITY, IngestRing.Policy.OVERWRITE_OLDEST,
+                TelemetryCoalescer.Mode.FIELDS, vm, 0);
 
         tvConnStatus = v.findViewById(R.id.tvConnStatus);
         btnSync = v.findViewById(R.id.btnSync);
+        tvConnStatus.setOnLongClickListener(vw -> { openMetrics(); return true; });   // debug screen
 
-        vm.connected().observe(getViewLifecycleOwner(), connected -> {
-            Integer bat = vm.battery().getValue();
-            String batStr = (bat == null) ? "--" : String.valueOf(bat);
-            tvConnStatus.setText((connected ? "Connected" : "Disconnected") + " | Battery: " + batStr + "%");
-        });
-        vm.battery().observe(getViewLifecycleOwner(), bat -> {
-            Boolean connected = vm.connected().getValue();
-            String batStr = (bat == null) ? "--" : String.valueOf(bat);
-            tvConnStatus.setText(((connected != null && connected) ? "Connected" : "Disconnected") + " | Battery: " + batStr + "%");
-        });
+        shownConnected = null;
+        shownBattery = -2;
+        vm.connected().observe(getViewLifecycleOwner(), connected -> showStatus());
+        vm.battery().observe(getViewLifecycleOwner(), bat -> showStatus());
 
         btnSync.setOnClickListener(vw -> doSync());
+        btnSync.setOnLongClickListener(vw -> { endRideOrForget(); return true; });
+    }
 
-        BluetoothManager mgr = requireContext().getSystemService(BluetoothManager.class);
-        btAdapter = (mgr != null) ? mgr.getAdapter() : null;
-        scanner = (btAdapter != null) ? btAdapter.getBluetoothLeScanner() : null;
+    @Override public void onStart() {
+        super.onStart();
+        TelemetryService.bind(requireContext(), connection);
+    }
+
+    @Override public void onStop() {
+        super.onStop();
+        if (uiSamples != null) { uiSamples.cancel(); uiSamples = null; }
+        if (service != null) { service.removeListener(serviceListener); service = null; }
+        requireContext().unbindService(connection);
+        dismissCrashDialog();   // shown again from the service's countdown on the next bind
+    }
+
+    // Status line; rebuilt only when what it shows changes
+    private void showStatus() {
+        Boolean c = vm.connected().getValue();
+        boolean connected = c != null && c;
+        Integer b = vm.battery().getValue();
+        int bat = b == null ? -1 : b;
+        if (shownConnected != null && shownConnected == connected && shownBattery == bat) return;
+        shownConnected = connected;
+        shownBattery = bat;
+        tvConnStatus.setText((connected ? "Connected" : "Disconnected") + " | Battery: " + (bat < 0 ? "--" : String.valueOf(bat)) + "%");
+    }
+
+    private void openMetrics() {
+        View root = getView();
+        if (root == null || !(root.getParent() instanceof ViewGroup)) return;
+        getParentFragmentManager().beginTransaction()
+                .replace(((ViewGroup) root.getParent()).getId(), new MetricsFragment())
+                .addToBackStack("metrics")
+                .commit();
     }
 
     // ===== Entry: Sync/Connect =====
     private void doSync() {
-        if (!isBtEnabledSafe()) {
-            Toast.makeText(requireContext(), "Please enable Bluetooth", Toast.LENGTH_SHORT).show();
+        if (USE_SIMULATOR) {
+            TelemetryService.simulate(requireContext());
+            Toast.makeText(requireContext(), "Simulated " + TelemetryService.TARGET_NAME, Toast.LENGTH_SHORT).show();
             return;
         }
-        if (!hasBtScanPerm()) { requestBtPermsIfNeeded(true, false); return; }
-        startScan();
-    }
-
-    // ===== Scan (match by NAME like your friend) =====
-    private void startScan() {
-        if (scanning) return;
-        if (scanner == null) {
-            Toast.makeText(requireContext(),"No BLE scanner",Toast.LENGTH_SHORT).show();
+        if (!isBtEnabledSafe()) {
+            Toast.makeText(requireContext(), "Please enable Bluetooth", Toast.LENGTH_SHORT).show();
             return;
         }
-        if (!hasBtScanPerm()) { requestBtPermsIfNeeded(true, false); return; }
-
-        try {
-            scanner.startScan(scanCallback); // scan all, filter in callback
-            scanning = true;
-            handler.postDelayed(this::stopScan, 10_000);
-            Toast.makeText(requireContext(), "Scanning for " + TARGET_NAME + "...", Toast.LENGTH_SHORT).show();
-        } catch (SecurityException se) {
-            requestBtPermsIfNeeded(true, false);
-        }
+        if (!hasBtScanPerm() || !hasBtConnectPerm()) { requestBtPermsIfNeeded(true, true); return; }
+        requestSosPermsIfNeeded();   // asked for at ride start, never in the middle of an emergency
+        warnedBusy = false;
+        TelemetryService.connect(requireContext());   // keeps reconnecting every board until disconnect()
     }
 
-    private void stopScan() {
-        if (!scanning) return;
-        if (!hasBtScanPerm()) { requestBtPermsIfNeeded(true, false); return; }
-        try { scanner.stopScan(scanCallback); } catch (SecurityException ignored) {}
-        scanning = false;
+    private void disconnect() {
+        if (service == null) return;
+        service.disconnect();
+        Toast.makeText(requireContext(), "Disconnected", Toast.LENGTH_SHORT).show();
     }
 
-    private final ScanCallback scanCallback = new ScanCallback() {
-        @Override public void onScanResult(int callbackType, ScanResult result) {
-            BluetoothDevice device = result.getDevice();
-            String name = (result.getScanRecord() != null) ? result.getScanRecord().getDeviceName() : null;
-            if (name == null && hasBtConnectPerm()) {
-                try { name = device.getName(); } catch (SecurityException ignored) {}
-            }
-            String addr = device.getAddress();
-            Log.d(TAG, "Found: " + (name == null ? "(no name)" : name) + " [" + addr + "]");
-
-            if (name != null && name.equals(TARGET_NAME)) {
-                stopScan();
-                connect(device);
-            }
-        }
-    };
-
-    // ===== Connect → request MTU → discover services =====
-    private void connect(BluetoothDevice dev) {
-        closeGatt();
-        if (!hasBtConnectPerm()) { requestBtPermsIfNeeded(false, true); return; }
-        try {
-            Toast.makeText(requireContext(), "Connecting...", Toast.LENGTH_SHORT).show();
-            gatt = dev.connectGatt(requireContext(), false, gattCallback, BluetoothDevice.TRANSPORT_LE);
-        } catch (SecurityException se) {
-            requestBtPermsIfNeeded(false, true);
-        }
+    // Long press on Sync: end of ride while connected, otherwise drop the remembered boards
+    private void endRideOrForget() {
+        if (service == null) return;
+        if (service.isConnected()) { disconnect(); return; }
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Forget boards")
+                .setMessage("Sync will look for boards from scratch.")
+                .setNegativeButton("Cancel", null)
+                .setPositiveButton("Forget", (d, w) -> {
+                    if (service != null) service.forgetDevices();
+                    toast("Boards forgotten");
+                })
+                .show();
     }
 
-    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
-        @Override public void onConnectionStateChange(BluetoothGatt g, int status, int newState) {
-            if (newState == BluetoothProfile.STATE_CONNECTED) {
-                vm.setConnected(true);
-                if (hasBtConnectPerm()) {
-                    try {
-                        g.requestMtu(247); // friend’s flow
-                        runOnUi("Connected. Requesting MTU...");
-                    } catch (SecurityException ignored) {}
-                } else {
-                    requestBtPermsIfNeeded(false, true);
-                }
-            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                vm.setConnected(false);
-                if (status == 133 || status == 8 || status == 62) {
+    // Connection state (main thread, via the service) -> user feedback
+    private void connState(DeviceSession d, int state, int status) {
+        String who = (d != null && service != null && service.devices().size() > 1) ? d.label + ": " : "";
+        switch (state) {
+            case BleConnectionManager.SCANNING:
+                if (d == null) toast("Scanning for " + TelemetryService.TARGET_NAME + "...");   // discovery, not per-board rescans
+                break;
+            case BleConnectionManager.READY:
+                warnedBusy = false;
+                toast(who + "Subscribed to ESP32 characteristic");
+                break;
+            case BleConnectionManager.WAITING:
+                if ((status == BleConnectionManager.GATT_ERROR || status == BleConnectionManager.GATT_CONN_FAIL_ESTABLISH)
+                        && !warnedBusy) {
+                    warnedBusy = true;
                     toast("Device busy or connected elsewhere. Disconnect nRF Connect and retry.");
+                } else if (status == BleConnectionManager.GATT_CONN_TIMEOUT) {
+                    toast(who + "Connection lost, reconnecting...");
                 }
-                closeGatt();
-            }
-        }
-
-        @Override public void onMtuChanged(BluetoothGatt g, int mtu, int status) {
-            Log.d(TAG, "MTU changed to " + mtu + " (status=" + status + ")");
-            if (hasBtConnectPerm()) {
-                try { g.discoverServices(); } catch (SecurityException ignored) {}
-            } else {
-                requestBtPermsIfNeeded(false, true);
-            }
-        }
-
-        @Override public void onServicesDiscovered(BluetoothGatt g, int status) {
-            BluetoothGattService svc = g.getService(SERVICE_UUID);
-            if (svc == null) {
-                toast("Service not found: " + SERVICE_UUID);
-                if (hasBtConnectPerm()) try { g.disconnect(); } catch (SecurityException ignored) {}
-                return;
-            }
-
-            jsonChar = svc.getCharacteristic(CHAR_UUID);
-            if (jsonChar == null) {
-                toast("Characteristic not found: " + CHAR_UUID);
-                if (hasBtConnectPerm()) try { g.disconnect(); } catch (SecurityException ignored) {}
-                return;
-            }
-
-            if (!hasBtConnectPerm()) { requestBtPermsIfNeeded(false, true); return; }
-
-            try {
-                g.setCharacteristicNotification(jsonChar, true);
-                BluetoothGattDescriptor ccc = jsonChar.getDescriptor(CCC_UUID);
-                if (ccc != null) {
-                    ccc.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                    g.writeDescriptor(ccc);
+                break;
+            case BleConnectionManager.IDLE:
+                if (status == BleConnectionManager.STATUS_NOT_FOUND) toast(TelemetryService.TARGET_NAME + " not found");
+                else if (status == BleConnectionManager.STATUS_NO_PERMISSION) {
+                    if (isAdded()) requestBtPermsIfNeeded(true, true);
                 }
-                toast("Subscribed to ESP32 characteristic");
-            } catch (SecurityException ignored) {}
-        }
-
-        @Override
-        public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic ch) {
-            if (!CHAR_UUID.equals(ch.getUuid())) return;
-            String jsonStr = new String(ch.getValue(), StandardCharsets.UTF_8).trim();
-            Log.d(TAG, "Received: " + jsonStr);
-
-            try {
-                JSONObject json = new JSONObject(jsonStr);
-                double tempC   = json.optDouble("temp",  Double.NaN);
-                double speed   = json.optDouble("speed", Double.NaN);
-                double gforce  = json.optDouble("gforce",Double.NaN);
-                double battery = json.optDouble("bat",   Double.NaN);
-
-                if (!Double.isNaN(tempC))   vm.setTemp(tempC);
-                if (!Double.isNaN(speed))   vm.setSpeed(speed);
-                if (!Double.isNaN(gforce))  vm.setGforce(gforce);
-                if (!Double.isNaN(battery)) vm.setBattery((int) Math.round(battery));
-            } catch (Exception e) {
-                Log.w(TAG, "Bad JSON: " + jsonStr, e);
-            }
+                break;
         }
-    };
-
-    private void runOnUi(String msg) {
-        handler.post(() -> Toast.makeText(requireContext(), msg, Toast.LENGTH_SHORT).show());
-    }
-    private void toast(String s) {
-        handler.post(() -> Toast.makeText(requireContext(), s, Toast.LENGTH_SHORT).show());
     }
 
-    private void closeGatt() {
-        try { if (gatt != null) gatt.disconnect(); } catch (SecurityException ignored) {}
-        try { if (gatt != null) gatt.close(); } catch (SecurityException ignored) {}
-        gatt = null; jsonChar = null;
+    private void toast(String s) {
+        if (isAdded()) Toast.makeText(requireContext(), s, Toast.LENGTH_SHORT).show();
     }
 
     @Override public void onDestroyView() {
         super.onDestroyView();
-        closeGatt();
+        if (coalescer != null) { coalescer.stop(); coalescer = null; }
+        dismissCrashDialog();
     }
 
-    // ===== SOS flow (unchanged) =====
-
-    private void onSosPressed() {
-        JSONArray list = loadContacts();
-        if (list.length() == 0) {
-            Toast.makeText(requireContext(), "No emergency contacts yet", Toast.LENGTH_SHORT).show();
-            return;
+    private void showCrashCountdown(double peakG, int secondsLeft) {
+        if (!isAdded()) return;
+        if (crashDialog == null) {
+            Log.w(TAG, "Crash detected, peak " + peakG + " g");
+            crashDialog = new AlertDialog.Builder(requireContext())
+                    .setTitle("Crash detected")
+                    .setMessage("Sending SOS in " + secondsLeft + " s")
+                    .setCancelable(false)
+                    .setNegativeButton("I'm OK", (d, w) -> { if (service != null) service.cancelCrashCountdown(); })
+                    .setPositiveButton("Send now", (d, w) -> onSosPressed())
+                    .show();
+        } else {
+            crashDialog.setMessage("Sending SOS in " + secondsLeft + " s");
         }
-        String number = getPrimaryNumber(list);
-
-        loc.getCurrent(new LocationHelper.Callback() {
-            @Override public void onOk(double lat, double lng) {
-                String msg = buildSosMessageWithLocation(lat, lng);
-                sendWhatsAppOrSms(number, msg);
-            }
-            @Override public void onFail(String reason) {
-                String msg = buildSosMessageNoLocation();
-                sendWhatsAppOrSms(number, msg);
-            }
-        });
     }
 
-    private String buildSosMessageWithLocation(double lat, double lng) {
-        String map = "https://maps.google.com/?q=" + lat + "," + lng;
-        return "🚨 SOS! I need help.\n"
-                + "• App: NeuroRide V2\n"
-                + "• Location: " + map + "\n"
-                + "Please call me ASAP.";
-    }
-    private String buildSosMessageNoLocation() {
-        return "🚨 SOS! I need help.\n"
-                + "• App: NeuroRide V2\n"
-                + "• Location: unavailable\n"
-                + "Please call me ASAP.";
+    private void dismissCrashDialog() {
+        if (crashDialog != null) { crashDialog.dismiss(); crashDialog = null; }
     }
 
-    private JSONArray loadContacts() {
-        Context ctx = requireContext();
-        String s = ctx.getSharedPreferences(SP, Context.MODE_PRIVATE).getString(KEY_LIST, "[]");
-        try { return new JSONArray(s); } catch (JSONException e) { return new JSONArray(); }
-    }
-    private String getPrimaryNumber(JSONArray list) {
-        JSONObject o = list.optJSONObject(0);
-        return o != null ? o.optString("phone", "") : "";
-    }
+    // ===== SOS flow =====
 
-    private String normalizePhone(String raw) {
-        if (raw == null) return "";
-        String digits = raw.replaceAll("[^0-9]", "");
-        if (digits.startsWith("00")) digits = digits.substring(2);
-        return digits;
-    }
-    private boolean appInstalled(String pkg) {
-        try { requireContext().getPackageManager().getPackageInfo(pkg, 0); return true; }
-        catch (Exception e) { return false; }
+    // Through an Intent, so it goes out whether or not the binding is up yet
+    private void onSosPressed() {
+        TelemetryService.sos(requireContext());   // result comes back through onSosSent while bound
     }
-    private void sendWhatsAppOrSms(String rawPhone, String message) {
-        String phone = normalizePhone(rawPhone);
-        if (phone.isEmpty()) {
-            Toast.makeText(requireContext(), "Invalid phone number", Toast.LENGTH_SHORT).show();
-            return;
-        }
-        Uri waUri = Uri.parse("https://wa.me/" + phone + "?text=" + Uri.encode(message));
-        Intent i = new Intent(Intent.ACTION_VIEW, waUri);
-        if (appInstalled("com.whatsapp.w4b")) i.setPackage("com.whatsapp.w4b");
-        else if (appInstalled("com.whatsapp")) i.setPackage("com.whatsapp");
-
-        try {
-            startActivity(i);
-        } catch (Exception e) {
-            try {
-                Intent sms = new Intent(Intent.ACTION_SENDTO, Uri.parse("smsto:" + phone));
-                sms.putExtra("sms_body", message);
-                startActivity(sms);
-            } catch (Exception ex) {
+
+    private void onSosResult(int result) {
+        switch (result) {
+            case SosDispatcher.NO_CONTACTS:
+                Toast.makeText(requireContext(), "No emergency contacts yet", Toast.LENGTH_SHORT).show();
+                return;
+            case SosDispatcher.NO_APP:
                 Toast.makeText(requireContext(), "No app to send message", Toast.LENGTH_SHORT).show();
-            }
+                break;
+            case SosDispatcher.SENT_SMS:
+                Toast.makeText(requireContext(), "SOS sent", Toast.LENGTH_SHORT).show();
+                break;
         }
     }
 }
@@ -0,0 +1,226 @@
+package com.example.neuroridev2;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Black box: the last `capacity` decoded samples and connection events of every board, kept in one
+// fixed byte[] ring (no allocation per sample) and written out when something happens. freeze()
+// (SOS) or a g-force reading at or above freezeG (after postTriggerMs more, so the impact itself
+// is in the dump) copies the ring into a second preallocated buffer under the lock, and the copy
+// is written to blackbox/ as a temp file and renamed, so a dump is either complete or absent.
+//
+// Each record keeps both clocks and the sample as a TelemetryCodec type 0x01 frame, so replay()
+// goes back through TelemetryCodec.decode like live data. File layout, little-endian:
+//
+//   header  "NRBB", u8 version, u8 reason, u16 record length, u32 count,
+//           i64 wall clock ms and i64 elapsedRealtime ms at freeze, i64 trigger (elapsedRealtime ms)
+//   records oldest first, RECORD_LEN bytes each:
+//           u8 kind, u8 device, i16 link status, i64 phone ms (elapsedRealtime), u32 seq (or -1),
+//           then an 18-byte sample frame (zeros for events), 2 bytes padding
+//
+// FlightRecorderTestRunner checks a threshold dump end to end and runs CrashReplay on dumps.
+public final class FlightRecorder {
+
+    public static final class Config {
+        public int capacity = 8192;          // records; ~40 s of two boards at 100 Hz
+        public double freezeG = 4.0;         // Double.NaN disables the threshold
+        public long postTriggerMs = 2000;    // keep recording this long after the threshold trips
+        public long cooldownMs = 30_000;     // no new threshold dump within this of the last one
+        public int keepDumps = 20;
+    }
+
+    public interface Listener {
+        // On the dump thread, once per dump: the file and its record count, or the error and a null file
+        void onDump(File dump, int records, IOException error);
+    }
+
+    public interface Replay {
+        // `s` is scratch, decoded from the stored frame; phoneMs on the elapsedRealtime timeline
+        void onSample(int device, long phoneMs, TelemetrySample s);
+        void onEvent(int kind, int device, int status, long phoneMs);
+    }
+
+    public static final int KIND_SAMPLE = 0;
+    public static final int KIND_LINK_UP = 1;
+    public static final int KIND_LINK_DOWN = 2;
+
+    public static final int REASON_SOS = 1;
+    public static final int REASON_GFORCE = 2;
+    public static final int REASON_MANUAL = 3;
+
+    static final int RECORD_LEN = 36;
+    private static final int HEADER_LEN = 36;
+    private static final byte[] MAGIC = {'N', 'R', 'B', 'B'};
+    private static final int FILE_VERSION = 1;
+
+    private final File dir;
+    private final Config cfg;
+    private final Listener listener;
+    private final byte[] ring, frozen;
+    private final ByteBuffer w;     // over ring
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> new Thread(r, "blackbox-io"));
+
+    // Guarded by this
+    private long written;           // records ever appended
+    private long armedUntilMs;      // > 0 while a threshold dump waits for postTriggerMs
+    private long triggerMs;
+    private long lastFreezeMs = Long.MIN_VALUE / 2;
+    private boolean persisting;     // `frozen` is being written out
+
+    public FlightRecorder(File dir, Config cfg, Listener listener) {
+        this.dir = dir;
+        this.cfg = cfg;
+        this.listener = listener;
+        ring = new byte[cfg.capacity * RECORD_LEN];
+        frozen = new byte[ring.length];
+        w = ByteBuffer.wrap(ring).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // ===== Recording (any device thread) =====
+
+    // tMs: elapsedRealtime timeline (see DeviceClock); s.deviceTimeMs is still the board's clock.
+    public synchronized void onSample(int device, long tMs, TelemetrySample s) {
+        int o = next(KIND_SAMPLE, device, 0, tMs, s.seq);
+        TelemetryCodec.encodeSample(s, ring, o + 16);
+
+        if (armedUntilMs > 0) {
+            if (tMs >= armedUntilMs) { armedUntilMs = 0; freezeLocked(REASON_GFORCE, triggerMs, tMs); }
+        } else if (s.has(TelemetrySample.GFORCE) && s.gforce >= cfg.freezeG && tMs - lastFreezeMs >= cfg.cooldownMs) {
+            triggerMs = tMs;
+            armedUntilMs = tMs + Math.max(1, cfg.postTriggerMs);
+        }
+    }
+
+    public synchronized void onLink(int device, boolean up, int status, long tMs) {
+        int o = next(up ? KIND_LINK_UP : KIND_LINK_DOWN, device, status, tMs, -1);
+        Arrays.fill(ring, o + 16, o + RECORD_LEN, (byte) 0);
+    }
+
+    private int next(int kind, int device, int status, long tMs, long seq) {
+        int o = (int) (written % cfg.capacity) * RECORD_LEN;
+        written++;
+        w.put(o, (byte) kind);
+        w.put(o + 1, (byte) device);
+        w.putShort(o + 2, (short) status);
+        w.putLong(o + 4, tMs);
+        w.putInt(o + 12, (int) seq);
+        w.putShort(o + 34, (short) 0);
+        return o;
+    }
+
+    // ===== Freeze / persist =====
+
+    // SOS and manual dumps: immediately, whatever the cooldown. tMs: elapsedRealtime, like onSample.
+    public synchronized void freeze(int reason, long tMs) {
+        armedUntilMs = 0;
+        freezeLocked(reason, tMs, tMs);
+    }
+
+    private void freezeLocked(int reason, long trigger, long now) {
+        lastFreezeMs = now;
+        int count = (int) Math.min(written, cfg.capacity);
+        if (count == 0) return;
+        // Only a dump while the previous one is still being written (SOS right after an impact) allocates
+        byte[] dst = persisting ? new byte[ring.length] : frozen;
+        int first = (int) ((written - count) % cfg.capacity);
+        int head = (cfg.capacity - first) * RECORD_LEN;   // oldest..end of ring, then the wrapped part
+        if (count == cfg.capacity) {
+            System.arraycopy(ring, first * RECORD_LEN, dst, 0, head);
+            System.arraycopy(ring, 0, dst, head, first * RECORD_LEN);
+        } else {
+            System.arraycopy(ring, 0, dst, 0, count * RECORD_LEN);
+        }
+        if (dst == frozen) persisting = true;
+        long wallMs = System.currentTimeMillis();
+        io.execute(() -> persist(dst, reason, count, wallMs, now, trigger));
+    }
+
+    private void persist(byte[] records, int reason, int count, long wallMs, long elapsedMs, long trigger) {
+        File tmp = new File(dir, "blackbox.tmp");
+        File out = new File(dir, String.format(Locale.US, "blackbox-%d-%s.bin", wallMs, reasonName(reason)));
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+            ByteBuffer h = ByteBuffer.allocate(HEADER_LEN).order(ByteOrder.LITTLE_ENDIAN);
+            h.put(MAGIC).put((byte) FILE_VERSION).put((byte) reason).putShort((short) RECORD_LEN).putInt(count)
+                    .putLong(wallMs).putLong(elapsedMs).putLong(trigger);
+            try (FileOutputStream os = new FileOutputStream(tmp)) {
+                os.write(h.array());
+                os.write(records, 0, count * RECORD_LEN);
+                os.getFD().sync();
+            }
+            if (!tmp.renameTo(out)) throw new IOException("Cannot rename to " + out);
+            prune();
+            listener.onDump(out, count, null);
+        } catch (IOException e) {
+            tmp.delete();
+            listener.onDump(null, 0, e);
+        } finally {
+            if (records == frozen) synchronized (this) { persisting = false; }
+        }
+    }
+
+    private void prune() {
+        File[] dumps = dir.listFiles((d, name) -> name.startsWith("blackbox-") && name.endsWith(".bin"));
+        if (dumps == null || dumps.length <= cfg.keepDumps) return;
+        Arrays.sort(dumps, (a, b) -> a.getName().compareTo(b.getName()));   // wall clock in the name
+        for (int i = 0; i < dumps.length - cfg.keepDumps; i++) dumps[i].delete();
+    }
+
+    public void release() { io.shutdown(); }
+
+    static String reasonName(int reason) {
+        switch (reason) {
+            case REASON_SOS:    return "sos";
+            case REASON_GFORCE: return "gforce";
+            default:            return "manual";
+        }
+    }
+
+    // ===== Replay =====
+
+    // Feeds every record of a dump to `out`, samples through TelemetryCodec.decode. Returns the
+    // trigger time (elapsedRealtime ms) from the header.
+    public static long replay(File dump, Replay out) throws IOException {
+        try (InputStream in = new FileInputStream(dump)) {
+            DataInputStream din = new DataInputStream(in);
+            byte[] hb = new byte[HEADER_LEN];
+            din.readFully(hb);
+            ByteBuffer h = ByteBuffer.wrap(hb).order(ByteOrder.LITTLE_ENDIAN);
+            for (byte m : MAGIC) if (h.get() != m) throw new IOException("Not a black box dump: " + dump);
+            if (h.get() != FILE_VERSION) throw new IOException("Unsupported black box version");
+            h.get();   // reason
+            int recLen = h.getShort() & 0xFFFF;
+            int count = h.getInt();
+            h.getLong();
+            h.getLong();
+            long trigger = h.getLong();
+
+            byte[] rec = new byte[recLen];
+            byte[] frame = new byte[TelemetryCodec.SAMPLE_FRAME_LEN];
+            ByteBuffer r = ByteBuffer.wrap(rec).order(ByteOrder.LITTLE_ENDIAN);
+            TelemetrySample s = new TelemetrySample();
+            for (int i = 0; i < count; i++) {
+                din.readFully(rec);
+                int kind = rec[0] & 0xFF, device = rec[1] & 0xFF;
+                long tMs = r.getLong(4);
+                if (kind != KIND_SAMPLE) { out.onEvent(kind, device, r.getShort(2), tMs); continue; }
+                System.arraycopy(rec, 16, frame, 0, frame.length);
+                if (!TelemetryCodec.decode(frame, frame.length, s)) continue;
+                int seq = r.getInt(12);
+                s.seq = seq == -1 ? -1 : seq & 0xFFFFFFFFL;
+                out.onSample(device, tMs, s);
+            }
+            return trigger;
+        }
+    }
+}
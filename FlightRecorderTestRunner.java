@@ -0,0 +1,128 @@
+package com.example.neuroridev2;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+// Without arguments: runs CrashReplay on synthetic rides, then records a synthetic crash through
+// FlightRecorder until the g-force threshold dumps it, replays the dump and runs CrashReplay on
+// that. With arguments: runs CrashReplay on each black box dump (.bin) or CSV trace.
+//
+//   java com.example.neuroridev2.FlightRecorderTestRunner [blackbox-....bin | trace.csv ...]
+public final class FlightRecorderTestRunner {
+
+    static final int HZ = 100;
+    static final long CRASH_AT_MS = 120_000;
+
+    public static void main(String[] args) throws Exception {
+        CrashDetector.Config cfg = new CrashDetector.Config();
+        long tolerance = cfg.settleMs + cfg.observeTimeoutMs + 2000;
+        if (args.length > 0) {
+            for (String path : args) System.out.println(path + ": " + CrashReplay.run(cfg, load(path), tolerance));
+            return;
+        }
+
+        CrashReplay.Trace quiet = CrashReplay.synthetic("2h ride, no crash", HZ, 2 * 3_600_000L, new long[0], 1);
+        CrashReplay.Result r = CrashReplay.run(cfg, quiet, tolerance);
+        System.out.println(quiet.name + ": " + r);
+        Checks.check("quiet ride: no detection", r.detections == 0);
+
+        CrashReplay.Trace crashes = CrashReplay.synthetic("1h ride, 3 crashes", HZ, 3_600_000L,
+                new long[]{600_000, 1_800_000, 3_000_000}, 2);
+        r = CrashReplay.run(cfg, crashes, tolerance);
+        System.out.println(crashes.name + ": " + r);
+        Checks.check("3 crashes: all detected", r.truePositives == 3 && r.missed == 0);
+        Checks.check("3 crashes: no false positive", r.falsePositives == 0);
+
+        blackBox(cfg, tolerance);
+        Checks.exit();
+    }
+
+    // A 3 min ride with a crash at CRASH_AT_MS, recorded until the threshold dump is written
+    static void blackBox(CrashDetector.Config cfg, long tolerance) throws Exception {
+        CrashReplay.Trace ride = CrashReplay.synthetic("black box", HZ, 180_000, new long[]{CRASH_AT_MS}, 3);
+        File dir = Files.createTempDirectory("blackbox").toFile();
+        FlightRecorder.Config fc = new FlightRecorder.Config();
+        fc.freezeG = 5.0;              // above the synthetic kerb hits, below the impact
+        fc.postTriggerMs = 4000;       // long enough for the detector to see the rider lie still
+        final IOException[] failed = {null};
+        FlightRecorder rec = new FlightRecorder(dir, fc, (dump, records, error) -> { if (error != null) failed[0] = error; });
+        TelemetrySample s = new TelemetrySample();
+        long firstOver = -1;
+        rec.onLink(0, true, 0, 0);
+        for (int i = 0; i < ride.t.length; i++) {
+            s.clear();
+            s.mask = TelemetrySample.GFORCE;
+            s.seq = i;
+            s.deviceTimeMs = ride.t[i];
+            s.gforce = ride.g[i];
+            if (firstOver < 0 && s.gforce >= fc.freezeG) firstOver = ride.t[i];
+            rec.onSample(0, ride.t[i], s);
+        }
+        rec.release();
+
+        File[] dumps = null;
+        for (int tries = 0; tries < 50; tries++) {
+            dumps = dir.listFiles((d, name) -> name.startsWith("blackbox-") && name.endsWith("-gforce.bin"));
+            if (dumps != null && dumps.length > 0) break;
+            Thread.sleep(100);
+        }
+        Checks.check("black box: no dump error", failed[0] == null);
+        Checks.check("black box: one threshold dump", dumps != null && dumps.length == 1);
+        if (dumps == null || dumps.length != 1) return;
+
+        final int[] counts = new int[2];   // samples, events
+        final long[] lastSeq = {-1};
+        final boolean[] ordered = {true};
+        long trigger = FlightRecorder.replay(dumps[0], new FlightRecorder.Replay() {
+            @Override public void onSample(int device, long phoneMs, TelemetrySample t) {
+                ordered[0] &= t.seq == lastSeq[0] + 1 || lastSeq[0] < 0;
+                lastSeq[0] = t.seq;
+                counts[0]++;
+            }
+            @Override public void onEvent(int kind, int device, int status, long phoneMs) { counts[1]++; }
+        });
+        CrashReplay.Trace replayed = load(dumps[0].getPath());
+        CrashReplay.Result r = CrashReplay.run(cfg, replayed, tolerance);
+        System.out.println("replayed dump: " + r);
+        Checks.check("black box: the crash is detected in the dump", r.truePositives == 1 && r.falsePositives == 0);
+        Checks.check("black box: trigger is the first sample over freezeG", trigger == firstOver);
+        Checks.check("black box: the ring is full and in order", counts[0] + counts[1] == fc.capacity && ordered[0]);
+        Checks.check("black box: ends postTriggerMs after the trigger",
+                replayed.t[replayed.t.length - 1] - trigger == fc.postTriggerMs);
+        float recorded = ride.g[Arrays.binarySearch(ride.t, trigger)];
+        float back = replayed.g[Arrays.binarySearch(replayed.t, trigger)];
+        Checks.check("black box: g survives the frame", Math.abs(back - recorded) <= 0.0005);
+
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    // A dump becomes a trace of its g-force samples (all boards) with the trigger as the incident
+    static CrashReplay.Trace load(String path) throws IOException {
+        if (!path.endsWith(".bin")) {
+            try (Reader in = new FileReader(path)) { return CrashReplay.loadCsv(path, in); }
+        }
+        final long[][] t = {new long[1024]};
+        final float[][] g = {new float[1024]};
+        final int[] n = {0};
+        long trigger = FlightRecorder.replay(new File(path), new FlightRecorder.Replay() {
+            @Override public void onSample(int device, long phoneMs, TelemetrySample s) {
+                if (!s.has(TelemetrySample.GFORCE)) return;
+                if (n[0] == t[0].length) {
+                    t[0] = Arrays.copyOf(t[0], n[0] * 2);
+                    g[0] = Arrays.copyOf(g[0], n[0] * 2);
+                }
+                t[0][n[0]] = phoneMs;
+                g[0][n[0]++] = (float) s.gforce;
+            }
+            @Override public void onEvent(int kind, int device, int status, long phoneMs) {}
+        });
+        return new CrashReplay.Trace(path, Arrays.copyOf(t[0], n[0]), Arrays.copyOf(g[0], n[0]), null, new long[]{trigger});
+    }
+
+    private FlightRecorderTestRunner() {}
+}
@@ -0,0 +1,128 @@
+package com.example.neuroridev2;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+// Android's GATT client runs one operation at a time: a second requestMtu / discoverServices /
+// writeDescriptor issued before the first one's callback is silently refused or, worse, dropped.
+// Operations go through this queue instead; the next one starts only after the matching GATT
+// callback calls complete(), or after its timeout.
+//
+// Optional operations (link tuning) only log when they fail; a failed required one goes to the
+// FailureListener, which usually tears the link down. An operation with no callback at all
+// (requestConnectionPriority) is queued with timeoutMs 0 and counts as done once started.
+//
+// Not thread-safe: enqueue, complete and clear all run on `handler`'s thread.
+final class GattOpQueue {
+
+    private static final String TAG = "NeuroRideBLE";
+
+    interface Op {
+        // Start the operation; return false if the stack refused it.
+        boolean start(BluetoothGatt g);
+    }
+
+    interface FailureListener {
+        // status is the GATT status, or STATUS_REFUSED / STATUS_TIMEOUT
+        void onOpFailed(String name, int status);
+    }
+
+    static final int STATUS_REFUSED = -1;
+    static final int STATUS_TIMEOUT = -2;
+
+    private static final class Entry {
+        final String name;
+        final long timeoutMs;
+        final boolean optional;
+        final Op op;
+        Entry(String name, long timeoutMs, boolean optional, Op op) {
+            this.name = name; this.timeoutMs = timeoutMs; this.optional = optional; this.op = op;
+        }
+    }
+
+    private final Handler handler;
+    private final FailureListener failures;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private BluetoothGatt gatt;
+    private Entry current;
+
+    private final Runnable timeout = this::onTimeout;
+
+    GattOpQueue(Handler handler, FailureListener failures) {
+        this.handler = handler;
+        this.failures = failures;
+    }
+
+    // Drops everything queued and binds the queue to a new connection (null to detach).
+    void attach(BluetoothGatt g) {
+        clear();
+        gatt = g;
+    }
+
+    void enqueue(String name, long timeoutMs, Op op) { add(new Entry(name, timeoutMs, false, op)); }
+
+    void enqueueOptional(String name, long timeoutMs, Op op) { add(new Entry(name, timeoutMs, true, op)); }
+
+    private void add(Entry e) {
+        pending.add(e);
+        if (current == null) next();
+    }
+
+    // Called from the GATT callback that ends the current operation.
+    void complete(int status) {
+        if (current == null) return;
+        Entry e = current;
+        current = null;
+        handler.removeCallbacks(timeout);
+        if (status != BluetoothGatt.GATT_SUCCESS) failed(e, status);
+        next();
+    }
+
+    void clear() {
+        pending.clear();
+        current = null;
+        handler.removeCallbacks(timeout);
+    }
+
+    private void onTimeout() {
+        if (current == null) return;
+        Entry e = current;
+        current = null;
+        Log.w(TAG, "GATT " + e.name + " timed out after " + e.timeoutMs + " ms");
+        failed(e, STATUS_TIMEOUT);
+        next();
+    }
+
+    private void failed(Entry e, int status) {
+        if (e.optional) Log.d(TAG, "GATT " + e.name + " failed (status " + status + "), ignored");
+        else failures.onOpFailed(e.name, status);
+    }
+
+    boolean isIdle() { return current == null && pending.isEmpty(); }
+
+    // For callbacks that can also arrive unasked (e.g. a PHY change the peer started)
+    boolean isCurrent(String name) { return current != null && current.name.equals(name); }
+
+    private void next() {
+        while (current == null && !pending.isEmpty() && gatt != null) {
+            Entry e = pending.poll();
+            boolean started;
+            try {
+                started = e.op.start(gatt);
+            } catch (SecurityException se) {
+                started = false;
+            }
+            if (!started) {
+                Log.w(TAG, "GATT " + e.name + " refused");
+                failed(e, STATUS_REFUSED);
+                continue;
+            }
+            if (e.timeoutMs <= 0) continue;   // no callback to wait for
+            current = e;
+            handler.postDelayed(timeout, e.timeoutMs);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.neuroridev2;
+
+import java.nio.ByteBuffer;
+
+// Gorilla-style column compression (Pelkonen et al., VLDB 2015) over a fixed bit region of a
+// ByteBuffer: delta-of-delta timestamps and XOR-ed float values. Encoders and decoders keep
+// their state in primitive fields and write through absolute get/put, so nothing allocates.
+//
+// Regions are expected to start zeroed; bits are OR-ed in.
+final class GorillaCodec {
+
+    // Worst-case bits for one more value, used to decide when a block is full
+    static final int MAX_TIME_BITS = 4 + 32;
+    static final int MAX_FLOAT_BITS = 2 + 5 + 6 + 32;
+
+    private GorillaCodec() {}
+
+    // ===== Bit I/O =====
+
+    static void writeBits(ByteBuffer b, int base, long bitPos, long value, int nbits) {
+        while (nbits > 0) {
+            int idx = base + (int) (bitPos >>> 3);
+            int free = 8 - (int) (bitPos & 7);
+            int take = Math.min(free, nbits);
+            int chunk = (int) (value >>> (nbits - take)) & ((1 << take) - 1);
+            b.put(idx, (byte) (b.get(idx) | (chunk << (free - take))));
+            bitPos += take;
+            nbits -= take;
+        }
+    }
+
+    static long readBits(ByteBuffer b, int base, long bitPos, int nbits) {
+        long v = 0;
+        while (nbits > 0) {
+            int idx = base + (int) (bitPos >>> 3);
+            int avail = 8 - (int) (bitPos & 7);
+            int take = Math.min(avail, nbits);
+            int chunk = ((b.get(idx) & 0xFF) >>> (avail - take)) & ((1 << take) - 1);
+            v = (v << take) | chunk;
+            bitPos += take;
+            nbits -= take;
+        }
+        return v;
+    }
+
+    // ===== Timestamps: delta-of-delta =====
+    //   '0'                 dod == 0
+    //   '10'   + 7 bits     dod in [-64, 63]
+    //   '110'  + 9 bits     dod in [-256, 255]
+    //   '1110' + 12 bits    dod in [-2048, 2047]
+    //   '1111' + 32 bits    anything else that fits an int
+    // The first timestamp of a block lives in the block header, so the first encoded value is a delta.
+    static final class TimeEncoder {
+        int base;          // byte offset of the region
+        int limitBits;     // region size in bits
+        long bitPos;
+        long prevTime, prevDelta;
+
+        void reset(int base, int limitBits, long firstTime) {
+            this.base = base;
+            this.limitBits = limitBits;
+            bitPos = 0;
+            prevTime = firstTime;
+            prevDelta = 0;
+        }
+
+        boolean fits(long t) {
+            long dod = (t - prevTime) - prevDelta;
+            return dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE
+                    && bitPos + MAX_TIME_BITS <= limitBits;
+        }
+
+        void append(ByteBuffer b, long t) {
+            long delta = t - prevTime;
+            long dod = delta - prevDelta;
+            if (dod == 0) {
+                writeBits(b, base, bitPos, 0, 1); bitPos += 1;
+            } else if (dod >= -64 && dod <= 63) {
+                writeBits(b, base, bitPos, 0b10, 2); writeBits(b, base, bitPos + 2, dod, 7); bitPos += 9;
+            } else if (dod >= -256 && dod <= 255) {
+                writeBits(b, base, bitPos, 0b110, 3); writeBits(b, base, bitPos + 3, dod, 9); bitPos += 12;
+            } else if (dod >= -2048 && dod <= 2047) {
+                writeBits(b, base, bitPos, 0b1110, 4); writeBits(b, base, bitPos + 4, dod, 12); bitPos += 16;
+            } else {
+                writeBits(b, base, bitPos, 0b1111, 4); writeBits(b, base, bitPos + 4, dod, 32); bitPos += 36;
+            }
+            prevDelta = delta;
+            prevTime = t;
+        }
+    }
+
+    static final class TimeDecoder {
+        int base;
+        long bitPos;
+        long prevTime, prevDelta;
+
+        void reset(int base, long firstTime) {
+            this.base = base;
+            bitPos = 0;
+            prevTime = firstTime;
+            prevDelta = 0;
+        }
+
+        long next(ByteBuffer b) {
+            int n;
+            if (readBits(b, base, bitPos++, 1) == 0) n = 0;
+            else if (readBits(b, base, bitPos++, 1) == 0) n = 7;
+            else if (readBits(b, base, bitPos++, 1) == 0) n = 9;
+            else if (readBits(b, base, bitPos++, 1) == 0) n = 12;
+            else n = 32;
+            long dod = 0;
+            if (n > 0) {
+                dod = readBits(b, base, bitPos, n);
+                bitPos += n;
+                dod = (dod << (64 - n)) >> (64 - n);   // sign-extend
+            }
+            prevDelta += dod;
+            prevTime += prevDelta;
+            return prevTime;
+        }
+    }
+
+    // ===== Floats: XOR with previous value =====
+    //   first value: 32 raw bits
+    //   '0'                                   same as previous
+    //   '10' + meaningful bits                fits inside previous leading/trailing window
+    //   '11' + 5 bits leading + 6 bits length + meaningful bits
+    static final class FloatEncoder {
+        int base;
+        int limitBits;
+        long bitPos;
+        int prevBits;
+        int prevLead, prevTrail;
+        boolean first;
+
+        void reset(int base, int limitBits) {
+            this.base = base;
+            this.limitBits = limitBits;
+            bitPos = 0;
+            prevBits = 0;
+            prevLead = prevTrail = -1;
+            first = true;
+        }
+
+        boolean fits() { return bitPos + MAX_FLOAT_BITS <= limitBits; }
+
+        void append(ByteBuffer b, float v) {
+            int bits = Float.floatToRawIntBits(v);
+            if (first) {
+                writeBits(b, base, bitPos, bits & 0xFFFFFFFFL, 32);
+                bitPos += 32;
+                first = false;
+                prevBits = bits;
+                return;
+            }
+            int xor = bits ^ prevBits;
+            prevBits = bits;
+            if (xor == 0) {
+                writeBits(b, base, bitPos, 0, 1);
+                bitPos += 1;
+                return;
+            }
+            int lead = Math.min(31, Integer.numberOfLeadingZeros(xor));
+            int trail = Integer.numberOfTrailingZeros(xor);
+            if (prevLead >= 0 && lead >= prevLead && trail >= prevTrail) {
+                int len = 32 - prevLead - prevTrail;
+                writeBits(b, base, bitPos, 0b10, 2);
+                writeBits(b, base, bitPos + 2, (xor >>> prevTrail) & 0xFFFFFFFFL, len);
+                bitPos += 2 + len;
+            } else {
+                int len = 32 - lead - trail;
+                writeBits(b, base, bitPos, 0b11, 2);
+                writeBits(b, base, bitPos + 2, lead, 5);
+                writeBits(b, base, bitPos + 7, len, 6);
+                writeBits(b, base, bitPos + 13, (xor >>> trail) & 0xFFFFFFFFL, len);
+                bitPos += 13 + len;
+                prevLead = lead;
+                prevTrail = trail;
+            }
+        }
+    }
+
+    static final class FloatDecoder {
+        int base;
+        long bitPos;
+        int prevBits;
+        int prevLead, prevTrail;
+        boolean first;
+
+        void reset(int base) {
+            this.base = base;
+            bitPos = 0;
+            prevBits = 0;
+            prevLead = prevTrail = -1;   // same as the encoder, so its state can be restored from ours
+            first = true;
+        }
+
+        float next(ByteBuffer b) {
+            if (first) {
+                prevBits = (int) readBits(b, base, bitPos, 32);
+                bitPos += 32;
+                first = false;
+                return Float.intBitsToFloat(prevBits);
+            }
+            if (readBits(b, base, bitPos++, 1) == 0) return Float.intBitsToFloat(prevBits);
+            if (readBits(b, base, bitPos++, 1) != 0) {
+                prevLead = (int) readBits(b, base, bitPos, 5);
+                int len = (int) readBits(b, base, bitPos + 5, 6);
+                bitPos += 11;
+                prevTrail = 32 - prevLead - len;
+            }
+            int len = 32 - prevLead - prevTrail;
+            int xor = (int) readBits(b, base, bitPos, len) << prevTrail;
+            bitPos += len;
+            prevBits ^= xor;
+            return Float.intBitsToFloat(prevBits);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.neuroridev2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Single-producer / single-consumer ring of decoded samples, stored column-wise in primitive
+// arrays so neither side allocates. Producer is the device's BLE thread, consumer the UI frame.
+//
+// When the ring is full:
+//   DROP_NEWEST      - the incoming sample is rejected (consumer sees a contiguous prefix)
+//   OVERWRITE_OLDEST - the oldest unread sample is discarded (consumer always sees the latest)
+//
+// For OVERWRITE_OLDEST the producer moves `tail` forward with a CAS, and the consumer
+// commits every read with a CAS on `tail`, so a slot overwritten mid-read is never delivered.
+public final class IngestRing {
+
+    public enum Policy { DROP_NEWEST, OVERWRITE_OLDEST }
+
+    private final Policy policy;
+    private final int capacity;
+    private final int mask;
+
+    private final long[] time;
+    private final long[] seq;
+    private final int[] fields;
+    private final float[] gforce, temp, speed, volt;
+    private final float[] tilt, lean, jerk, smoothG, dynamicG;
+    private final int[] battery, device;
+
+    private final AtomicLong head = new AtomicLong();   // next slot to write, producer only
+    private final AtomicLong tail = new AtomicLong();   // next slot to read
+
+    // Single-writer counters (producer), read from any thread
+    private volatile long dropped;
+    private volatile long overwritten;
+
+    public IngestRing(int capacity, Policy policy) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.policy = policy;
+        time = new long[capacity];
+        seq = new long[capacity];
+        fields = new int[capacity];
+        gforce = new float[capacity];
+        temp = new float[capacity];
+        speed = new float[capacity];
+        volt = new float[capacity];
+        battery = new int[capacity];
+        device = new int[capacity];
+        tilt = new float[capacity];
+        lean = new float[capacity];
+        jerk = new float[capacity];
+        smoothG = new float[capacity];
+        dynamicG = new float[capacity];
+    }
+
+    // ===== Producer =====
+
+    public boolean offer(TelemetrySample s) { return offer(s, s.deviceTimeMs); }
+
+    // Stores timeMs in place of s.deviceTimeMs (e.g. the sample's time on the phone clock);
+    // drain() hands it back in scratch.deviceTimeMs.
+    public boolean offer(TelemetrySample s, long timeMs) { return offer(s, timeMs, s.device); }
+
+    // ...and dev in place of s.device
+    public boolean offer(TelemetrySample s, long timeMs, int dev) {
+        long h = head.get();
+        long t = tail.get();
+        if (h - t >= capacity) {
+            if (policy == Policy.DROP_NEWEST) {
+                dropped = dropped + 1;
+                return false;
+            }
+            // A failed CAS means the consumer just freed the slot itself
+            if (tail.compareAndSet(t, t + 1)) overwritten = overwritten + 1;
+        }
+        int i = (int) h & mask;
+        time[i] = timeMs;
+        seq[i] = s.seq;
+        fields[i] = s.mask & ~TelemetrySample.ACCEL;   // raw axes stay with the device thread
+        gforce[i] = (float) s.gforce;
+        temp[i] = (float) s.temp;
+        speed[i] = (float) s.speed;
+        volt[i] = (float) s.volt;
+        battery[i] = s.battery;
+        device[i] = dev;
+        tilt[i] = (float) s.tilt;
+        lean[i] = (float) s.lean;
+        jerk[i] = (float) s.jerk;
+        smoothG[i] = (float) s.smoothG;
+        dynamicG[i] = (float) s.dynamicG;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    // ===== Consumer =====
+
+    // Reads up to `max` samples into `scratch`, handing each to `sink`. Returns how many were delivered.
+    public int drain(TelemetrySample scratch, TelemetryCodec.SampleSink sink, int max) {
+        int n = 0;
+        while (n < max) {
+            long t = tail.get();
+            if (t >= head.get()) break;
+            int i = (int) t & mask;
+            scratch.deviceTimeMs = time[i];
+            scratch.seq = seq[i];
+            scratch.mask = fields[i];
+            scratch.gforce = gforce[i];
+            scratch.temp = temp[i];
+            scratch.speed = speed[i];
+            scratch.volt = volt[i];
+            scratch.battery = battery[i];
+            scratch.device = device[i];
+            scratch.tilt = tilt[i];
+            scratch.lean = lean[i];
+            scratch.jerk = jerk[i];
+            scratch.smoothG = smoothG[i];
+            scratch.dynamicG = dynamicG[i];
+            if (!tail.compareAndSet(t, t + 1)) continue;   // producer overwrote it; retry at new tail
+            sink.onSample(scratch);
+            n++;
+        }
+        return n;
+    }
+
+    public void clear() { tail.set(head.get()); }
+
+    public int size()          { return (int) Math.min(capacity, head.get() - tail.get()); }
+    public int capacity()      { return capacity; }
+    public Policy policy()     { return policy; }
+    public long dropped()      { return dropped; }
+    public long overwritten()  { return overwritten; }
+}
@@ -0,0 +1,141 @@
+package com.example.neuroridev2;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+// Keeps the best recent location fix, so an SOS can go out with coordinates without waiting for a
+// GPS lock. While a ride is active it listens to the network and GPS providers at a low rate
+// (one update per UPDATE_MS or MIN_DISTANCE_M); outside a ride it only holds what it last saw.
+// requestFresh() asks for one fix right away, e.g. after an SOS went out with a stale one.
+//
+// fix() is lock-free and safe from any thread.
+public final class LastFixCache {
+
+    public static final class Fix {
+        public final double lat, lng;
+        public final float accuracyM;   // 0 when unknown
+        public final long elapsedMs;    // SystemClock.elapsedRealtime() of the fix
+
+        Fix(double lat, double lng, float accuracyM, long elapsedMs) {
+            this.lat = lat; this.lng = lng; this.accuracyM = accuracyM; this.elapsedMs = elapsedMs;
+        }
+
+        public long ageMs() { return SystemClock.elapsedRealtime() - elapsedMs; }
+    }
+
+    public interface Listener {
+        void onFix(Fix f);   // thread of whoever delivered the fix, usually main
+    }
+
+    private static final String TAG = "NeuroRideSOS";
+    private static final long UPDATE_MS = 15_000;
+    private static final float MIN_DISTANCE_M = 25f;
+    private static final long STALE_MS = 2 * 60_000;   // a fresher fix wins even if less accurate
+    private static final long FRESH_TIMEOUT_MS = 60_000;
+
+    private final LocationManager lm;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private volatile Fix fix;
+    private volatile Listener listener;
+    private boolean running;
+    private boolean freshPending;
+    private final Runnable freshTimeout = this::stopFresh;
+
+    public LastFixCache(Context ctx) {
+        lm = ctx.getApplicationContext().getSystemService(LocationManager.class);
+    }
+
+    // ===== Ride lifecycle (main thread) =====
+
+    public void start() {
+        if (running || lm == null) return;
+        try {
+            seed(LocationManager.GPS_PROVIDER);
+            seed(LocationManager.NETWORK_PROVIDER);
+            if (lm.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+                lm.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, UPDATE_MS, MIN_DISTANCE_M, updates, Looper.getMainLooper());
+            }
+            if (lm.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
+                lm.requestLocationUpdates(LocationManager.GPS_PROVIDER, UPDATE_MS, MIN_DISTANCE_M, updates, Looper.getMainLooper());
+            }
+            running = true;
+        } catch (SecurityException se) {
+            Log.w(TAG, "No location permission, SOS will go out without coordinates", se);
+        }
+    }
+
+    public void stop() {
+        if (!running) return;
+        running = false;
+        try { lm.removeUpdates(updates); } catch (SecurityException ignored) {}
+    }
+
+    // One fix as soon as a provider has it (GPS if enabled), ride or not; it reaches the listener
+    // like any other. Gives up after FRESH_TIMEOUT_MS.
+    public void requestFresh() {
+        if (freshPending || lm == null) return;
+        String provider = lm.isProviderEnabled(LocationManager.GPS_PROVIDER) ? LocationManager.GPS_PROVIDER
+                : lm.isProviderEnabled(LocationManager.NETWORK_PROVIDER) ? LocationManager.NETWORK_PROVIDER : null;
+        if (provider == null) return;
+        try {
+            lm.requestLocationUpdates(provider, 0, 0f, fresh, Looper.getMainLooper());
+            freshPending = true;
+            main.postDelayed(freshTimeout, FRESH_TIMEOUT_MS);
+        } catch (SecurityException se) {
+            Log.w(TAG, "No location permission for a fresh fix", se);
+        }
+    }
+
+    private void stopFresh() {
+        if (!freshPending) return;
+        freshPending = false;
+        main.removeCallbacks(freshTimeout);
+        try { lm.removeUpdates(fresh); } catch (SecurityException ignored) {}
+    }
+
+    // ===== Fixes =====
+
+    public Fix fix() { return fix; }
+
+    public void setListener(Listener l) { listener = l; }
+
+    // A fix from elsewhere; elapsedMs on the elapsedRealtime clock.
+    public void offer(double lat, double lng, float accuracyM, long elapsedMs) {
+        Fix cur = fix;
+        if (cur != null && !better(accuracyM, elapsedMs, cur)) return;
+        Fix f = new Fix(lat, lng, accuracyM, elapsedMs);
+        fix = f;
+        Listener l = listener;
+        if (l != null) l.onFix(f);
+    }
+
+    private final LocationListener updates = this::offer;
+    private final LocationListener fresh = l -> {
+        stopFresh();
+        offer(l);
+    };
+
+    private void offer(Location l) {
+        if (l == null) return;
+        offer(l.getLatitude(), l.getLongitude(), l.hasAccuracy() ? l.getAccuracy() : 0f,
+                l.getElapsedRealtimeNanos() / 1_000_000L);
+    }
+
+    private void seed(String provider) {
+        if (lm.isProviderEnabled(provider)) offer(lm.getLastKnownLocation(provider));
+    }
+
+    private static boolean better(float accuracyM, long elapsedMs, Fix cur) {
+        long newer = elapsedMs - cur.elapsedMs;
+        if (newer > STALE_MS) return true;
+        if (newer < -STALE_MS) return false;
+        if (accuracyM == 0f || cur.accuracyM == 0f) return newer >= 0;
+        return accuracyM <= cur.accuracyM || newer >= 0 && accuracyM <= cur.accuracyM * 2;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.neuroridev2;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// HDR-style latency histogram: log-linear buckets with 32 sub-buckets per power of two, so every
+// recorded value is kept to within ~3% from 1 µs up to maxUs. Fixed size, allocation-free,
+// and record() is safe from several threads at once (one atomic add per value).
+//
+// Values are microseconds; anything above maxUs is clamped into the top bucket but still
+// counts towards max().
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB = 1 << SUB_BITS;     // exact below this
+    private static final int HALF = SUB >> 1;         // sub-buckets per octave above it
+
+    public final String name;
+    private final long maxUs;
+    private final AtomicLongArray counts;
+    private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+    public LatencyHistogram(String name, long maxUs) {
+        this.name = name;
+        this.maxUs = maxUs;
+        this.counts = new AtomicLongArray(index(maxUs) + 1);
+    }
+
+    public void record(long us) {
+        if (us < 0) us = 0;
+        counts.incrementAndGet(index(Math.min(us, maxUs)));
+        count.incrementAndGet();
+        sum.addAndGet(us);
+        long m = max.get();
+        while (us > m && !max.compareAndSet(m, us)) m = max.get();
+    }
+
+    public void recordMs(long ms) { record(ms * 1000); }
+
+    public long count()   { return count.get(); }
+    public long maxUs()   { return max.get(); }
+    public double meanUs() { long n = count.get(); return n == 0 ? 0 : (double) sum.get() / n; }
+
+    // q in [0, 1]; upper edge of the bucket holding that rank, never above max()
+    public long percentileUs(double q) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upper(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // One line: name, count, mean and percentiles in ms
+    public String summary() {
+        return String.format(Locale.US, "%-8s n=%-8d mean=%7.2f p50=%7.2f p90=%7.2f p99=%7.2f p99.9=%7.2f max=%7.2f ms",
+                name, count(), meanUs() / 1000.0, percentileUs(0.50) / 1000.0, percentileUs(0.90) / 1000.0,
+                percentileUs(0.99) / 1000.0, percentileUs(0.999) / 1000.0, maxUs() / 1000.0);
+    }
+
+    // Non-empty buckets as "upperUs,count" lines, for export
+    public void appendBuckets(StringBuilder sb) {
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            if (c != 0) sb.append(upper(i)).append(',').append(c).append('\n');
+        }
+    }
+
+    // ===== Bucket math =====
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int shift = msb - (SUB_BITS - 1);
+        int sub = (int) (v >>> shift);                       // HALF..SUB-1
+        return SUB + (shift - 1) * HALF + (sub - HALF);
+    }
+
+    static long upper(int index) {
+        if (index < SUB) return index;
+        int shift = (index - SUB) / HALF + 1;
+        long sub = HALF + (index - SUB) % HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
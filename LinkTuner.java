@@ -0,0 +1,207 @@
+package com.example.neuroridev2;
+
+// Adaptive link settings for one board. Fed every sample and evaluated every evalMs from the frame
+// path (so it needs no timer of its own), it picks a mode from motion:
+//
+//   RIDING  moving:                        2M PHY, high connection priority, ridingHz
+//   IDLE    no movement for idleAfterMs:   1M PHY, balanced,                 idleHz
+//   PARKED  no movement for parkAfterMs:   1M PHY, low power,                parkedHz
+//
+// and then fits the sample rate to what the link actually carries. More than maxLoss of a
+// window's samples missing caps the rate one step below the current one; the cap lifts one step
+// after recoverWindows clean windows, twice as many after each probe that soon lost again (up to 8x).
+// A board that delivers well under the requested rate for slowWindows windows with no loss can't
+// sample that fast, so the rate stays at what it manages until the next connect. Battery (`bat`) caps the
+// rate at lowBatteryHz below lowBatteryPct, at idleHz and never high priority below criticalPct.
+//
+// Single-threaded (the device's thread). Plain Java; LinkTunerTestRunner drives it against
+// SimulatedPeripheral.
+public final class LinkTuner {
+
+    public static final class Config {
+        public long evalMs = 2000;
+        public double motionG = 0.12;          // |g - 1| above this counts as movement
+        public double motionShare = 0.05;      // of a window's samples, to call the window moving
+        public double movingKmh = 3;
+        public long idleAfterMs = 20_000;
+        public long parkAfterMs = 120_000;
+        public int ridingHz = 200, idleHz = 50, parkedHz = 16;
+        public int[] rateSteps = {16, 25, 50, 100, 200};   // ascending, none under TelemetryCodec.MIN_RATE_HZ
+        public double maxLoss = 0.02;
+        public int recoverWindows = 5;
+        public double minDeliveredShare = 0.7; // of the requested rate, before the board counts as slower
+        public int slowWindows = 3;
+        public int lowBatteryPct = 25, criticalBatteryPct = 10;
+        public int lowBatteryHz = 100;
+    }
+
+    public interface Listener {
+        // After every change the tuner asked the transport for
+        void onTuned(int mode, int rateHz, int priority, boolean phy2M);
+    }
+
+    public static final int RIDING = 0, IDLE = 1, PARKED = 2;
+
+    private final Config cfg;
+    private final TelemetryTransport.LinkControl link;
+    private final Listener listener;
+
+    // Current requests; -1 / 0 until the first evaluation after a connect
+    private int mode = -1, priority = -1, rateHz;
+    private boolean phy2M;
+    private boolean rateControl = true;        // false: the board can't be told (old firmware)
+    private int lossCapHz = Integer.MAX_VALUE;
+    private int boardMaxHz = Integer.MAX_VALUE;
+    private int cleanWindows, probeFailures, slow;
+    private int probeLeft;                     // windows after a cap lift in which loss fails the probe
+
+    // Window
+    private long windowStartMs = -1, lastMovedMs;
+    private int windowSamples, windowMoving;
+    private long lastReceived, lastLost;
+    private int battery = -1;
+    private volatile double throughputHz, loss;
+
+    public LinkTuner(Config cfg, TelemetryTransport.LinkControl link, Listener listener) {
+        this.cfg = cfg;
+        this.link = link;
+        this.listener = listener;
+    }
+
+    // Link (re)established; received / lost are the session's running SequenceTracker counts.
+    // A new link starts out as riding, and everything is requested again at the first evaluation.
+    public void onConnected(long nowMs, long received, long lost) {
+        mode = priority = -1;
+        rateHz = 0;
+        rateControl = true;
+        boardMaxHz = Integer.MAX_VALUE;
+        cleanWindows = slow = 0;
+        probeLeft = 0;
+        lastMovedMs = nowMs;
+        startWindow(nowMs, received, lost);
+        apply(RIDING);
+    }
+
+    public void onSample(long tMs, TelemetrySample s) {
+        windowSamples++;
+        if ((s.has(TelemetrySample.GFORCE) && Math.abs(s.gforce - 1.0) > cfg.motionG)
+                || (s.has(TelemetrySample.SPEED) && s.speed > cfg.movingKmh)) {
+            windowMoving++;
+        }
+        if (s.has(TelemetrySample.BAT)) battery = s.battery;
+    }
+
+    // Call after each frame; evaluates once the window is evalMs old.
+    public void maybeEvaluate(long nowMs, long received, long lost) {
+        if (windowStartMs < 0) { startWindow(nowMs, received, lost); return; }
+        if (nowMs - windowStartMs < cfg.evalMs) return;
+
+        long dRecv = received - lastReceived, dLost = lost - lastLost;
+        double secs = (nowMs - windowStartMs) / 1000.0;
+        throughputHz = dRecv / secs;
+        loss = dRecv + dLost > 0 ? (double) dLost / (dRecv + dLost) : 0;
+        if (windowSamples > 0 && windowMoving >= Math.max(1, windowSamples * cfg.motionShare)) lastMovedMs = nowMs;
+
+        if (rateControl && rateHz > 0) {
+            if (loss > cfg.maxLoss) {
+                if (probeLeft > 0 && probeFailures < 3) probeFailures++;
+                probeLeft = 0;
+                lossCapHz = Math.min(lossCapHz, stepBelow(rateHz));
+                cleanWindows = slow = 0;
+            } else {
+                if (lossCapHz != Integer.MAX_VALUE && loss <= cfg.maxLoss / 4
+                        && ++cleanWindows >= cfg.recoverWindows << probeFailures) {
+                    int up = stepAbove(lossCapHz);
+                    lossCapHz = up > lossCapHz ? up : Integer.MAX_VALUE;
+                    cleanWindows = 0;
+                    probeLeft = 2 * cfg.recoverWindows;   // the link's buffers hide an overload for a while
+                } else if (probeLeft > 0) {
+                    probeLeft--;
+                }
+                if (throughputHz < rateHz * cfg.minDeliveredShare && rateHz > cfg.rateSteps[0]) {
+                    if (++slow >= cfg.slowWindows) {
+                        boardMaxHz = stepAtOrBelow((int) Math.ceil(throughputHz));
+                        slow = 0;
+                    }
+                } else {
+                    slow = 0;
+                }
+            }
+        }
+
+        long still = nowMs - lastMovedMs;
+        apply(still >= cfg.parkAfterMs ? PARKED : still >= cfg.idleAfterMs ? IDLE : RIDING);
+        startWindow(nowMs, received, lost);
+    }
+
+    private void apply(int newMode) {
+        boolean critical = battery >= 0 && battery <= cfg.criticalBatteryPct;
+        boolean low = battery >= 0 && battery <= cfg.lowBatteryPct;
+
+        int want = newMode == RIDING ? cfg.ridingHz : newMode == IDLE ? cfg.idleHz : cfg.parkedHz;
+        if (low) want = Math.min(want, cfg.lowBatteryHz);
+        if (critical) want = Math.min(want, cfg.idleHz);
+        want = Math.max(cfg.rateSteps[0], stepAtOrBelow(Math.min(want, Math.min(lossCapHz, boardMaxHz))));
+
+        int wantPriority = newMode == RIDING ? TelemetryTransport.LinkControl.PRIORITY_HIGH
+                : newMode == IDLE ? TelemetryTransport.LinkControl.PRIORITY_BALANCED
+                : TelemetryTransport.LinkControl.PRIORITY_LOW_POWER;
+        if (critical && wantPriority == TelemetryTransport.LinkControl.PRIORITY_HIGH) {
+            wantPriority = TelemetryTransport.LinkControl.PRIORITY_BALANCED;
+        }
+        boolean want2M = newMode == RIDING;
+
+        boolean changed = false;
+        if (want2M != phy2M || mode < 0) { link.setPhy2M(want2M); phy2M = want2M; changed = true; }
+        if (wantPriority != priority) { link.setConnectionPriority(wantPriority); priority = wantPriority; changed = true; }
+        if (rateControl && want != rateHz) {
+            rateControl = link.requestSampleRate(want);
+            if (rateControl) { rateHz = want; changed = true; }
+        }
+        if (newMode != mode) changed = true;
+        mode = newMode;
+        if (changed && listener != null) listener.onTuned(mode, rateHz, priority, phy2M);
+    }
+
+    private void startWindow(long nowMs, long received, long lost) {
+        windowStartMs = nowMs;
+        windowSamples = windowMoving = 0;
+        lastReceived = received;
+        lastLost = lost;
+    }
+
+    private int stepAtOrBelow(int hz) {
+        int best = cfg.rateSteps[0];
+        for (int r : cfg.rateSteps) if (r <= hz) best = r;
+        return best;
+    }
+
+    private int stepBelow(int hz) {
+        int best = cfg.rateSteps[0];
+        for (int r : cfg.rateSteps) if (r < hz) best = r;
+        return best;
+    }
+
+    private int stepAbove(int hz) {
+        for (int r : cfg.rateSteps) if (r > hz) return r;
+        return hz;
+    }
+
+    // ===== State (any thread, for metrics and tests) =====
+
+    public int mode()            { return mode; }
+    public int rateHz()          { return rateHz; }
+    public int priority()        { return priority; }
+    public boolean phy2M()       { return phy2M; }
+    public double throughputHz() { return throughputHz; }
+    public double loss()         { return loss; }
+
+    public static String modeName(int mode) {
+        switch (mode) {
+            case RIDING: return "riding";
+            case IDLE:   return "idle";
+            case PARKED: return "parked";
+            default:     return "-";
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.neuroridev2;
+
+import java.util.Locale;
+
+// Runs LinkTuner against SimulatedPeripheral (raw accel frames, the heaviest stream) the way
+// DeviceSession wires it, on a compressed clock: evaluation every 500 ms, idle after 2 s still,
+// parked after 4 s. Checks that riding gets 2M / high priority / 200 Hz, that a parked board drops
+// to 16 Hz at low power, with decoded samples still 1000 / hz ms apart, and comes back when it
+// moves, that a congested link settles on a rate it
+// can carry, that battery caps the rate, and that firmware without the control characteristic is
+// left alone.
+//
+//   java com.example.neuroridev2.LinkTunerTestRunner
+public final class LinkTunerTestRunner {
+
+    // ===== DeviceSession's wiring, minus Android =====
+
+    static final class Harness implements TelemetryTransport.Listener {
+        final SimulatedPeripheral sim;
+        final LinkTuner tuner;
+        final TelemetryPipeline pipeline;
+        int changes;
+        // Decoded spacing between consecutive samples since resetSpacing(), ms, and the last accel frame's period
+        long minGapMs = Long.MAX_VALUE, maxGapMs;
+        volatile int accelPeriodUs;
+        private long prevSeq = -1, prevT;
+
+        Harness(SimulatedPeripheral.Config simCfg) {
+            sim = new SimulatedPeripheral(simCfg);
+            LinkTuner.Config c = new LinkTuner.Config();
+            c.evalMs = 500;
+            c.idleAfterMs = 2000;
+            c.parkAfterMs = 4000;
+            c.recoverWindows = 3;
+            tuner = new LinkTuner(c, sim, (mode, hz, priority, phy2M) -> changes++);
+            pipeline = new TelemetryPipeline((t, s) -> {
+                if (s.seq == prevSeq + 1) {
+                    long gap = s.deviceTimeMs - prevT;
+                    minGapMs = Math.min(minGapMs, gap);
+                    maxGapMs = Math.max(maxGapMs, gap);
+                }
+                prevSeq = s.seq;
+                prevT = s.deviceTimeMs;
+                tuner.onSample(t, s);
+            });
+        }
+
+        // Sim thread writes the gaps; call between sleeps, where a stale read only widens the window
+        void resetSpacing() {
+            minGapMs = Long.MAX_VALUE;
+            maxGapMs = 0;
+        }
+
+        @Override public void onSchema(byte[] data, int len) {}
+        @Override public void onConnected(int mtu) {
+            pipeline.rearm();
+            tuner.onConnected(now(), received(), lost());
+        }
+        @Override public void onFrame(byte[] data, int len) {
+            long t = now();
+            if (TelemetryCodec.frameType(data, len) == TelemetryCodec.TYPE_ACCEL) accelPeriodUs = TelemetryCodec.accelPeriodUs(data);
+            if (pipeline.onFrame(data, len, t) >= 0) tuner.maybeEvaluate(t, received(), lost());
+        }
+        @Override public void onDisconnected(int status) {}
+
+        long received() { return pipeline.sequence().received(); }
+        long lost()     { return pipeline.sequence().lost(); }
+
+        void start() { sim.start(this); }
+        void stop()  { sim.stop(); }
+
+        // Loss over the next ms milliseconds
+        double lossOver(long ms) throws InterruptedException {
+            long r0 = received(), l0 = lost();
+            Thread.sleep(ms);
+            long r = received() - r0, l = lost() - l0;
+            return r + l == 0 ? 0 : (double) l / (r + l);
+        }
+    }
+
+    private static long now() { return System.nanoTime() / 1_000_000; }
+
+    // ===== Scenarios =====
+
+    public static void main(String[] args) throws Exception {
+        riding();
+        parked();
+        congested();
+        lowBattery();
+        oldFirmware();
+        Checks.exit();
+    }
+
+    private static SimulatedPeripheral.Config accel() {
+        SimulatedPeripheral.Config c = new SimulatedPeripheral.Config();
+        c.format = SimulatedPeripheral.Format.ACCEL;
+        c.sampleHz = 50;   // not what any scenario wants, so each one starts with a rate request
+        return c;
+    }
+
+    private static void riding() throws Exception {
+        Harness h = new Harness(accel());
+        h.start();
+        Thread.sleep(1500);
+        double loss = h.lossOver(1500);
+        report("riding", h, loss);
+        Checks.check("riding: mode", h.tuner.mode() == LinkTuner.RIDING);
+        Checks.check("riding: 200 Hz on the board", h.sim.sampleHz() == 200);
+        Checks.check("riding: 2M, high priority", h.sim.phy2M() && h.sim.priority() == TelemetryTransport.LinkControl.PRIORITY_HIGH);
+        Checks.check("riding: no loss", loss == 0);
+        h.stop();
+    }
+
+    private static void parked() throws Exception {
+        Harness h = new Harness(accel());
+        h.start();
+        Thread.sleep(1000);
+        h.sim.setVibration(0.005);
+        Thread.sleep(3000);
+        Checks.check("parked: idle after 2 s still", h.tuner.mode() == LinkTuner.IDLE && h.sim.sampleHz() == 50
+                && h.sim.priority() == TelemetryTransport.LinkControl.PRIORITY_BALANCED);
+        Thread.sleep(2500);
+        report("parked", h, Double.NaN);
+        Checks.check("parked: mode", h.tuner.mode() == LinkTuner.PARKED);
+        Checks.check("parked: 16 Hz, 1M, low power", h.sim.sampleHz() == 16 && !h.sim.phy2M()
+                && h.sim.priority() == TelemetryTransport.LinkControl.PRIORITY_LOW_POWER);
+        // The accel frame's uint16 µs period has to hold the parked rate's (it wrapped under 16 Hz, to
+        // about 1 ms). Gaps across frames also carry the simulator's scheduling jitter.
+        h.resetSpacing();
+        Thread.sleep(2000);
+        long periodMs = 1000 / h.sim.sampleHz();
+        System.out.println(String.format(Locale.US, "parked     decoded spacing %d..%d ms, frame period %d us",
+                h.minGapMs, h.maxGapMs, h.accelPeriodUs));
+        Checks.check("parked: frame period is 1e6 / hz", h.accelPeriodUs == 1_000_000 / h.sim.sampleHz());
+        Checks.check("parked: decoded spacing near 1000 / hz", h.tuner.mode() == LinkTuner.PARKED
+                && h.minGapMs >= periodMs * 3 / 4 && h.maxGapMs <= periodMs * 5 / 4);
+        h.sim.setVibration(0.25);
+        Thread.sleep(1500);
+        report("moving", h, Double.NaN);
+        Checks.check("parked: riding again once it moves", h.tuner.mode() == LinkTuner.RIDING && h.sim.sampleHz() == 200);
+        h.stop();
+    }
+
+    // 400 B/s at 1M / balanced, 960 B/s at 2M / high: 200 Hz raw (~1300 B/s) can't fit, 100 Hz can
+    private static void congested() throws Exception {
+        SimulatedPeripheral.Config c = accel();
+        c.linkBytesPerSec = 400;
+        Harness h = new Harness(c);
+        h.start();
+        Thread.sleep(14_000);   // two failed probes back to 200 Hz; the next one waits 6 s
+        double loss = h.lossOver(3500);
+        report("congested", h, loss);
+        Checks.check("congested: stepped down to 100 Hz", h.sim.sampleHz() == 100);
+        Checks.check("congested: loss under 2% once settled", loss < 0.02);
+        h.stop();
+    }
+
+    private static void lowBattery() throws Exception {
+        SimulatedPeripheral.Config c = accel();
+        c.batteryPct = 20;
+        Harness h = new Harness(c);
+        h.start();
+        Thread.sleep(1500);
+        report("bat 20%", h, Double.NaN);
+        Checks.check("low battery: capped at 100 Hz", h.sim.sampleHz() == 100
+                && h.sim.priority() == TelemetryTransport.LinkControl.PRIORITY_HIGH);
+        h.sim.setBattery(5);
+        Thread.sleep(1500);
+        report("bat 5%", h, Double.NaN);
+        Checks.check("critical battery: 50 Hz, no high priority", h.tuner.mode() == LinkTuner.RIDING
+                && h.sim.sampleHz() == 50 && h.sim.priority() == TelemetryTransport.LinkControl.PRIORITY_BALANCED);
+        h.stop();
+    }
+
+    private static void oldFirmware() throws Exception {
+        SimulatedPeripheral.Config c = accel();
+        c.controlCharacteristic = false;
+        Harness h = new Harness(c);
+        h.start();
+        Thread.sleep(1500);
+        report("old fw", h, Double.NaN);
+        Checks.check("old firmware: rate untouched", h.sim.sampleHz() == 50 && h.tuner.rateHz() == 0);
+        Checks.check("old firmware: PHY and priority still tuned", h.sim.phy2M()
+                && h.sim.priority() == TelemetryTransport.LinkControl.PRIORITY_HIGH);
+        h.stop();
+    }
+
+    // ===== Helpers =====
+
+    private static void report(String name, Harness h, double loss) {
+        System.out.println(String.format(Locale.US,
+                "%-10s %-6s board %3d Hz, %s, priority %d, measured %.0f Hz, window loss %.1f%%%s, %d changes",
+                name, LinkTuner.modeName(h.tuner.mode()), h.sim.sampleHz(), h.sim.phy2M() ? "2M" : "1M",
+                h.sim.priority(), h.tuner.throughputHz(), h.tuner.loss() * 100,
+                Double.isNaN(loss) ? "" : String.format(Locale.US, ", settled loss %.1f%%", loss * 100), h.changes));
+    }
+
+
+    private LinkTunerTestRunner() {}
+}
@@ -0,0 +1,461 @@
+package com.example.neuroridev2;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless end-to-end load test: SimulatedPeripheral -> TelemetryPipeline -> IngestRing ->
+// a consumer draining once per 60 Hz frame, the way TelemetryCoalescer does on the UI thread.
+// Group-ride scenarios run the path TelemetryService does instead: one pipeline and ring per
+// board, SessionMerger, and TelemetryBus with a lossless subscriber next to one that is far too
+// slow; they also gate publish() time, merge order and that only the slow subscriber drops.
+// Reports latency percentiles (sample taken -> sample seen by the consumer), sustained
+// throughput and allocation per sample on both sides, and exits non-zero when a scenario misses
+// its budget, so it can gate performance changes. Plain JVM, no Android classes.
+//
+//   java com.example.neuroridev2.LoadTestRunner [seconds per scenario] [name filter]
+public final class LoadTestRunner {
+
+    static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+    static final int RING_CAPACITY = 1024;
+    static final long WARMUP_MS = 1000;
+    static final long PUBLISH_P99_BUDGET_US = 200;   // same as BusTestRunner
+    static final long SLOW_SUBSCRIBER_MICROS = 5000;  // 200 samples/s, well under any group ride
+
+    public static final class Scenario {
+        public final String name;
+        public final SimulatedPeripheral.Config cfg;
+        public double maxAllocPerSample = 8;     // bytes, producer and consumer; NaN = report only
+        public int boards = 1;                   // > 1: a group ride through SessionMerger and TelemetryBus
+
+        public Scenario(String name, SimulatedPeripheral.Config cfg) {
+            this.name = name;
+            this.cfg = cfg;
+        }
+
+        // Worst expected wait: a full batch window, delivery jitter, one missed frame, plus slack
+        public long p99BudgetMs() {
+            long batch = cfg.format == SimulatedPeripheral.Format.BATCH || cfg.format == SimulatedPeripheral.Format.ACCEL
+                    ? cfg.maxBatchLatencyMs : 0;
+            if (boards > 1) {
+                // The merge holds a sample until every board has sent past it: another board's
+                // batch window on top, plus a merge tick instead of a frame
+                return 2 * (batch + cfg.jitterMs) + new SessionMerger.Config().tickMs + 25;
+            }
+            return batch + cfg.jitterMs + 2 * TimeUnit.NANOSECONDS.toMillis(FRAME_NANOS) + 25;
+        }
+    }
+
+    public static final class Result {
+        public long sent, delivered, lost, duplicates, overwritten, badFrames, disconnects;
+        public double seconds;
+        public long p50Us = -1, p90Us = -1, p99Us = -1, p999Us = -1, maxUs = -1;   // -1: frames carry no seq
+        public double producerBytesPerSample = Double.NaN, consumerBytesPerSample = Double.NaN;
+        // Group rides only
+        public long published, late, outOfOrder, droppedLossless, droppedSlow = -1, slowAccounted;
+        public long publishP99Us = -1, publishMaxUs = -1;
+        public String failure;   // null when the scenario met its budget
+
+        public double throughput() { return seconds == 0 ? 0 : delivered / seconds; }
+
+        @Override public String toString() {
+            return String.format(Locale.US,
+                    "%8.0f samples/s  lat p50=%s p90=%s p99=%s p99.9=%s max=%s  alloc prod=%s cons=%s B/sample"
+                            + "  sent=%d lost=%d dup=%d overwritten=%d bad=%d disc=%d%s",
+                    throughput(), ms(p50Us), ms(p90Us), ms(p99Us), ms(p999Us), ms(maxUs),
+                    bytes(producerBytesPerSample), bytes(consumerBytesPerSample),
+                    sent, lost, duplicates, overwritten, badFrames, disconnects,
+                    group() + (failure == null ? "  PASS" : "  FAIL: " + failure));
+        }
+
+        private String group() {
+            if (droppedSlow < 0) return "";
+            return String.format(Locale.US, "%n          publish p99=%dus max=%dus  published=%d late=%d out-of-order=%d"
+                            + "  dropped lossless=%d slow=%d",
+                    publishP99Us, publishMaxUs, published, late, outOfOrder, droppedLossless, droppedSlow);
+        }
+
+        private static String ms(long us) { return us < 0 ? "n/a" : String.format(Locale.US, "%.1fms", us / 1000.0); }
+        private static String bytes(double b) { return Double.isNaN(b) ? "n/a" : String.format(Locale.US, "%.1f", b); }
+    }
+
+    private LoadTestRunner() {}
+
+    public static Scenario[] defaultScenarios() {
+        SimulatedPeripheral.Config slow = new SimulatedPeripheral.Config();
+        slow.sampleHz = 1;
+        SimulatedPeripheral.Config firmware = new SimulatedPeripheral.Config();
+        SimulatedPeripheral.Config fast = new SimulatedPeripheral.Config();
+        fast.sampleHz = 200;
+        SimulatedPeripheral.Config raw = new SimulatedPeripheral.Config();
+        raw.format = SimulatedPeripheral.Format.ACCEL;
+        raw.sampleHz = 200;
+        SimulatedPeripheral.Config max = new SimulatedPeripheral.Config();
+        max.sampleHz = 1000;
+        SimulatedPeripheral.Config hostile = new SimulatedPeripheral.Config();
+        hostile.sampleHz = 1000;
+        hostile.jitterMs = 10;
+        hostile.lossRate = 0.02;
+        hostile.disconnectEveryMs = 4000;
+        hostile.disconnectForMs = 1000;
+        SimulatedPeripheral.Config reboot = new SimulatedPeripheral.Config();
+        reboot.sampleHz = 200;
+        reboot.disconnectEveryMs = 3000;
+        reboot.disconnectForMs = 500;
+        reboot.rebootOnReconnect = true;
+        SimulatedPeripheral.Config single = new SimulatedPeripheral.Config();
+        single.format = SimulatedPeripheral.Format.SAMPLE;
+        single.sampleHz = 100;
+        SimulatedPeripheral.Config json = new SimulatedPeripheral.Config();
+        json.format = SimulatedPeripheral.Format.JSON;
+        json.sampleHz = 10;
+
+        SimulatedPeripheral.Config jsonSchema = new SimulatedPeripheral.Config();
+        jsonSchema.format = SimulatedPeripheral.Format.JSON;
+        jsonSchema.sampleHz = 10;
+        jsonSchema.schema = "1;gforce,temp,volt,batpct,rssi";   // hardware code's names, plus one the app lacks
+
+        // The simulator writes its JSON straight into the frame buffer, so this gates the decoder:
+        // no String or hash per key
+        Scenario legacy = new Scenario("legacy JSON", json);
+        legacy.maxAllocPerSample = 0;
+        Scenario schema = new Scenario("JSON, advertised schema", jsonSchema);
+        schema.maxAllocPerSample = 0;
+
+        SimulatedPeripheral.Config board = new SimulatedPeripheral.Config();
+        board.sampleHz = 200;
+        Scenario group = new Scenario("group ride, 4 boards", board);
+        group.boards = 4;   // MultiDeviceSessions.MAX_DEVICES; that class needs Android
+        return new Scenario[]{
+                new Scenario("1 Hz batch", slow),
+                new Scenario("firmware default", firmware),
+                new Scenario("200 Hz batch", fast),
+                new Scenario("200 Hz raw accel", raw),
+                new Scenario("1 kHz batch", max),
+                new Scenario("1 kHz hostile link", hostile),
+                new Scenario("reconnect after reboot", reboot),
+                new Scenario("single-sample frames", single),
+                legacy,
+                schema,
+                group,
+        };
+    }
+
+    public static Result run(Scenario sc, long durationMs) throws InterruptedException {
+        if (sc.boards > 1) return runGroup(sc, durationMs);
+        final IngestRing ring = new IngestRing(RING_CAPACITY, IngestRing.Policy.OVERWRITE_OLDEST);
+        final TelemetryPipeline pipeline = new TelemetryPipeline((t, s) -> ring.offer(s));
+        final Thread[] producer = new Thread[1];
+        final SimulatedPeripheral sim = new SimulatedPeripheral(sc.cfg);
+
+        // ===== Consumer: one drain per frame =====
+        final long[] latencies = new long[(int) Math.min(Integer.MAX_VALUE - 8,
+                (long) sc.cfg.sampleHz * (durationMs + WARMUP_MS) / 1000 + 1024)];
+        final int[] nLat = {0};
+        final AtomicLong delivered = new AtomicLong();
+        final long[] frameNanos = {0};
+        final long measureFrom = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_MS);
+        final TelemetryCodec.SampleSink sink = s -> {
+            delivered.lazySet(delivered.get() + 1);   // single writer
+            if (s.seq < 0 || frameNanos[0] < measureFrom || nLat[0] == latencies.length) return;
+            latencies[nLat[0]++] = frameNanos[0] - sim.sampledAtNanos(s.seq);
+        };
+        final AtomicBoolean consuming = new AtomicBoolean(true);
+        Thread consumer = new Thread(() -> {
+            TelemetrySample scratch = new TelemetrySample();
+            long next = System.nanoTime();
+            while (consuming.get()) {
+                next += FRAME_NANOS;
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                frameNanos[0] = System.nanoTime();
+                ring.drain(scratch, sink, ring.capacity());
+            }
+        }, "frame-consumer");
+
+        sim.start(new TelemetryTransport.Listener() {
+            @Override public void onSchema(byte[] data, int len) { pipeline.setSchema(TelemetrySchema.parse(data, len)); }
+            @Override public void onConnected(int mtu) {
+                producer[0] = Thread.currentThread();
+                pipeline.rearm();   // as DeviceSession does
+            }
+            @Override public void onFrame(byte[] data, int len) {
+                pipeline.onFrame(data, len, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+            }
+            @Override public void onDisconnected(int status) {}
+        });
+        consumer.start();
+
+        // ===== Measurement window =====
+        Thread.sleep(WARMUP_MS);
+        long sent0 = sim.samplesSent(), seen0 = delivered.get();
+        long prod0 = allocatedBytes(producer[0]), cons0 = allocatedBytes(consumer);
+        long t0 = System.nanoTime();
+        Thread.sleep(durationMs);
+        long prod1 = allocatedBytes(producer[0]), cons1 = allocatedBytes(consumer);
+        long sent1 = sim.samplesSent(), seen1 = delivered.get();
+        long t1 = System.nanoTime();
+
+        sim.stop();
+        consuming.set(false);
+        consumer.join();
+
+        Result r = new Result();
+        r.seconds = (t1 - t0) / 1e9;
+        r.sent = sent1 - sent0;
+        r.delivered = seen1 - seen0;
+        r.lost = pipeline.sequence().lost();
+        r.duplicates = pipeline.sequence().duplicates();
+        r.overwritten = ring.overwritten();
+        r.badFrames = pipeline.badFrames();
+        r.disconnects = sim.disconnects();
+        if (prod0 >= 0 && prod1 >= 0 && r.sent > 0) r.producerBytesPerSample = (double) (prod1 - prod0) / r.sent;
+        if (cons0 >= 0 && cons1 >= 0 && r.delivered > 0) r.consumerBytesPerSample = (double) (cons1 - cons0) / r.delivered;
+
+        if (nLat[0] > 0) {
+            long[] l = Arrays.copyOf(latencies, nLat[0]);
+            Arrays.sort(l);
+            r.p50Us = percentileUs(l, 0.50);
+            r.p90Us = percentileUs(l, 0.90);
+            r.p99Us = percentileUs(l, 0.99);
+            r.p999Us = percentileUs(l, 0.999);
+            r.maxUs = TimeUnit.NANOSECONDS.toMicros(l[l.length - 1]);
+        }
+        r.failure = check(sc, r);
+        return r;
+    }
+
+    private static String check(Scenario sc, Result r) {
+        if (r.badFrames > 0) return r.badFrames + " bad frames";
+        if (r.duplicates > 0) return r.duplicates + " duplicates";   // the simulator never repeats a sample
+        if (r.p99Us >= 0 && r.p99Us > TimeUnit.MILLISECONDS.toMicros(sc.p99BudgetMs())) {
+            return "p99 over " + sc.p99BudgetMs() + "ms";
+        }
+        if (sc.boards > 1) {
+            if (r.publishP99Us > PUBLISH_P99_BUDGET_US) return "publish p99 over " + PUBLISH_P99_BUDGET_US + "us";
+            if (r.outOfOrder > 0) return r.outOfOrder + " merged out of order";
+            if (r.droppedLossless > 0) return "lossless subscriber dropped " + r.droppedLossless;
+            if (r.droppedSlow == 0) return "slow subscriber never fell behind";
+            if (r.slowAccounted != r.published) {
+                return "slow subscriber: delivered + dropped = " + r.slowAccounted + " of " + r.published;
+            }
+        }
+        // Samples still batched or queued when the window closes are not lost; partial batches
+        // do die with the link, so a flaky link gets extra room
+        long inFlight = sc.boards * (sc.cfg.sampleHz * sc.p99BudgetMs() / 1000 + 2);
+        double expected = r.sent * (1 - sc.cfg.lossRate) * (sc.cfg.disconnectEveryMs > 0 ? 0.9 : 0.99);
+        if (r.delivered < expected - inFlight) return "delivered " + r.delivered + " of " + r.sent;
+        if (!Double.isNaN(sc.maxAllocPerSample)) {
+            if (r.producerBytesPerSample > sc.maxAllocPerSample) return "producer allocates";
+            if (r.consumerBytesPerSample > sc.maxAllocPerSample) return "consumer allocates";
+        }
+        return null;
+    }
+
+    // ===== Group ride: a pipeline and ring per board -> SessionMerger -> TelemetryBus =====
+
+    // Wired the way MultiDeviceSessions and TelemetryService do it, minus BLE and Android: the
+    // merge sink publishes on the bus, a lossless subscriber stands in for the screen and the
+    // recorder, and a slow BUFFER one must drop without holding up the merge thread.
+    private static Result runGroup(Scenario sc, long durationMs) throws InterruptedException {
+        final int boards = sc.boards;
+        final long measureFrom = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_MS);
+        final int expected = (int) Math.min(Integer.MAX_VALUE - 8,
+                (long) boards * sc.cfg.sampleHz * (durationMs + WARMUP_MS) / 1000 + 1024);
+        final TelemetryBus bus = new TelemetryBus(boards);
+
+        // ===== Merge thread: time every publish() =====
+        final long[] publishNanos = new long[expected];
+        final int[] nPub = {0};
+        final SessionMerger merger = new SessionMerger(new SessionMerger.Config(),
+                () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()),
+                (id, t, s) -> {
+                    long t0 = System.nanoTime();
+                    bus.publish(id, t, s);
+                    long t1 = System.nanoTime();
+                    if (t0 >= measureFrom && nPub[0] < publishNanos.length) publishNanos[nPub[0]++] = t1 - t0;
+                });
+
+        // ===== Boards: each on its own thread, like DeviceSession =====
+        final SimulatedPeripheral[] sims = new SimulatedPeripheral[boards];
+        final TelemetryPipeline[] pipelines = new TelemetryPipeline[boards];
+        final IngestRing[] rings = new IngestRing[boards];
+        final Thread[] producers = new Thread[boards];
+        for (int b = 0; b < boards; b++) {
+            final int board = b;
+            final IngestRing ring = new IngestRing(RING_CAPACITY, IngestRing.Policy.OVERWRITE_OLDEST);
+            final TelemetryPipeline pipeline = new TelemetryPipeline((t, s) -> ring.offer(s, t));
+            rings[b] = ring;
+            pipelines[b] = pipeline;
+            sims[b] = new SimulatedPeripheral(sc.cfg);
+            merger.addSource(b, ring);
+            sims[b].start(new TelemetryTransport.Listener() {
+                @Override public void onSchema(byte[] data, int len) { pipeline.setSchema(TelemetrySchema.parse(data, len)); }
+                @Override public void onConnected(int mtu) {
+                    producers[board] = Thread.currentThread();
+                    pipeline.rearm();
+                }
+                @Override public void onFrame(byte[] data, int len) {
+                    pipeline.onFrame(data, len, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+                }
+                @Override public void onDisconnected(int status) {}
+            });
+        }
+
+        // ===== Subscribers =====
+        final long[] latencies = new long[expected];
+        final int[] nLat = {0};
+        final AtomicLong delivered = new AtomicLong();
+        final long[] lastT = new long[boards];
+        Arrays.fill(lastT, Long.MIN_VALUE);
+        final long[] outOfOrder = {0};
+        final Thread[] consumer = new Thread[1];
+        final CountDownLatch done = new CountDownLatch(2);
+        TelemetryBus.Options o = new TelemetryBus.Options();
+        o.name = "lossless";
+        o.capacity = 1 << 14;
+        final TelemetryBus.Subscription lossless = bus.subscribe(new TelemetryBus.Subscriber() {
+            @Override public void onSubscribe(TelemetryBus.Subscription s) { s.request(Long.MAX_VALUE); }
+            @Override public void onNext(int device, long tMs, TelemetrySample s) {
+                long now = System.nanoTime();
+                if (consumer[0] == null) consumer[0] = Thread.currentThread();
+                delivered.lazySet(delivered.get() + 1);   // single writer
+                if (tMs < lastT[device]) outOfOrder[0]++;
+                lastT[device] = tMs;
+                if (s.seq < 0 || now < measureFrom || nLat[0] == latencies.length) return;
+                latencies[nLat[0]++] = now - sims[device].sampledAtNanos(s.seq);
+            }
+            @Override public void onComplete() { done.countDown(); }
+        }, o);
+
+        final AtomicLong slowDelivered = new AtomicLong();
+        o = new TelemetryBus.Options();
+        o.name = "slow";
+        o.capacity = 256;
+        final TelemetryBus.Subscription slow = bus.subscribe(new TelemetryBus.Subscriber() {
+            @Override public void onSubscribe(TelemetryBus.Subscription s) { s.request(Long.MAX_VALUE); }
+            @Override public void onNext(int device, long tMs, TelemetrySample s) {
+                slowDelivered.lazySet(slowDelivered.get() + 1);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(SLOW_SUBSCRIBER_MICROS));
+            }
+            @Override public void onComplete() { done.countDown(); }
+        }, o);
+        merger.start();
+
+        // ===== Measurement window =====
+        Thread.sleep(WARMUP_MS);
+        long sent0 = 0, prod0 = 0;
+        for (int b = 0; b < boards; b++) {
+            sent0 += sims[b].samplesSent();
+            prod0 = add(prod0, allocatedBytes(producers[b]));
+        }
+        long seen0 = delivered.get(), cons0 = allocatedBytes(consumer[0]);
+        long t0 = System.nanoTime();
+        Thread.sleep(durationMs);
+        long sent1 = 0, prod1 = 0;
+        for (int b = 0; b < boards; b++) {
+            prod1 = add(prod1, allocatedBytes(producers[b]));
+            sent1 += sims[b].samplesSent();
+        }
+        long cons1 = allocatedBytes(consumer[0]), seen1 = delivered.get();
+        long t1 = System.nanoTime();
+
+        for (SimulatedPeripheral sim : sims) sim.stop();
+        merger.stop();   // flushes into the bus
+        bus.close();
+        boolean completed = done.await(30, TimeUnit.SECONDS);
+
+        Result r = new Result();
+        r.seconds = (t1 - t0) / 1e9;
+        r.sent = sent1 - sent0;
+        r.delivered = seen1 - seen0;
+        for (int b = 0; b < boards; b++) {
+            r.lost += pipelines[b].sequence().lost();
+            r.duplicates += pipelines[b].sequence().duplicates();
+            r.overwritten += rings[b].overwritten();
+            r.badFrames += pipelines[b].badFrames();
+            r.disconnects += sims[b].disconnects();
+        }
+        if (prod0 >= 0 && prod1 >= 0 && r.sent > 0) r.producerBytesPerSample = (double) (prod1 - prod0) / r.sent;
+        if (cons0 >= 0 && cons1 >= 0 && r.delivered > 0) r.consumerBytesPerSample = (double) (cons1 - cons0) / r.delivered;
+        r.published = merger.emitted();
+        r.late = merger.late();
+        r.outOfOrder = outOfOrder[0];
+        r.droppedLossless = lossless.dropped();
+        r.droppedSlow = slow.dropped();
+        r.slowAccounted = slowDelivered.get() + slow.dropped();
+
+        if (nLat[0] > 0) {
+            long[] l = Arrays.copyOf(latencies, nLat[0]);
+            Arrays.sort(l);
+            r.p50Us = percentileUs(l, 0.50);
+            r.p90Us = percentileUs(l, 0.90);
+            r.p99Us = percentileUs(l, 0.99);
+            r.p999Us = percentileUs(l, 0.999);
+            r.maxUs = TimeUnit.NANOSECONDS.toMicros(l[l.length - 1]);
+        }
+        if (nPub[0] > 0) {
+            long[] p = Arrays.copyOf(publishNanos, nPub[0]);
+            Arrays.sort(p);
+            r.publishP99Us = percentileUs(p, 0.99);
+            r.publishMaxUs = TimeUnit.NANOSECONDS.toMicros(p[p.length - 1]);
+        }
+        r.failure = completed ? check(sc, r) : "subscribers did not complete";
+        return r;
+    }
+
+    // Sum of per-thread counters; -1 as soon as one is unknown
+    private static long add(long sum, long bytes) { return sum < 0 || bytes < 0 ? -1 : sum + bytes; }
+
+    private static long percentileUs(long[] sorted, double p) {
+        int i = (int) Math.min(sorted.length - 1, Math.max(0, Math.ceil(p * sorted.length) - 1));
+        return TimeUnit.NANOSECONDS.toMicros(sorted[i]);
+    }
+
+    // ===== Per-thread allocation counter (HotSpot), looked up reflectively so Android never links it =====
+
+    private static final Object THREAD_BEAN;
+    private static final Method ALLOCATED_BYTES;
+    static {
+        Object bean = null;
+        Method m = null;
+        try {
+            bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+            m = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception | LinkageError ignored) {
+            m = null;
+        }
+        THREAD_BEAN = bean;
+        ALLOCATED_BYTES = m;
+    }
+
+    // -1 when the VM can't tell
+    static long allocatedBytes(Thread t) {
+        if (t == null || ALLOCATED_BYTES == null) return -1;
+        try {
+            return (Long) ALLOCATED_BYTES.invoke(THREAD_BEAN, t.getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        String filter = args.length > 1 ? args[1].toLowerCase(Locale.US) : null;
+        int failed = 0;
+        for (Scenario sc : defaultScenarios()) {
+            if (filter != null && !sc.name.toLowerCase(Locale.US).contains(filter)) continue;
+            System.out.println(sc.name + " [" + sc.cfg + "]");
+            Result r = run(sc, TimeUnit.SECONDS.toMillis(seconds));
+            System.out.println("  " + r);
+            if (r.failure != null) failed++;
+        }
+        System.out.println(failed == 0 ? "All scenarios within budget" : failed + " scenario(s) over budget");
+        if (failed > 0) System.exit(1);
+    }
+}
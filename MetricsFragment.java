@@ -0,0 +1,104 @@
+package com.example.neuroridev2;
+
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import java.io.File;
+import java.io.IOException;
+
+// Debug screen for TelemetryMetrics: refreshes once a second, and can reset, pause recording or
+// export everything to a text file. Opened by long-pressing the connection status on the
+// Devices screen. Built in code so it needs no layout resource.
+public class MetricsFragment extends Fragment {
+
+    private static final long REFRESH_MS = 1000;
+
+    private final TelemetryMetrics metrics = TelemetryMetrics.get();
+    private TextView tvReport;
+    private Button btnEnable;
+
+    private final Runnable refresh = new Runnable() {
+        @Override public void run() {
+            if (tvReport == null) return;
+            tvReport.setText(metrics.report());
+            tvReport.postDelayed(this, REFRESH_MS);
+        }
+    };
+
+    @Nullable
+    @Override public View onCreateView(@NonNull LayoutInflater inflater,
+                                       @Nullable ViewGroup container,
+                                       @Nullable Bundle savedInstanceState) {
+        LinearLayout root = new LinearLayout(requireContext());
+        root.setOrientation(LinearLayout.VERTICAL);
+        int pad = (int) (16 * requireContext().getResources().getDisplayMetrics().density);
+        root.setPadding(pad, pad, pad, pad);
+
+        LinearLayout buttons = new LinearLayout(requireContext());
+        buttons.setOrientation(LinearLayout.HORIZONTAL);
+        Button btnExport = new Button(requireContext());
+        btnExport.setText("Export");
+        btnExport.setOnClickListener(v -> export());
+        Button btnReset = new Button(requireContext());
+        btnReset.setText("Reset");
+        btnReset.setOnClickListener(v -> { metrics.reset(); tvReport.setText(metrics.report()); });
+        btnEnable = new Button(requireContext());
+        btnEnable.setOnClickListener(v -> { metrics.setEnabled(!metrics.isEnabled()); updateEnable(); });
+        updateEnable();
+        buttons.addView(btnExport);
+        buttons.addView(btnReset);
+        buttons.addView(btnEnable);
+
+        tvReport = new TextView(requireContext());
+        tvReport.setTypeface(Typeface.MONOSPACE);
+        tvReport.setTextSize(11);
+        tvReport.setTextIsSelectable(true);
+        ScrollView scroll = new ScrollView(requireContext());
+        scroll.addView(tvReport);
+
+        root.addView(buttons);
+        root.addView(scroll);
+        return root;
+    }
+
+    @Override public void onStart() {
+        super.onStart();
+        refresh.run();
+    }
+
+    @Override public void onStop() {
+        super.onStop();
+        if (tvReport != null) tvReport.removeCallbacks(refresh);
+    }
+
+    @Override public void onDestroyView() {
+        super.onDestroyView();
+        tvReport = null;
+        btnEnable = null;
+    }
+
+    private void updateEnable() {
+        btnEnable.setText(metrics.isEnabled() ? "Pause" : "Record");
+    }
+
+    private void export() {
+        try {
+            File out = metrics.export(new File(requireContext().getFilesDir(), "metrics"));   // next to rides/ and blackbox/
+            Toast.makeText(requireContext(), "Saved " + out.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Toast.makeText(requireContext(), "Export failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+}
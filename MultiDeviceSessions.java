@@ -0,0 +1,334 @@
+package com.example.neuroridev2;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Several boards at once (group rides, helmet + bike unit): one DeviceSession per board, each on
+// its own BleConnectionManager pinned to the board's address, merged by SessionMerger into one
+// time-ordered stream.
+//
+// start() reconnects the boards seen most recently straight away, and also runs a filtered scan
+// for DISCOVERY_MS that adds each new board the moment it is seen (the first one doesn't wait for
+// the window to end). A board is remembered once it reaches READY and forgotten when it turns out
+// not to be ours (STATUS_WRONG_DEVICE) or goes unseen for FORGET_AFTER_MS. With every slot taken,
+// a newly discovered board replaces a remembered one that hasn't connected since start().
+public final class MultiDeviceSessions {
+
+    public interface Callbacks extends DeviceSession.Listener {
+        // Merge thread, time-ordered across devices.
+        void onMergedSample(DeviceSession d, long tMs, TelemetrySample s);
+        // Connection manager thread of that device; see BleConnectionManager.StateListener.
+        // d == null with STATUS_NOT_FOUND: discovery ended and there is no board at all.
+        void onStateChanged(DeviceSession d, int state, int status);
+    }
+
+    public static final int MAX_DEVICES = 4;   // Android handles ~7 LE links; leave room for others
+    private static final long DISCOVERY_MS = 6_000;
+    private static final int RING_CAPACITY = 1024;
+    private static final String TAG = "NeuroRideBLE";
+    private static final String PREFS = "ble";
+    private static final String KEY_DEVICES = "devices";   // comma-separated address@lastSeenWallMs
+    private static final long FORGET_AFTER_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private final Context ctx;
+    private final String targetName;
+    private final UUID serviceUuid, charUuid, controlUuid, schemaUuid;
+    private final Callbacks callbacks;
+    private final SharedPreferences prefs;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final SessionMerger merger;
+
+    private final Object lock = new Object();
+    private final DeviceSession[] sessions = new DeviceSession[MAX_DEVICES];
+    private final BleConnectionManager[] managers = new BleConnectionManager[MAX_DEVICES];
+    private final boolean[] readyOnce = new boolean[MAX_DEVICES];   // reached READY since added
+    private final Map<String, Long> known = new LinkedHashMap<>();  // address -> last seen, wall ms
+    private boolean discovering;
+
+    // controlUuid: the boards' control characteristic for LinkTuner's rate requests; null if none
+    // schemaUuid: the boards' TelemetrySchema characteristic, read at every connect; null if none
+    public MultiDeviceSessions(Context ctx, String targetName, UUID serviceUuid, UUID charUuid, UUID controlUuid,
+                               UUID schemaUuid, Callbacks callbacks) {
+        this.ctx = ctx.getApplicationContext();
+        this.targetName = targetName;
+        this.serviceUuid = serviceUuid;
+        this.charUuid = charUuid;
+        this.controlUuid = controlUuid;
+        this.schemaUuid = schemaUuid;
+        this.callbacks = callbacks;
+        this.prefs = this.ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.merger = new SessionMerger(new SessionMerger.Config(), SystemClock::elapsedRealtime,
+                (id, t, s) -> {
+                    TelemetryMetrics m = TelemetryMetrics.get();
+                    if (m.isEnabled()) m.merge.recordMs(SystemClock.elapsedRealtime() - t);
+                    DeviceSession d = session(id);
+                    if (d != null) callbacks.onMergedSample(d, t, s);
+                });
+    }
+
+    // ===== Lifecycle =====
+
+    public void start() {
+        merger.start();
+        int n = 0;
+        for (String addr : loadKnown()) {   // most recently seen first
+            if (n++ == MAX_DEVICES) break;
+            addBle(addr, false);
+        }
+        startDiscovery();
+    }
+
+    // Any transport, e.g. a SimulatedPeripheral on the bench. Returns null when all slots are taken.
+    public DeviceSession add(String label, TelemetryTransport transport) { return add(label, transport, null); }
+
+    private DeviceSession add(String label, TelemetryTransport transport, BleConnectionManager ble) {
+        DeviceSession d;
+        synchronized (lock) {
+            int slot = freeSlot();
+            if (slot < 0) return null;
+            d = new DeviceSession(slot, label, transport, RING_CAPACITY, callbacks);
+            sessions[slot] = d;
+            managers[slot] = ble;
+            readyOnce[slot] = false;
+        }
+        // Before start(), so the first CONNECTING / SCANNING reaches the callbacks
+        if (ble != null) ble.setStateListener((state, status) -> onBleState(d, ble, state, status));
+        merger.addSource(d.index, d.ring);
+        merger.start();
+        d.start();
+        return d;
+    }
+
+    // Stops one board and frees its slot
+    private void remove(DeviceSession d) {
+        BleConnectionManager m;
+        synchronized (lock) {
+            if (sessions[d.index] != d) return;
+            m = managers[d.index];
+            sessions[d.index] = null;
+            managers[d.index] = null;
+        }
+        d.stop();
+        merger.removeSource(d.index);
+        if (m != null) m.release();
+    }
+
+    public void stop() {
+        stopDiscovery();
+        List<DeviceSession> all = sessions();
+        for (DeviceSession d : all) d.stop();
+        merger.stop();   // flushes what the devices already delivered
+        synchronized (lock) {
+            for (DeviceSession d : all) {
+                merger.removeSource(d.index);
+                if (managers[d.index] != null) managers[d.index].release();
+                managers[d.index] = null;
+                sessions[d.index] = null;
+            }
+        }
+    }
+
+    // Forget the remembered boards; the next start() discovers from scratch.
+    public void forgetDevices() {
+        synchronized (lock) { known.clear(); }
+        prefs.edit().remove(KEY_DEVICES).apply();
+    }
+
+    public List<DeviceSession> sessions() {
+        ArrayList<DeviceSession> out = new ArrayList<>();
+        synchronized (lock) {
+            for (DeviceSession d : sessions) if (d != null) out.add(d);
+        }
+        return out;
+    }
+
+    public boolean anyConnected() {
+        for (DeviceSession d : sessions()) if (d.isConnected()) return true;
+        return false;
+    }
+
+    public long mergedLate() { return merger.late(); }
+
+    // See SessionMerger.setTickMs
+    public void setMergeTickMs(long ms) { merger.setTickMs(ms); }
+
+    private DeviceSession session(int index) {
+        synchronized (lock) { return sessions[index]; }
+    }
+
+    private int freeSlot() {
+        for (int i = 0; i < MAX_DEVICES; i++) if (sessions[i] == null) return i;
+        return -1;
+    }
+
+    // ===== BLE boards =====
+
+    // Main thread. evict: with no free slot, take one from a remembered board that hasn't connected.
+    private void addBle(String address, boolean evict) {
+        DeviceSession victim = null;
+        synchronized (lock) {
+            for (BleConnectionManager m : managers) if (m != null && address.equals(m.address())) return;
+            if (evict && freeSlot() < 0) {
+                int slot = idleSlot();
+                if (slot < 0) return;
+                victim = sessions[slot];
+            }
+        }
+        if (victim != null) {
+            Log.i(TAG, "Slot " + victim.index + " to " + address + ", " + victim.label + " not seen yet");
+            remove(victim);
+        }
+        BleConnectionManager m = new BleConnectionManager(ctx, targetName, serviceUuid, charUuid, address);
+        m.setControlUuid(controlUuid);
+        m.setSchemaUuid(schemaUuid);
+        DeviceSession d = add(targetName + " " + address.substring(Math.max(0, address.length() - 5)), m, m);
+        if (d == null) m.release();
+    }
+
+    // A BLE board's slot that hasn't reached READY since it was added; -1 if none
+    private int idleSlot() {
+        for (int i = 0; i < MAX_DEVICES; i++) if (managers[i] != null && !readyOnce[i]) return i;
+        return -1;
+    }
+
+    // Connection manager thread of that board
+    private void onBleState(DeviceSession d, BleConnectionManager m, int state, int status) {
+        if (state == BleConnectionManager.READY) {
+            synchronized (lock) { if (sessions[d.index] == d) readyOnce[d.index] = true; }
+            remember(m.address());
+        } else if (status == BleConnectionManager.STATUS_WRONG_DEVICE) {
+            Log.w(TAG, "Forgetting " + m.address() + ": not a " + targetName);
+            forget(m.address());
+            main.post(() -> remove(d));   // not from the manager's own thread: release() ends it
+        }
+        callbacks.onStateChanged(d, state, status);
+    }
+
+    // ===== Remembered boards =====
+
+    // Addresses by last seen, newest first, without those unseen for FORGET_AFTER_MS
+    private List<String> loadKnown() {
+        long now = System.currentTimeMillis();
+        ArrayList<String> out = new ArrayList<>();
+        synchronized (lock) {
+            known.clear();
+            ArrayList<Map.Entry<String, Long>> entries = new ArrayList<>();
+            for (String item : prefs.getString(KEY_DEVICES, "").split(",")) {
+                if (item.isEmpty()) continue;
+                int at = item.indexOf('@');
+                long seen = now;   // saved before last-seen times were kept: give it a full period
+                if (at >= 0) {
+                    try { seen = Long.parseLong(item.substring(at + 1)); } catch (NumberFormatException ignored) {}
+                    item = item.substring(0, at);
+                }
+                if (now - seen < FORGET_AFTER_MS) entries.add(new AbstractMap.SimpleEntry<>(item, seen));
+            }
+            Collections.sort(entries, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+            for (Map.Entry<String, Long> e : entries) {
+                if (known.containsKey(e.getKey())) continue;
+                known.put(e.getKey(), e.getValue());
+                out.add(e.getKey());
+            }
+            saveKnownLocked();
+        }
+        return out;
+    }
+
+    private void remember(String address) {
+        synchronized (lock) {
+            known.remove(address);
+            known.put(address, System.currentTimeMillis());
+            saveKnownLocked();
+        }
+    }
+
+    private void forget(String address) {
+        synchronized (lock) {
+            if (known.remove(address) != null) saveKnownLocked();
+        }
+    }
+
+    private void saveKnownLocked() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> e : known.entrySet()) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(e.getKey()).append('@').append(e.getValue());
+        }
+        prefs.edit().putString(KEY_DEVICES, sb.toString()).apply();
+    }
+
+    // ===== Discovery: every board in range, not just the first =====
+
+    private BluetoothLeScanner scanner() {
+        BluetoothManager mgr = ctx.getSystemService(BluetoothManager.class);
+        BluetoothAdapter a = mgr != null ? mgr.getAdapter() : null;
+        return a != null ? a.getBluetoothLeScanner() : null;
+    }
+
+    private void startDiscovery() {
+        BluetoothLeScanner s = scanner();
+        if (s == null || discovering) return;
+        List<ScanFilter> filters = new ArrayList<>();
+        filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(serviceUuid)).build());
+        filters.add(new ScanFilter.Builder().setDeviceName(targetName).build());
+        ScanSettings settings = new ScanSettings.Builder().setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY).build();
+        try {
+            s.startScan(filters, settings, discoveryCallback);
+            discovering = true;
+            main.postDelayed(discoveryTimeout, DISCOVERY_MS);
+            callbacks.onStateChanged(null, BleConnectionManager.SCANNING, 0);
+        } catch (SecurityException se) {
+            Log.w(TAG, "Discovery scan not permitted", se);
+        }
+    }
+
+    private final Runnable discoveryTimeout = this::onDiscoveryTimeout;
+
+    private void onDiscoveryTimeout() {
+        stopDiscovery();
+        if (sessions().isEmpty()) {
+            merger.stop();
+            callbacks.onStateChanged(null, BleConnectionManager.IDLE, BleConnectionManager.STATUS_NOT_FOUND);
+        }
+    }
+
+    private void stopDiscovery() {
+        main.removeCallbacks(discoveryTimeout);
+        if (!discovering) return;
+        discovering = false;
+        BluetoothLeScanner s = scanner();
+        try { if (s != null) s.stopScan(discoveryCallback); } catch (SecurityException ignored) {}
+    }
+
+    private final ScanCallback discoveryCallback = new ScanCallback() {
+        @Override public void onScanResult(int callbackType, ScanResult result) {
+            String addr = result.getDevice().getAddress();
+            main.post(() -> {
+                if (discovering) addBle(addr, true);
+                boolean full;
+                synchronized (lock) { full = freeSlot() < 0 && idleSlot() < 0; }
+                if (full) stopDiscovery();
+            });
+        }
+    };
+}
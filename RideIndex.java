@@ -0,0 +1,381 @@
+package com.example.neuroridev2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Min/max/mean pyramid over a ride, built incrementally while recording.
+//
+// Level 0 buckets hold BASE_BUCKET consecutive samples; each higher level merges FANOUT buckets
+// of the level below. A chart query picks the coarsest level that still has at least one bucket
+// per pixel, so its cost follows the pixel count, not the ride length. Range aggregates
+// ("max g-force between t1 and t2") walk up the pyramid and touch O(FANOUT * levels) buckets.
+// Range edges are resolved to level-0 buckets, i.e. BASE_BUCKET samples.
+//
+// Columns follow RideLog: COL_G, COL_TEMP, COL_SPEED, COL_BAT. NaN values (field absent) are skipped.
+public final class RideIndex {
+
+    public static final int BASE_BUCKET = 64;
+    public static final int FANOUT = 4;
+    public static final int MAX_LEVELS = 8;
+    public static final int COLUMNS = RideLog.VALUE_COLUMNS;
+
+    private static final int FILE_MAGIC = 0x4E524958;   // "NRIX"
+    public static final String EXT = ".idx";
+
+    // One level of the pyramid: completed buckets in growable primitive arrays
+    private static final class Level {
+        int size;
+        long[] tStart = new long[64], tEnd = new long[64];
+        final float[][] min = new float[COLUMNS][64], max = new float[COLUMNS][64], sum = new float[COLUMNS][64];
+        final int[][] n = new int[COLUMNS][64];
+
+        void grow() {
+            int cap = tStart.length * 2;
+            tStart = Arrays.copyOf(tStart, cap);
+            tEnd = Arrays.copyOf(tEnd, cap);
+            for (int c = 0; c < COLUMNS; c++) {
+                min[c] = Arrays.copyOf(min[c], cap);
+                max[c] = Arrays.copyOf(max[c], cap);
+                sum[c] = Arrays.copyOf(sum[c], cap);
+                n[c] = Arrays.copyOf(n[c], cap);
+            }
+        }
+    }
+
+    // Running aggregate of the not-yet-complete bucket at each level
+    private static final class Open {
+        int children;                 // samples (level 0) or child buckets (higher levels)
+        long tStart, tEnd;
+        final float[] min = new float[COLUMNS], max = new float[COLUMNS], sum = new float[COLUMNS];
+        final int[] n = new int[COLUMNS];
+
+        void clear() {
+            children = 0;
+            for (int c = 0; c < COLUMNS; c++) {
+                min[c] = Float.POSITIVE_INFINITY;
+                max[c] = Float.NEGATIVE_INFINITY;
+                sum[c] = 0;
+                n[c] = 0;
+            }
+        }
+    }
+
+    private final Level[] levels = new Level[MAX_LEVELS];
+    private final Open[] open = new Open[MAX_LEVELS];
+    private long samples;
+
+    // Scratch for range queries (guarded by the instance lock)
+    private float qMin, qMax;
+    private double qSum;
+    private int qN;
+
+    public RideIndex() {
+        for (int l = 0; l < MAX_LEVELS; l++) {
+            levels[l] = new Level();
+            open[l] = new Open();
+            open[l].clear();
+        }
+    }
+
+    // ===== Build =====
+
+    public synchronized void add(long t, float g, float temp, float speed, float bat) {
+        Open o = open[0];
+        if (o.children == 0) o.tStart = t;
+        o.tEnd = t;
+        o.children++;
+        fold(o, RideLog.COL_G, g);
+        fold(o, RideLog.COL_TEMP, temp);
+        fold(o, RideLog.COL_SPEED, speed);
+        fold(o, RideLog.COL_BAT, bat);
+        samples++;
+        if (o.children == BASE_BUCKET) complete(0);
+    }
+
+    public void add(long t, TelemetrySample s) {
+        add(t, (float) s.gforce, (float) s.temp, (float) s.speed,
+                s.has(TelemetrySample.BAT) ? s.battery : Float.NaN);
+    }
+
+    private static void fold(Open o, int c, float v) {
+        if (Float.isNaN(v)) return;
+        if (v < o.min[c]) o.min[c] = v;
+        if (v > o.max[c]) o.max[c] = v;
+        o.sum[c] += v;
+        o.n[c]++;
+    }
+
+    // Move the open bucket of `level` into its array and fold it into the level above
+    private void complete(int level) {
+        Open o = open[level];
+        Level L = levels[level];
+        if (L.size == L.tStart.length) L.grow();
+        int i = L.size++;
+        L.tStart[i] = o.tStart;
+        L.tEnd[i] = o.tEnd;
+        for (int c = 0; c < COLUMNS; c++) {
+            L.min[c][i] = o.min[c];
+            L.max[c][i] = o.max[c];
+            L.sum[c][i] = o.sum[c];
+            L.n[c][i] = o.n[c];
+        }
+        if (level + 1 < MAX_LEVELS) {
+            Open up = open[level + 1];
+            if (up.children == 0) up.tStart = o.tStart;
+            up.tEnd = o.tEnd;
+            up.children++;
+            for (int c = 0; c < COLUMNS; c++) {
+                if (o.n[c] == 0) continue;
+                if (o.min[c] < up.min[c]) up.min[c] = o.min[c];
+                if (o.max[c] > up.max[c]) up.max[c] = o.max[c];
+                up.sum[c] += o.sum[c];
+                up.n[c] += o.n[c];
+            }
+            o.clear();
+            if (up.children == FANOUT) complete(level + 1);
+        } else {
+            o.clear();
+        }
+    }
+
+    // ===== Chart series =====
+
+    // Scratch for the pixel being filled by series()
+    private int sPx;
+    private double sSum;
+    private int sN;
+
+    // Fills one min/max/mean triple per pixel column over [t1, t2]; empty columns get NaN.
+    // Zoomed in past level-0 resolution, some columns stay empty: read raw samples from the RideLog there.
+    // Returns the pyramid level used (-1 if the range is empty).
+    public synchronized int series(int col, long t1, long t2, int pixels,
+                                   float[] outMin, float[] outMax, float[] outMean) {
+        if (pixels <= 0) return -1;
+        Arrays.fill(outMin, 0, pixels, Float.NaN);
+        Arrays.fill(outMax, 0, pixels, Float.NaN);
+        Arrays.fill(outMean, 0, pixels, Float.NaN);
+        if (t2 <= t1 || samples == 0) return -1;
+
+        // Coarsest level with at least one bucket per pixel
+        double msPerPixel = (double) (t2 - t1) / pixels;
+        int level = 0;
+        while (level + 1 < MAX_LEVELS && levels[level + 1].size > 1 && bucketMs(level + 1) <= msPerPixel) level++;
+
+        // Buckets arrive in time order: the chosen level first, then the finer levels for the
+        // tail it does not cover yet, then the open level-0 bucket.
+        sPx = -1;
+        long covered = Long.MIN_VALUE;
+        for (int l = level; l >= 0; l--) {
+            Level L = levels[l];
+            int i = Math.max(firstEndingAtOrAfter(L, t1), firstStartingAfter(L, covered));
+            for (; i < L.size && L.tStart[i] <= t2; i++) {
+                if (L.n[col][i] == 0) continue;
+                put(pixelOf(Math.max(L.tStart[i], t1), t1, t2, pixels),
+                        L.min[col][i], L.max[col][i], L.sum[col][i], L.n[col][i], outMin, outMax, outMean);
+            }
+            if (L.size > 0) covered = Math.max(covered, L.tEnd[L.size - 1]);
+        }
+        Open o = open[0];
+        if (o.children > 0 && o.n[col] > 0 && o.tEnd >= t1 && o.tStart <= t2) {
+            put(pixelOf(Math.max(o.tStart, t1), t1, t2, pixels),
+                    o.min[col], o.max[col], o.sum[col], o.n[col], outMin, outMax, outMean);
+        }
+        if (sPx >= 0) outMean[sPx] = (float) (sSum / sN);
+        return level;
+    }
+
+    private void put(int px, float min, float max, float sum, int n,
+                     float[] outMin, float[] outMax, float[] outMean) {
+        if (px != sPx) {
+            if (sPx >= 0) outMean[sPx] = (float) (sSum / sN);
+            sPx = px;
+            sSum = 0;
+            sN = 0;
+            outMin[px] = min;
+            outMax[px] = max;
+        } else {
+            outMin[px] = Math.min(outMin[px], min);
+            outMax[px] = Math.max(outMax[px], max);
+        }
+        sSum += sum;
+        sN += n;
+    }
+
+    private static int pixelOf(long t, long t1, long t2, int pixels) {
+        int px = (int) ((t - t1) * pixels / (t2 - t1 + 1));
+        return Math.max(0, Math.min(pixels - 1, px));
+    }
+
+    private double bucketMs(int level) {
+        Level L = levels[level];
+        return (double) (L.tEnd[L.size - 1] - L.tStart[0]) / L.size;
+    }
+
+    // ===== Range aggregates =====
+
+    public synchronized float rangeMax(int col, long t1, long t2) {
+        return range(col, t1, t2) ? qMax : Float.NaN;
+    }
+
+    public synchronized float rangeMin(int col, long t1, long t2) {
+        return range(col, t1, t2) ? qMin : Float.NaN;
+    }
+
+    public synchronized float rangeMean(int col, long t1, long t2) {
+        return range(col, t1, t2) ? (float) (qSum / qN) : Float.NaN;
+    }
+
+    // Every level-0 bucket overlapping [t1, t2], aggregated via the coarsest aligned buckets.
+    private boolean range(int col, long t1, long t2) {
+        qMin = Float.POSITIVE_INFINITY;
+        qMax = Float.NEGATIVE_INFINITY;
+        qSum = 0;
+        qN = 0;
+        Level L0 = levels[0];
+        int lo = firstEndingAtOrAfter(L0, t1);
+        int hi = lastStartingAtOrBefore(L0, t2) + 1;   // exclusive
+        for (int level = 0; level < MAX_LEVELS && lo < hi; level++) {
+            Level L = levels[level];
+            boolean top = level + 1 == MAX_LEVELS;
+            while (lo < hi && (top || lo % FANOUT != 0)) take(L, col, lo++);
+            // A trailing group is only available above once its parent bucket is complete
+            int parentsDone = level + 1 < MAX_LEVELS ? levels[level + 1].size : 0;
+            while (lo < hi && (hi % FANOUT != 0 || hi / FANOUT > parentsDone)) take(L, col, --hi);
+            lo /= FANOUT;
+            hi /= FANOUT;
+        }
+        Open o = open[0];
+        if (o.children > 0 && o.n[col] > 0 && o.tEnd >= t1 && o.tStart <= t2) {
+            qMin = Math.min(qMin, o.min[col]);
+            qMax = Math.max(qMax, o.max[col]);
+            qSum += o.sum[col];
+            qN += o.n[col];
+        }
+        return qN > 0;
+    }
+
+    private void take(Level L, int col, int i) {
+        int n = L.n[col][i];
+        if (n == 0) return;
+        qMin = Math.min(qMin, L.min[col][i]);
+        qMax = Math.max(qMax, L.max[col][i]);
+        qSum += L.sum[col][i];
+        qN += n;
+    }
+
+    private static int firstEndingAtOrAfter(Level L, long t) {
+        int lo = 0, hi = L.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (L.tEnd[mid] < t) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int firstStartingAfter(Level L, long t) {
+        return lastStartingAtOrBefore(L, t) + 1;
+    }
+
+    private static int lastStartingAtOrBefore(Level L, long t) {
+        int lo = 0, hi = L.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (L.tStart[mid] <= t) lo = mid + 1; else hi = mid;
+        }
+        return lo - 1;
+    }
+
+    public synchronized long samples() { return samples; }
+
+    // ===== Persistence: level 0 plus the open bucket; upper levels are rebuilt on load =====
+
+    public static File sidecar(File rideLog) {
+        String name = rideLog.getName();
+        if (name.endsWith(RideLog.EXT)) name = name.substring(0, name.length() - RideLog.EXT.length());
+        return new File(rideLog.getParentFile(), name + EXT);
+    }
+
+    public synchronized void save(File f) throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(BASE_BUCKET);
+            out.writeLong(samples);
+            Level L = levels[0];
+            out.writeInt(L.size);
+            for (int i = 0; i < L.size; i++) {
+                out.writeLong(L.tStart[i]);
+                out.writeLong(L.tEnd[i]);
+                for (int c = 0; c < COLUMNS; c++) {
+                    out.writeFloat(L.min[c][i]);
+                    out.writeFloat(L.max[c][i]);
+                    out.writeFloat(L.sum[c][i]);
+                    out.writeInt(L.n[c][i]);
+                }
+            }
+            Open o = open[0];
+            out.writeInt(o.children);
+            out.writeLong(o.tStart);
+            out.writeLong(o.tEnd);
+            for (int c = 0; c < COLUMNS; c++) {
+                out.writeFloat(o.min[c]);
+                out.writeFloat(o.max[c]);
+                out.writeFloat(o.sum[c]);
+                out.writeInt(o.n[c]);
+            }
+        }
+        if (!tmp.renameTo(f)) throw new IOException("Cannot write " + f);
+    }
+
+    public static RideIndex load(File f) throws IOException {
+        RideIndex idx = new RideIndex();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != BASE_BUCKET) throw new IOException("Bad index: " + f);
+            idx.samples = in.readLong();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                Open o = idx.open[0];
+                o.tStart = in.readLong();
+                o.tEnd = in.readLong();
+                o.children = BASE_BUCKET;
+                for (int c = 0; c < COLUMNS; c++) {
+                    o.min[c] = in.readFloat();
+                    o.max[c] = in.readFloat();
+                    o.sum[c] = in.readFloat();
+                    o.n[c] = in.readInt();
+                }
+                idx.complete(0);
+            }
+            Open o = idx.open[0];
+            o.children = in.readInt();
+            o.tStart = in.readLong();
+            o.tEnd = in.readLong();
+            for (int c = 0; c < COLUMNS; c++) {
+                o.min[c] = in.readFloat();
+                o.max[c] = in.readFloat();
+                o.sum[c] = in.readFloat();
+                o.n[c] = in.readInt();
+            }
+        }
+        return idx;
+    }
+
+    // Index for a stored ride: the sidecar if present and current, otherwise rebuilt from the log and saved.
+    public static RideIndex forRide(File rideLog) throws IOException {
+        File side = sidecar(rideLog);
+        if (side.isFile() && side.lastModified() >= rideLog.lastModified()) {
+            try { return load(side); } catch (IOException ignored) {}
+        }
+        RideIndex idx = new RideIndex();
+        RideLogReader.read(rideLog, s -> idx.add(s.deviceTimeMs, s));
+        try { idx.save(side); } catch (IOException ignored) {}
+        return idx;
+    }
+}
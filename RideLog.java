@@ -0,0 +1,299 @@
+package com.example.neuroridev2;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+// Append-only ride recording, written through a memory-mapped file.
+//
+// File:  64-byte header, then fixed 4 KiB blocks.
+//   header  [0] int magic "NRLG"  [4] int version  [8] int block size
+//           [16] long wall-clock start (epoch ms)  [24] long elapsedRealtime start  [32] byte closed cleanly
+// Block: 32-byte header, then one fixed region per column, each Gorilla-compressed
+//   header  [0] int magic "NRBK"  [4] int committed sample count  [8] long first timestamp
+//           [16] int CRC32 of the block (crc field excluded)  [20] byte sealed
+//   columns time (delta-of-delta), gforce, temp, speed, battery (XOR floats)
+//
+// A block is sealed with its CRC once any column region is full. The open tail block is
+// committed by bumping its sample count after each append; mapped pages survive process death,
+// so reopening a ride recovers every committed sample and discards the torn remainder.
+public final class RideLog implements Closeable {
+
+    static final int FILE_MAGIC = 0x4E524C47;    // "NRLG"
+    static final int BLOCK_MAGIC = 0x4E52424B;   // "NRBK"
+    static final int VERSION = 1;
+    static final int FILE_HEADER = 64;
+    static final int BLOCK_SIZE = 4096;
+    static final int BLOCK_HEADER = 32;
+    static final int BLOCKS_PER_MAP = 64;        // 256 KiB mapped at a time
+
+    static final int H_CLOSED = 32;
+    static final int B_COUNT = 4, B_FIRST_TIME = 8, B_CRC = 16, B_SEALED = 20;
+
+    // Column regions inside a block; g-force changes every sample, the rest mostly repeat
+    public static final int COL_G = 0, COL_TEMP = 1, COL_SPEED = 2, COL_BAT = 3, VALUE_COLUMNS = 4;
+    static final int TIME_OFF = BLOCK_HEADER, TIME_LEN = 384;
+    static final int[] COL_OFF = {416, 2464, 3040, 3616};
+    static final int[] COL_LEN = {2048, 576, 576, 480};
+
+    public static final String EXT = ".nrl";
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel ch;
+    private MappedByteBuffer map;
+    private long mapStartBlock = -1;
+
+    private long blockIndex = -1;     // current (open) block
+    private int blockOff;             // its byte offset inside `map`
+    private int count = -1;           // committed samples in the open block, -1 when none is open
+    private long totalSamples;
+    private boolean closed;
+
+    private final GorillaCodec.TimeEncoder time = new GorillaCodec.TimeEncoder();
+    private final GorillaCodec.FloatEncoder[] cols = new GorillaCodec.FloatEncoder[VALUE_COLUMNS];
+    private final CRC32 crc = new CRC32();
+
+    private RideLog(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.ch = raf.getChannel();
+        for (int c = 0; c < VALUE_COLUMNS; c++) cols[c] = new GorillaCodec.FloatEncoder();
+    }
+
+    // ===== Open / create =====
+
+    public static RideLog create(File dir, long startEpochMs, long startElapsedMs) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        RideLog log = new RideLog(new File(dir, "ride-" + startEpochMs + EXT));
+        ByteBuffer h = ByteBuffer.allocate(FILE_HEADER);
+        h.putInt(0, FILE_MAGIC).putInt(4, VERSION).putInt(8, BLOCK_SIZE)
+                .putLong(16, startEpochMs).putLong(24, startElapsedMs);
+        log.ch.truncate(0);
+        log.ch.write(h, 0);
+        return log;
+    }
+
+    // Reopens an existing ride for appending, recovering whatever the last process committed.
+    public static RideLog openForAppend(File f) throws IOException {
+        RideLog log = new RideLog(f);
+        try {
+            log.recover();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    // Seals every ride in `dir` that was not closed cleanly (e.g. the process was killed mid-ride).
+    public static int recoverAll(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(EXT));
+        if (files == null) return 0;
+        int recovered = 0;
+        for (File f : files) {
+            try (RandomAccessFile r = new RandomAccessFile(f, "r")) {
+                if (r.length() >= FILE_HEADER) {
+                    r.seek(H_CLOSED);
+                    if (r.readByte() != 0) continue;
+                }
+            } catch (IOException e) {
+                continue;
+            }
+            try {
+                openForAppend(f).close();   // recovers on open, seals on close
+                recovered++;
+            } catch (IOException | RuntimeException ignored) {}
+        }
+        return recovered;
+    }
+
+    private void recover() throws IOException {
+        long size = ch.size();
+        ByteBuffer h = ByteBuffer.allocate(FILE_HEADER);
+        ch.read(h, 0);
+        if (size < FILE_HEADER || h.getInt(0) != FILE_MAGIC || h.getInt(8) != BLOCK_SIZE) {
+            throw new IOException("Not a ride log: " + file);
+        }
+        markClosed(false);
+
+        long blocks = (size - FILE_HEADER) / BLOCK_SIZE;
+        RideLogReader.BlockDecoder dec = new RideLogReader.BlockDecoder();
+        for (long i = 0; i < blocks; i++) {
+            mapBlock(i);
+            if (map.getInt(blockOff) != BLOCK_MAGIC) break;
+            int n = map.getInt(blockOff + B_COUNT);
+            if (map.get(blockOff + B_SEALED) != 0) {
+                if (blockCrc() != map.getInt(blockOff + B_CRC)) break;
+                totalSamples += n;
+                continue;
+            }
+            // Open tail: replay its committed samples to rebuild encoder state
+            blockIndex = i;
+            count = n;
+            if (n > 0) {
+                dec.decode(map, blockOff, n, null);
+                restoreEncoders(dec);
+                scrubTail();
+                totalSamples += n;
+            } else {
+                blockIndex = i - 1;   // empty tail, restart it on the next append
+                count = -1;
+            }
+            truncateBlocks(i + 1);
+            return;
+        }
+        // No open tail: drop whatever follows the last good block and start a fresh one on append
+        long good = 0;
+        for (long i = 0; i < blocks; i++) {
+            mapBlock(i);
+            if (map.getInt(blockOff) != BLOCK_MAGIC || map.get(blockOff + B_SEALED) == 0
+                    || blockCrc() != map.getInt(blockOff + B_CRC)) break;
+            good = i + 1;
+        }
+        truncateBlocks(good);
+        blockIndex = good - 1;
+        count = -1;   // last block is sealed
+    }
+
+    // Cut garbage blocks off the end, then remap: touching a mapping past EOF would fault
+    private void truncateBlocks(long blocks) throws IOException {
+        ch.truncate(FILE_HEADER + blocks * BLOCK_SIZE);
+        map = null;
+        mapStartBlock = -1;
+        if (blockIndex >= 0) mapBlock(blockIndex);
+    }
+
+    private void restoreEncoders(RideLogReader.BlockDecoder dec) {
+        int base = blockOff;
+        time.base = base + TIME_OFF;
+        time.limitBits = TIME_LEN * 8;
+        time.bitPos = dec.time.bitPos;
+        time.prevTime = dec.time.prevTime;
+        time.prevDelta = dec.time.prevDelta;
+        for (int c = 0; c < VALUE_COLUMNS; c++) {
+            GorillaCodec.FloatEncoder e = cols[c];
+            GorillaCodec.FloatDecoder d = dec.cols[c];
+            e.base = base + COL_OFF[c];
+            e.limitBits = COL_LEN[c] * 8;
+            e.bitPos = d.bitPos;
+            e.prevBits = d.prevBits;
+            e.prevLead = d.prevLead;
+            e.prevTrail = d.prevTrail;
+            e.first = d.first;
+        }
+    }
+
+    // Zero every bit after the committed position of each column (left over from a torn append)
+    private void scrubTail() {
+        scrub(time.base, time.bitPos, TIME_LEN);
+        for (int c = 0; c < VALUE_COLUMNS; c++) scrub(cols[c].base, cols[c].bitPos, COL_LEN[c]);
+    }
+
+    private void scrub(int base, long bitPos, int lenBytes) {
+        int idx = (int) (bitPos >>> 3);
+        int used = (int) (bitPos & 7);
+        if (used != 0) {
+            map.put(base + idx, (byte) (map.get(base + idx) & (0xFF00 >>> used)));
+            idx++;
+        }
+        for (int i = idx; i < lenBytes; i++) map.put(base + i, (byte) 0);
+    }
+
+    // ===== Append (hot path) =====
+
+    public synchronized void append(long tMs, TelemetrySample s) throws IOException {
+        append(tMs, (float) s.gforce, (float) s.temp, (float) s.speed,
+                s.has(TelemetrySample.BAT) ? s.battery : Float.NaN);
+    }
+
+    public synchronized void append(long tMs, float g, float temp, float speed, float bat) throws IOException {
+        if (closed) return;
+        if (count < 0 || !fits(tMs)) {
+            if (count > 0) seal();
+            startBlock(blockIndex + 1, tMs);
+        }
+        if (count > 0) time.append(map, tMs);
+        cols[COL_G].append(map, g);
+        cols[COL_TEMP].append(map, temp);
+        cols[COL_SPEED].append(map, speed);
+        cols[COL_BAT].append(map, bat);
+        count++;
+        map.putInt(blockOff + B_COUNT, count);   // commit point
+        totalSamples++;
+    }
+
+    private boolean fits(long t) {
+        if (count == 0) return true;
+        if (!time.fits(t)) return false;
+        for (int c = 0; c < VALUE_COLUMNS; c++) if (!cols[c].fits()) return false;
+        return true;
+    }
+
+    private void startBlock(long index, long firstTime) throws IOException {
+        blockIndex = index;
+        mapBlock(index);
+        for (int i = 0; i < BLOCK_SIZE; i += 8) map.putLong(blockOff + i, 0);   // may hold a torn block
+        map.putLong(blockOff + B_FIRST_TIME, firstTime);
+        map.putInt(blockOff + B_COUNT, 0);
+        map.putInt(blockOff + B_CRC, 0);
+        map.put(blockOff + B_SEALED, (byte) 0);
+        map.putInt(blockOff, BLOCK_MAGIC);
+        time.reset(blockOff + TIME_OFF, TIME_LEN * 8, firstTime);
+        for (int c = 0; c < VALUE_COLUMNS; c++) cols[c].reset(blockOff + COL_OFF[c], COL_LEN[c] * 8);
+        count = 0;
+    }
+
+    private void seal() {
+        map.putInt(blockOff + B_CRC, blockCrc());
+        map.put(blockOff + B_SEALED, (byte) 1);
+    }
+
+    private int blockCrc() { return RideLogReader.crc(map, blockOff, crc); }
+
+    private void mapBlock(long index) throws IOException {
+        long chunk = index / BLOCKS_PER_MAP;
+        if (map == null || mapStartBlock != chunk * BLOCKS_PER_MAP) {
+            mapStartBlock = chunk * BLOCKS_PER_MAP;
+            map = ch.map(FileChannel.MapMode.READ_WRITE,
+                    FILE_HEADER + mapStartBlock * BLOCK_SIZE, (long) BLOCKS_PER_MAP * BLOCK_SIZE);
+        }
+        blockOff = (int) (index - mapStartBlock) * BLOCK_SIZE;
+    }
+
+    private void markClosed(boolean v) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        b.put(0, (byte) (v ? 1 : 0));
+        ch.write(b, H_CLOSED);
+    }
+
+    // ===== Lifecycle =====
+
+    public File file() { return file; }
+    public synchronized long samples() { return totalSamples; }
+
+    // Push dirty pages to storage; only needed to survive power loss, not process death.
+    public synchronized void flush() {
+        if (!closed && map != null) map.force();
+    }
+
+    @Override public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (count > 0) seal();
+            if (map != null) map.force();
+            ch.truncate(FILE_HEADER + (blockIndex + 1) * BLOCK_SIZE);
+            markClosed(true);
+            ch.force(true);
+        } finally {
+            map = null;
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.neuroridev2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+// Sequential reader for RideLog files. Sealed blocks are CRC-checked; the unsealed tail of a ride
+// that was never closed is read up to its committed sample count.
+public final class RideLogReader {
+
+    // Decodes one block; reused across blocks.
+    static final class BlockDecoder {
+        final GorillaCodec.TimeDecoder time = new GorillaCodec.TimeDecoder();
+        final GorillaCodec.FloatDecoder[] cols = new GorillaCodec.FloatDecoder[RideLog.VALUE_COLUMNS];
+
+        BlockDecoder() {
+            for (int c = 0; c < cols.length; c++) cols[c] = new GorillaCodec.FloatDecoder();
+        }
+
+        // `sink` may be null when only the decoder state is wanted. Sample time is in deviceTimeMs.
+        void decode(ByteBuffer b, int blockOff, int count, TelemetrySample scratch, TelemetryCodec.SampleSink sink) {
+            time.reset(blockOff + RideLog.TIME_OFF, b.getLong(blockOff + RideLog.B_FIRST_TIME));
+            for (int c = 0; c < cols.length; c++) cols[c].reset(blockOff + RideLog.COL_OFF[c]);
+            for (int i = 0; i < count; i++) {
+                long t = i == 0 ? time.prevTime : time.next(b);
+                float g = cols[RideLog.COL_G].next(b);
+                float temp = cols[RideLog.COL_TEMP].next(b);
+                float speed = cols[RideLog.COL_SPEED].next(b);
+                float bat = cols[RideLog.COL_BAT].next(b);
+                if (sink == null) continue;
+                scratch.clear();
+                scratch.deviceTimeMs = t;
+                if (!Float.isNaN(g))     { scratch.gforce = g;     scratch.mask |= TelemetrySample.GFORCE; }
+                if (!Float.isNaN(temp))  { scratch.temp = temp;    scratch.mask |= TelemetrySample.TEMP; }
+                if (!Float.isNaN(speed)) { scratch.speed = speed;  scratch.mask |= TelemetrySample.SPEED; }
+                if (!Float.isNaN(bat))   { scratch.battery = Math.round(bat); scratch.mask |= TelemetrySample.BAT; }
+                sink.onSample(scratch);
+            }
+        }
+
+        void decode(ByteBuffer b, int blockOff, int count, TelemetryCodec.SampleSink sink) {
+            decode(b, blockOff, count, sink == null ? null : new TelemetrySample(), sink);
+        }
+    }
+
+    public static final class Header {
+        public long startEpochMs;
+        public long startElapsedMs;
+        public boolean closedCleanly;
+        public long samples;
+        public long firstTimeMs = Long.MIN_VALUE, lastTimeMs = Long.MIN_VALUE;
+    }
+
+    private RideLogReader() {}
+
+    // Streams every recoverable sample to `sink` (sample time in deviceTimeMs, elapsedRealtime ms)
+    // and returns the header with totals.
+    public static Header read(File f, TelemetryCodec.SampleSink sink) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel ch = raf.getChannel()) {
+            long size = ch.size();
+            if (size < RideLog.FILE_HEADER) throw new IOException("Truncated ride log: " + f);
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (b.getInt(0) != RideLog.FILE_MAGIC || b.getInt(8) != RideLog.BLOCK_SIZE) {
+                throw new IOException("Not a ride log: " + f);
+            }
+            Header h = new Header();
+            h.startEpochMs = b.getLong(16);
+            h.startElapsedMs = b.getLong(24);
+            h.closedCleanly = b.get(RideLog.H_CLOSED) != 0;
+
+            BlockDecoder dec = new BlockDecoder();
+            TelemetrySample scratch = new TelemetrySample();
+            TelemetryCodec.SampleSink counting = s -> {
+                if (h.firstTimeMs == Long.MIN_VALUE) h.firstTimeMs = s.deviceTimeMs;
+                h.lastTimeMs = s.deviceTimeMs;
+                h.samples++;
+                if (sink != null) sink.onSample(s);
+            };
+            CRC32 crc = new CRC32();
+            long blocks = (size - RideLog.FILE_HEADER) / RideLog.BLOCK_SIZE;
+            for (long i = 0; i < blocks; i++) {
+                int off = (int) (RideLog.FILE_HEADER + i * RideLog.BLOCK_SIZE);
+                if (b.getInt(off) != RideLog.BLOCK_MAGIC) break;
+                int n = b.getInt(off + RideLog.B_COUNT);
+                boolean sealed = b.get(off + RideLog.B_SEALED) != 0;
+                if (sealed && crc(b, off, crc) != b.getInt(off + RideLog.B_CRC)) break;
+                dec.decode(b, off, n, scratch, counting);
+                if (!sealed) break;   // open tail is always last
+            }
+            return h;
+        }
+    }
+
+    static int crc(ByteBuffer b, int off, CRC32 crc) {
+        crc.reset();
+        for (int i = 0; i < RideLog.BLOCK_SIZE; i++) {
+            if (i >= RideLog.B_CRC && i < RideLog.B_CRC + 4) continue;
+            if (i == RideLog.B_SEALED) continue;
+            crc.update(b.get(off + i));
+        }
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.neuroridev2;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Owns the RideLog, RideIndex and RideStats of the ride in progress. File creation, crash recovery of earlier
+// rides and closing run on a private I/O thread. append() writes the mapped file and maps the next
+// region when one fills, so it must not run on the merge thread: call it on executor(), the same
+// thread, so the index and stats it updates are the ones stop() saves.
+public final class RideRecorder {
+
+    private static final String TAG = "NeuroRideLog";
+
+    private final File dir;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> new Thread(r, "ride-io"));
+    private volatile RideLog log;
+    private volatile RideIndex index;
+    private volatile RideStats stats;
+    private boolean started;
+
+    public RideRecorder(File dir) { this.dir = dir; }
+
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        io.execute(() -> {
+            int n = RideLog.recoverAll(dir);   // before creating ours, so it can't pick up the live file
+            if (n > 0) Log.i(TAG, "Recovered " + n + " unfinished ride(s)");
+            try {
+                index = new RideIndex();
+                stats = new RideStats();
+                log = RideLog.create(dir, System.currentTimeMillis(), SystemClock.elapsedRealtime());
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot start ride log", e);
+            }
+        });
+    }
+
+    // tMs: elapsedRealtime timeline (see DeviceClock)
+    public void append(long tMs, TelemetrySample s) {
+        RideLog l = log;
+        if (l == null) return;
+        try {
+            l.append(tMs, s);
+            index.add(tMs, s);
+            stats.add(tMs, s);
+        } catch (IOException e) {
+            log = null;
+            Log.w(TAG, "Ride log write failed, recording stopped", e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (!started) return;
+        started = false;
+        io.execute(() -> {
+            RideLog l = log;
+            log = null;
+            if (l == null) return;
+            try {
+                l.close();
+                index.save(RideIndex.sidecar(l.file()));
+                stats.save(RideStats.sidecar(l.file()));
+                Log.i(TAG, "Ride saved: " + l.file().getName() + " (" + l.samples() + " samples) " + stats.summary());
+            } catch (IOException e) {
+                Log.w(TAG, "Ride log close failed", e);
+            }
+        });
+    }
+
+    // Stops the ride (if any) and lets the I/O thread exit once it has been saved.
+    public synchronized void release() {
+        stop();
+        io.shutdown();
+    }
+
+    // The ride-io thread; deliver append() here (TelemetryBus.Options.executor)
+    public Executor executor() { return io; }
+
+    public boolean isRecording() { return log != null; }
+
+    // Live index of the current ride, for charts and range queries; null when not recording.
+    public RideIndex index() { return log != null ? index : null; }
+
+    // Live statistics of the current ride; read them through snapshot(). Null when not recording.
+    public RideStats stats() { return log != null ? stats : null; }
+}
@@ -0,0 +1,398 @@
+package com.example.neuroridev2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+// Summary of a ride, kept up to date sample by sample in constant memory and without allocation:
+//
+//   g-force      mean / variance (Welford), min / max, quantile sketch for p50 / p95 / p99
+//   temperature  the same
+//   speed        mean / max, distance (speed held until the next sample)
+//   time above   ms at or above each of G_THRESHOLDS and TEMP_THRESHOLDS, the same way
+//   battery      percent drained and the time it was measured over, so %/h
+//
+// Gaps longer than MAX_GAP_MS (link down) count as MAX_GAP_MS. Every part merges exactly, so a
+// week or a month is the merge of its rides' sidecars (rollup). RideRecorder feeds it on the
+// merge thread; other threads read a snapshot(). RideStatsTestRunner checks its accuracy.
+public final class RideStats {
+
+    public static final double[] G_THRESHOLDS = {1.5, 2.0, 3.0, 4.0};
+    public static final double[] TEMP_THRESHOLDS = {40, 50};
+    public static final long MAX_GAP_MS = 2000;
+
+    private static final int FILE_MAGIC = 0x4E525354;   // "NRST"
+    private static final int FILE_VERSION = 1;
+    public static final String EXT = ".stats";
+
+    // ===== Welford mean / variance with min and max; Chan et al. to merge =====
+
+    public static final class Moments {
+        long n;
+        double mean, m2;
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+        public void add(double x) {
+            n++;
+            double d = x - mean;
+            mean += d / n;
+            m2 += d * (x - mean);
+            if (x < min) min = x;
+            if (x > max) max = x;
+        }
+
+        public void merge(Moments o) {
+            if (o.n == 0) return;
+            if (n == 0) { set(o); return; }
+            long total = n + o.n;
+            double d = o.mean - mean;
+            mean += d * o.n / total;
+            m2 += o.m2 + d * d * ((double) n * o.n / total);
+            n = total;
+            min = Math.min(min, o.min);
+            max = Math.max(max, o.max);
+        }
+
+        void set(Moments o) { n = o.n; mean = o.mean; m2 = o.m2; min = o.min; max = o.max; }
+
+        public long count()      { return n; }
+        public double mean()     { return n > 0 ? mean : Double.NaN; }
+        public double variance() { return n > 1 ? m2 / (n - 1) : Double.NaN; }
+        public double stddev()   { return Math.sqrt(variance()); }
+        public double min()      { return n > 0 ? min : Double.NaN; }
+        public double max()      { return n > 0 ? max : Double.NaN; }
+    }
+
+    // ===== Quantile sketch: fixed buckets, so O(1) add and exact merge =====
+    //
+    // Linear buckets of `step` over [lo, hi), or buckets growing by a factor gamma from lo so any
+    // value in [lo, hi) comes back within `accuracy` relative error (the DDSketch mapping).
+    // Values outside the range land in the first / last bucket.
+
+    public static final class Sketch {
+        final boolean relative;
+        final double lo, hi, param;   // param: step, or relative accuracy
+        final double logGamma, rep;   // relative: ln(gamma), representative factor
+        final long[] counts;
+        long n;
+
+        private Sketch(boolean relative, double lo, double hi, double param) {
+            this.relative = relative;
+            this.lo = lo;
+            this.hi = hi;
+            this.param = param;
+            if (relative) {
+                double gamma = (1 + param) / (1 - param);
+                logGamma = Math.log(gamma);
+                rep = 2 * gamma / (gamma + 1);
+                counts = new long[2 + (int) Math.ceil(Math.log(hi / lo) / logGamma)];
+            } else {
+                logGamma = rep = 0;
+                counts = new long[2 + (int) Math.ceil((hi - lo) / param)];
+            }
+        }
+
+        public static Sketch linear(double lo, double hi, double step)         { return new Sketch(false, lo, hi, step); }
+        public static Sketch relative(double lo, double hi, double accuracy)  { return new Sketch(true, lo, hi, accuracy); }
+
+        public void add(double x) {
+            counts[index(x)]++;
+            n++;
+        }
+
+        private int index(double x) {
+            if (!(x >= lo)) return 0;   // also NaN
+            int i = relative ? 1 + (int) (Math.log(x / lo) / logGamma) : 1 + (int) ((x - lo) / param);
+            return Math.min(i, counts.length - 1);
+        }
+
+        // Middle of bucket i (relative: within the accuracy of everything in it)
+        private double value(int i) {
+            if (i == 0) return lo;
+            if (i == counts.length - 1) return hi;
+            return relative ? lo * Math.exp((i - 1) * logGamma) * rep : lo + (i - 0.5) * param;
+        }
+
+        // q in [0, 1]; NaN when empty
+        public double quantile(double q) {
+            if (n == 0) return Double.NaN;
+            long rank = (long) Math.floor(Math.max(0, Math.min(1, q)) * (n - 1));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) return value(i);
+            }
+            return value(counts.length - 1);
+        }
+
+        public void merge(Sketch o) {
+            if (!sameShape(o)) throw new IllegalArgumentException("Sketches with different buckets");
+            for (int i = 0; i < counts.length; i++) counts[i] += o.counts[i];
+            n += o.n;
+        }
+
+        boolean sameShape(Sketch o) {
+            return relative == o.relative && lo == o.lo && hi == o.hi && param == o.param && counts.length == o.counts.length;
+        }
+
+        public long count() { return n; }
+    }
+
+    // ===== State =====
+
+    private final Moments g = new Moments(), temp = new Moments(), speed = new Moments();
+    private final Sketch gSketch = Sketch.relative(0.01, 64, 0.01);   // ADXL345 range is ±16 g
+    private final Sketch tempSketch = Sketch.linear(-40, 125, 0.1);   // thermistor range, 0.1 °C
+    private final long[] gAboveMs = new long[G_THRESHOLDS.length];
+    private final long[] tempAboveMs = new long[TEMP_THRESHOLDS.length];
+    private long samples, durationMs, rides;
+    private double distanceKm;
+    private double drainedPct;
+    private long drainMs;
+
+    // Last sample, for the time-weighted parts
+    private long lastT = Long.MIN_VALUE;
+    private double lastG = Double.NaN, lastTemp = Double.NaN, lastSpeed = Double.NaN;
+    private int lastBat = -1, batRef = -1;
+
+    // ===== Recording (one thread) =====
+
+    // tMs: elapsedRealtime timeline (see DeviceClock)
+    public synchronized void add(long tMs, TelemetrySample s) {
+        if (samples == 0) rides = 1;
+        samples++;
+        if (lastT != Long.MIN_VALUE && tMs > lastT) {
+            long dt = Math.min(tMs - lastT, MAX_GAP_MS);
+            durationMs += dt;
+            for (int k = 0; k < G_THRESHOLDS.length; k++) if (lastG >= G_THRESHOLDS[k]) gAboveMs[k] += dt;
+            for (int k = 0; k < TEMP_THRESHOLDS.length; k++) if (lastTemp >= TEMP_THRESHOLDS[k]) tempAboveMs[k] += dt;
+            if (lastSpeed > 0) distanceKm += lastSpeed * dt / 3_600_000.0;
+            if (lastBat >= 0) drainMs += dt;
+        }
+        lastT = tMs;
+
+        if (s.has(TelemetrySample.GFORCE)) {
+            g.add(s.gforce);
+            gSketch.add(s.gforce);
+            lastG = s.gforce;
+        }
+        if (s.has(TelemetrySample.TEMP)) {
+            temp.add(s.temp);
+            tempSketch.add(s.temp);
+            lastTemp = s.temp;
+        }
+        if (s.has(TelemetrySample.SPEED)) {
+            speed.add(s.speed);
+            lastSpeed = s.speed;
+        }
+        if (s.has(TelemetrySample.BAT) && s.battery >= 0) {
+            // Whole percents jitter by one; only a drop below the reference counts, and a rise of
+            // more than two (charging) moves the reference up
+            int b = s.battery;
+            if (batRef < 0 || b > batRef + 2) batRef = b;
+            else if (b < batRef) { drainedPct += batRef - b; batRef = b; }
+            lastBat = b;
+        }
+    }
+
+    // ===== Rollups =====
+
+    public synchronized void merge(RideStats o) {
+        RideStats src = o.snapshot();   // never hold both locks
+        g.merge(src.g);
+        temp.merge(src.temp);
+        speed.merge(src.speed);
+        gSketch.merge(src.gSketch);
+        tempSketch.merge(src.tempSketch);
+        for (int k = 0; k < gAboveMs.length; k++) gAboveMs[k] += src.gAboveMs[k];
+        for (int k = 0; k < tempAboveMs.length; k++) tempAboveMs[k] += src.tempAboveMs[k];
+        samples += src.samples;
+        durationMs += src.durationMs;
+        rides += src.rides;
+        distanceKm += src.distanceKm;
+        drainedPct += src.drainedPct;
+        drainMs += src.drainMs;
+    }
+
+    // Consistent copy for reading from another thread (allocates; not for the sample path)
+    public synchronized RideStats snapshot() {
+        RideStats c = new RideStats();
+        c.g.set(g);
+        c.temp.set(temp);
+        c.speed.set(speed);
+        System.arraycopy(gSketch.counts, 0, c.gSketch.counts, 0, gSketch.counts.length);
+        c.gSketch.n = gSketch.n;
+        System.arraycopy(tempSketch.counts, 0, c.tempSketch.counts, 0, tempSketch.counts.length);
+        c.tempSketch.n = tempSketch.n;
+        System.arraycopy(gAboveMs, 0, c.gAboveMs, 0, gAboveMs.length);
+        System.arraycopy(tempAboveMs, 0, c.tempAboveMs, 0, tempAboveMs.length);
+        c.samples = samples;
+        c.durationMs = durationMs;
+        c.rides = rides;
+        c.distanceKm = distanceKm;
+        c.drainedPct = drainedPct;
+        c.drainMs = drainMs;
+        return c;
+    }
+
+    // Every ride in `dir` that started in [fromEpochMs, toEpochMs), e.g. a week or a month
+    public static RideStats rollup(File dir, long fromEpochMs, long toEpochMs) {
+        RideStats total = new RideStats();
+        File[] files = dir.listFiles((d, name) -> name.startsWith("ride-") && name.endsWith(RideLog.EXT));
+        if (files == null) return total;
+        for (File f : files) {
+            long start = startEpochMs(f);
+            if (start < fromEpochMs || start >= toEpochMs) continue;
+            try {
+                total.merge(forRide(f));
+            } catch (IOException ignored) {
+                // unreadable ride: left out of the rollup
+            }
+        }
+        return total;
+    }
+
+    // From RideLog's file name, ride-<startEpochMs>.nrl; -1 if it isn't one
+    static long startEpochMs(File rideLog) {
+        String name = rideLog.getName();
+        try {
+            return Long.parseLong(name.substring("ride-".length(), name.length() - RideLog.EXT.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    // ===== Queries (on a snapshot, or on the recording thread) =====
+
+    public Moments gforce()      { return g; }
+    public Moments temperature() { return temp; }
+    public Moments speed()       { return speed; }
+    public double gforceQuantile(double q)      { return clamp(gSketch.quantile(q), g); }
+    public double temperatureQuantile(double q) { return clamp(tempSketch.quantile(q), temp); }
+    public long gAboveMs(int k)      { return gAboveMs[k]; }
+    public long tempAboveMs(int k)   { return tempAboveMs[k]; }
+    public long samples()        { return samples; }
+    public long durationMs()     { return durationMs; }
+    public long rides()          { return rides; }
+    public double distanceKm()   { return distanceKm; }
+    public double drainedPct()   { return drainedPct; }
+    public double drainPerHour() { return drainMs > 0 ? drainedPct / (drainMs / 3_600_000.0) : Double.NaN; }
+
+    // The sketch reports bucket middles; the exact extremes are known
+    private static double clamp(double v, Moments m) {
+        return m.n == 0 ? Double.NaN : Math.max(m.min, Math.min(m.max, v));
+    }
+
+    public String summary() {
+        return String.format(Locale.US,
+                "%d ride(s), %.1f min, %.2f km | g mean %.2f sd %.2f max %.2f p50 %.2f p95 %.2f p99 %.2f, >=%.1fg %.1f s"
+                        + " | temp mean %.1f p50 %.1f p95 %.1f max %.1f | battery %.1f%%/h",
+                rides, durationMs / 60_000.0, distanceKm, g.mean(), g.stddev(), g.max(),
+                gforceQuantile(0.5), gforceQuantile(0.95), gforceQuantile(0.99), G_THRESHOLDS[1], gAboveMs[1] / 1000.0,
+                temp.mean(), temperatureQuantile(0.5), temperatureQuantile(0.95), temp.max(), drainPerHour());
+    }
+
+    // ===== Persistence: a sidecar next to the ride log, like RideIndex =====
+
+    public static File sidecar(File rideLog) {
+        String name = rideLog.getName();
+        if (name.endsWith(RideLog.EXT)) name = name.substring(0, name.length() - RideLog.EXT.length());
+        return new File(rideLog.getParentFile(), name + EXT);
+    }
+
+    public synchronized void save(File f) throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(samples);
+            out.writeLong(durationMs);
+            out.writeLong(rides);
+            out.writeDouble(distanceKm);
+            out.writeDouble(drainedPct);
+            out.writeLong(drainMs);
+            for (Moments m : new Moments[]{g, temp, speed}) {
+                out.writeLong(m.n);
+                out.writeDouble(m.mean);
+                out.writeDouble(m.m2);
+                out.writeDouble(m.min);
+                out.writeDouble(m.max);
+            }
+            writeCounts(out, gAboveMs);
+            writeCounts(out, tempAboveMs);
+            for (Sketch k : new Sketch[]{gSketch, tempSketch}) {
+                out.writeInt(k.counts.length);
+                int nonZero = 0;
+                for (long c : k.counts) if (c != 0) nonZero++;
+                out.writeInt(nonZero);   // sparse: most buckets of a ride are empty
+                for (int i = 0; i < k.counts.length; i++) {
+                    if (k.counts[i] == 0) continue;
+                    out.writeInt(i);
+                    out.writeLong(k.counts[i]);
+                }
+            }
+        }
+        if (!tmp.renameTo(f)) throw new IOException("Cannot write " + f);
+    }
+
+    public static RideStats load(File f) throws IOException {
+        RideStats st = new RideStats();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) throw new IOException("Bad stats: " + f);
+            st.samples = in.readLong();
+            st.durationMs = in.readLong();
+            st.rides = in.readLong();
+            st.distanceKm = in.readDouble();
+            st.drainedPct = in.readDouble();
+            st.drainMs = in.readLong();
+            for (Moments m : new Moments[]{st.g, st.temp, st.speed}) {
+                m.n = in.readLong();
+                m.mean = in.readDouble();
+                m.m2 = in.readDouble();
+                m.min = in.readDouble();
+                m.max = in.readDouble();
+            }
+            readCounts(in, st.gAboveMs, f);
+            readCounts(in, st.tempAboveMs, f);
+            for (Sketch k : new Sketch[]{st.gSketch, st.tempSketch}) {
+                if (in.readInt() != k.counts.length) throw new IOException("Bad stats: " + f);
+                int nonZero = in.readInt();
+                for (int j = 0; j < nonZero; j++) {
+                    int i = in.readInt();
+                    if (i < 0 || i >= k.counts.length) throw new IOException("Bad stats: " + f);
+                    k.counts[i] = in.readLong();
+                    k.n += k.counts[i];
+                }
+            }
+        }
+        return st;
+    }
+
+    // Stats for a stored ride: the sidecar if present and current, otherwise rebuilt from the log and saved.
+    public static RideStats forRide(File rideLog) throws IOException {
+        File side = sidecar(rideLog);
+        if (side.isFile() && side.lastModified() >= rideLog.lastModified()) {
+            try { return load(side); } catch (IOException ignored) {}
+        }
+        RideStats st = new RideStats();
+        RideLogReader.read(rideLog, s -> st.add(s.deviceTimeMs, s));
+        try { st.save(side); } catch (IOException ignored) {}
+        return st;
+    }
+
+    private static void writeCounts(DataOutputStream out, long[] a) throws IOException {
+        out.writeInt(a.length);
+        for (long v : a) out.writeLong(v);
+    }
+
+    private static void readCounts(DataInputStream in, long[] a, File f) throws IOException {
+        if (in.readInt() != a.length) throw new IOException("Bad stats: " + f);
+        for (int i = 0; i < a.length; i++) a[i] = in.readLong();
+    }
+}
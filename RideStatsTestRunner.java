@@ -0,0 +1,64 @@
+package com.example.neuroridev2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+// Feeds RideStats a synthetic 200 Hz ride, checks the sketch quantiles against exact ones, that the
+// merge of two halves equals the whole and survives save / load, and times add().
+//
+//   java com.example.neuroridev2.RideStatsTestRunner
+public final class RideStatsTestRunner {
+
+    public static void main(String[] args) throws IOException {
+        final int n = 200 * 60 * 30;   // 30 min at 200 Hz
+        Random rnd = new Random(3);
+        double[] gs = new double[n];
+        RideStats whole = new RideStats(), first = new RideStats(), second = new RideStats();
+        TelemetrySample s = new TelemetrySample();
+        for (int i = 0; i < n; i++) {
+            s.clear();
+            s.mask = TelemetrySample.GFORCE | TelemetrySample.TEMP | TelemetrySample.SPEED | TelemetrySample.BAT;
+            s.gforce = gs[i] = Math.abs(1.0 + rnd.nextGaussian() * 0.3 + (rnd.nextInt(500) == 0 ? 3 : 0));
+            s.temp = 30 + 10 * Math.sin(i / 50_000.0) + rnd.nextGaussian() * 0.2;
+            s.speed = 25;
+            s.battery = 90 - i / 40_000 + (rnd.nextInt(50) == 0 ? 1 : 0);   // 9 %, with jitter
+            long t = i * 5L;
+            whole.add(t, s);
+            (i < n / 2 ? first : second).add(t, s);
+        }
+        Arrays.sort(gs);
+        for (double q : new double[]{0.5, 0.95, 0.99}) {
+            double exact = gs[(int) Math.floor(q * (n - 1))], est = whole.gforceQuantile(q);
+            double err = Math.abs(est - exact) / exact;
+            System.out.println(String.format(Locale.US, "g p%.0f  exact %.4f  sketch %.4f  error %.2f%%", q * 100, exact, est, err * 100));
+            Checks.check(String.format(Locale.US, "g p%.0f within 1.1%%", q * 100), err <= 0.011);
+        }
+
+        first.merge(second);
+        File tmp = File.createTempFile("ridestats", RideStats.EXT);
+        tmp.deleteOnExit();
+        first.save(tmp);
+        RideStats loaded = RideStats.load(tmp);
+        System.out.println("whole   " + whole.summary());
+        System.out.println("merged  " + loaded.summary());
+        Checks.check("merged samples", loaded.samples() == whole.samples());
+        Checks.check("merged p99", loaded.gforceQuantile(0.99) == whole.gforceQuantile(0.99));
+        Checks.check("merged mean", Math.abs(loaded.gforce().mean() - whole.gforce().mean()) < 1e-9);
+        Checks.check("merged variance", Math.abs(loaded.gforce().variance() - whole.gforce().variance()) < 1e-9);
+        // the one gap between the halves is the only difference
+        Checks.check("merged duration", Math.abs(loaded.durationMs() - whole.durationMs()) <= 5);
+        Checks.check("battery drained 9 %", Math.abs(whole.drainedPct() - 9) <= 1);
+
+        RideStats bench = new RideStats();
+        long t0 = System.nanoTime();
+        for (int rep = 0; rep < 5; rep++) for (int i = 0; i < n; i++) { s.gforce = gs[i]; bench.add(i * 5L, s); }
+        double nsPerSample = (System.nanoTime() - t0) / (5.0 * n);
+        System.out.println(String.format(Locale.US, "add(): %.0f ns/sample", nsPerSample));
+        Checks.exit();
+    }
+
+    private RideStatsTestRunner() {}
+}
@@ -0,0 +1,67 @@
+package com.example.neuroridev2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+// Maps the hardware code's names through TelemetrySchema, decodes its frames and some malformed
+// ones, counts the keys a schema doesn't list, checks the numbers against Double.parseDouble and
+// times decodeJson.
+//
+//   java com.example.neuroridev2.SchemaTestRunner
+public final class SchemaTestRunner {
+
+    public static void main(String[] args) {
+        byte[] adv = "1;accel,gforce,temp,volt,batpct,rssi".getBytes(StandardCharsets.US_ASCII);
+        TelemetrySchema s = TelemetrySchema.parse(adv, adv.length);
+        System.out.println(s + " | renamed " + s.renamed() + ", unmapped " + s.unmapped() + ", missing 0x" + Integer.toHexString(s.missing()));
+        Checks.check("advertised: batpct renamed, rssi unmapped, speed missing",
+                s.renamed() == 1 && s.unmapped() == 1 && s.missing() == TelemetrySample.SPEED);
+        Checks.check("not a schema", TelemetrySchema.parse("x;gforce".getBytes(StandardCharsets.US_ASCII), 8) == null);
+
+        TelemetrySample out = new TelemetrySample();
+        Checks.check("hardware frame", decode(s, "{\"gforce\":1.25,\"temp\":31.5,\"volt\":3.91,\"batpct\":87,\"rssi\":-61}", out)
+                && out.mask == (TelemetrySample.GFORCE | TelemetrySample.TEMP | TelemetrySample.VOLT | TelemetrySample.BAT)
+                && out.gforce == 1.25 && out.temp == 31.5 && out.volt == 3.91 && out.battery == 87);
+        Checks.check("hardware frame: rssi is listed, so not unknown", out.unknownKeys == 0);
+        Checks.check("reordered, spaced, unlisted keys", decode(s, " { \"batpct\" : 12 , \"gforce\":-0.5e1, \"note\":\"a,}\", \"ok\":true }", out)
+                && out.battery == 12 && out.gforce == -5 && out.mask == (TelemetrySample.BAT | TelemetrySample.GFORCE));
+        Checks.check("reordered: note and ok counted", out.unknownKeys == 2);
+        Checks.check("default schema", decode(TelemetrySchema.DEFAULT, "{\"temp\":30.00,\"speed\":25.00,\"gforce\":1.000,\"bat\":90}", out)
+                && out.battery == 90 && out.speed == 25 && out.unknownKeys == 0);
+        Checks.check("default schema: old firmware, new name", decode(TelemetrySchema.DEFAULT, "{\"batpct\":55}", out) && out.battery == 55);
+        Checks.check("default schema: rssi counted", decode(TelemetrySchema.DEFAULT, "{\"rssi\":1}", out)
+                && out.mask == 0 && out.unknownKeys == 1);
+        for (String bad : new String[]{"", "{", "{\"gforce\":}", "{\"gforce\":1.2", "{\"g\":{\"x\":1}}", "[1]", "{\"gforce\":1..2}",
+                "{\"rssi\":--}", "{\"x\":truex}", "{\"x\":nul}", "{\"x\":1e}", "{\"gforce\":1,\"x\":fals}"}) {
+            Checks.check("rejects " + bad, !decode(s, bad, out) && out.mask == 0 && out.unknownKeys == 0);
+        }
+
+        Random rnd = new Random(5);
+        int wrong = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String num = String.format(Locale.US, "%." + rnd.nextInt(6) + "f", (rnd.nextDouble() - 0.5) * Math.pow(10, rnd.nextInt(7)));
+            byte[] b = num.getBytes(StandardCharsets.US_ASCII);
+            double want = Double.parseDouble(num), got = TelemetrySchema.parseNumber(b, 0, b.length);
+            if (Math.abs(got - want) > Math.abs(want) * 1e-15) { wrong++; System.out.println("parse " + num + " -> " + got); }
+        }
+        Checks.check("numbers match Double.parseDouble", wrong == 0);
+
+        byte[] frame = "{\"gforce\":1.234,\"temp\":31.52,\"volt\":3.912,\"batpct\":87}".getBytes(StandardCharsets.US_ASCII);
+        int n = 2_000_000;
+        for (int rep = 0; rep < 2; rep++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) s.decodeJson(frame, frame.length, out);
+            if (rep == 1) System.out.println(String.format(Locale.US, "decodeJson: %.0f ns/frame", (System.nanoTime() - t0) / (double) n));
+        }
+        Checks.exit();
+    }
+
+    private static boolean decode(TelemetrySchema s, String json, TelemetrySample out) {
+        out.clear();
+        byte[] b = json.getBytes(StandardCharsets.UTF_8);
+        return s.decodeJson(b, b.length, out);
+    }
+
+    private SchemaTestRunner() {}
+}
@@ -0,0 +1,55 @@
+package com.example.neuroridev2;
+
+// Gap / duplicate accounting over the running sample index carried by batch frames.
+// Single-threaded: call from the thread that decodes notifications.
+public final class SequenceTracker {
+
+    // A seq this far behind what we expect is a firmware restart, not a duplicate.
+    private static final long RESET_WINDOW = 4096;
+
+    private long expected = -1;
+    private long received, lost, duplicates, resets;
+
+    // Returns false if the sample is a duplicate and should be dropped.
+    public boolean accept(long seq) {
+        if (seq < 0) { received++; return true; }   // legacy frames carry no seq
+        if (expected < 0 || seq == expected) {
+            expected = seq + 1;
+            received++;
+            return true;
+        }
+        if (seq > expected) {
+            lost += seq - expected;
+            expected = seq + 1;
+            received++;
+            return true;
+        }
+        if (expected - seq > RESET_WINDOW) {
+            resets++;
+            expected = seq + 1;
+            received++;
+            return true;
+        }
+        duplicates++;
+        return false;
+    }
+
+    // Forget the expected position (e.g. after a reconnect) but keep the totals.
+    public void rearm() { expected = -1; }
+
+    public void reset() {
+        expected = -1;
+        received = lost = duplicates = resets = 0;
+    }
+
+    public long received()   { return received; }
+    public long lost()       { return lost; }
+    public long duplicates() { return duplicates; }
+    public long resets()     { return resets; }
+
+    // Fraction of samples lost, 0..1.
+    public double lossRatio() {
+        long total = received + lost;
+        return total == 0 ? 0 : (double) lost / total;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.neuroridev2;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Merges the per-device streams of a group ride into one stream ordered by phone-clock time.
+//
+// Each source is an IngestRing filled by that device's own BLE thread (so producers never
+// share a ring). Every tick the merge thread drains all rings into per-source staging queues and
+// emits, oldest first, everything at or before the watermark:
+//
+//   watermark = max(min over active sources of their newest sample time, now - maxDelayMs)
+//
+// A source is active while it delivered something in the last idleMs, so a device that stalls
+// or drops out stops holding the others back after idleMs, and a device that is merely slow
+// (big batches) holds them back by at most maxDelayMs. Samples older than what was already
+// emitted still go out, but are counted as late. Plain Java, no Android classes.
+public final class SessionMerger {
+
+    public interface Sink {
+        // Merge thread; `s` is scratch and tMs is also in s.deviceTimeMs.
+        void onSample(int source, long tMs, TelemetrySample s);
+    }
+
+    public interface Clock {
+        long nowMs();   // same timeline as the sample times
+    }
+
+    public static final class Config {
+        public long tickMs = 10;
+        public long idleMs = 1000;
+        public long maxDelayMs = 500;
+        public int stagingCapacity = 2048;   // per source, power of two
+    }
+
+    private final Config cfg;
+    private final Clock clock;
+    private final Sink sink;
+    private volatile Source[] sources = new Source[0];
+    private volatile boolean running;
+    private Thread thread;
+
+    private final TelemetrySample scratch = new TelemetrySample();
+    private long lastEmittedMs = Long.MIN_VALUE;
+    private volatile long emitted, late;
+    private volatile long tickMs;
+
+    public SessionMerger(Config cfg, Clock clock, Sink sink) {
+        if (Integer.bitCount(cfg.stagingCapacity) != 1) {
+            throw new IllegalArgumentException("stagingCapacity must be a power of two: " + cfg.stagingCapacity);
+        }
+        this.cfg = cfg;
+        this.clock = clock;
+        this.sink = sink;
+        this.tickMs = cfg.tickMs;
+    }
+
+    // ===== Sources =====
+
+    // Staging FIFO of drained but not yet emitted samples, column-wise like IngestRing
+    private static final class Source {
+        final int id;
+        final IngestRing ring;
+        final int mask;
+        final long[] time, seq;
+        final int[] fields, battery;
+        final float[] gforce, temp, speed, volt, tilt, lean, jerk, smoothG, dynamicG;
+        int head, size;
+        long newestMs = Long.MIN_VALUE;
+        long lastArrivalMs = Long.MIN_VALUE;
+        volatile boolean removed;
+
+        Source(int id, IngestRing ring, int capacity) {
+            this.id = id;
+            this.ring = ring;
+            mask = capacity - 1;
+            time = new long[capacity];
+            seq = new long[capacity];
+            fields = new int[capacity];
+            battery = new int[capacity];
+            gforce = new float[capacity];
+            temp = new float[capacity];
+            speed = new float[capacity];
+            volt = new float[capacity];
+            tilt = new float[capacity];
+            lean = new float[capacity];
+            jerk = new float[capacity];
+            smoothG = new float[capacity];
+            dynamicG = new float[capacity];
+        }
+
+        long headTime() { return time[head]; }
+    }
+
+    private Source filling;
+    private final TelemetryCodec.SampleSink stage = s -> {
+        Source src = filling;
+        int i = (src.head + src.size) & src.mask;
+        src.time[i] = s.deviceTimeMs;
+        src.seq[i] = s.seq;
+        src.fields[i] = s.mask;
+        src.battery[i] = s.battery;
+        src.gforce[i] = (float) s.gforce;
+        src.temp[i] = (float) s.temp;
+        src.speed[i] = (float) s.speed;
+        src.volt[i] = (float) s.volt;
+        src.tilt[i] = (float) s.tilt;
+        src.lean[i] = (float) s.lean;
+        src.jerk[i] = (float) s.jerk;
+        src.smoothG[i] = (float) s.smoothG;
+        src.dynamicG[i] = (float) s.dynamicG;
+        src.size++;
+        if (s.deviceTimeMs > src.newestMs) src.newestMs = s.deviceTimeMs;
+    };
+
+    // `ring` must be filled with IngestRing.offer(sample, phoneTimeMs); `id` comes back in Sink.onSample.
+    public synchronized void addSource(int id, IngestRing ring) {
+        Source[] next = Arrays.copyOf(sources, sources.length + 1);
+        next[next.length - 1] = new Source(id, ring, cfg.stagingCapacity);
+        sources = next;
+    }
+
+    // What was already staged for the source still goes out on the next ticks.
+    public synchronized void removeSource(int id) {
+        for (Source s : sources) if (s.id == id) s.removed = true;
+    }
+
+    // ===== Merge thread =====
+
+    // Longer ticks mean fewer wakeups and bigger batches per pass, at the cost of latency; e.g.
+    // while nothing is on screen. Takes effect after the current tick.
+    public void setTickMs(long ms) { tickMs = Math.max(1, ms); }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::loop, "telemetry-merge");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t == null) return;
+        LockSupport.unpark(t);
+        try { t.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+    private void loop() {
+        while (running) {
+            tick(false);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(tickMs));
+        }
+        tick(true);   // flush what's left
+    }
+
+    // One merge pass; public so tests and replays can drive it without the thread.
+    public void tick(boolean flush) {
+        long now = clock.nowMs();
+        Source[] srcs = sources;
+        boolean anyRemoved = false;
+        for (Source s : srcs) {
+            filling = s;
+            int free = s.mask + 1 - s.size;
+            if (free > 0 && s.ring.drain(scratch, stage, free) > 0) s.lastArrivalMs = now;
+            anyRemoved |= s.removed;
+        }
+        filling = null;
+
+        long watermark = Long.MAX_VALUE;
+        if (!flush) {
+            for (Source s : srcs) {
+                boolean active = !s.removed && s.newestMs != Long.MIN_VALUE && now - s.lastArrivalMs <= cfg.idleMs;
+                if (active) watermark = Math.min(watermark, s.newestMs);
+            }
+            if (watermark != Long.MAX_VALUE) watermark = Math.max(watermark, now - cfg.maxDelayMs);
+        }
+
+        while (true) {
+            Source min = null;
+            for (Source s : srcs) {
+                if (s.size > 0 && (min == null || s.headTime() < min.headTime())) min = s;
+            }
+            if (min == null || min.headTime() > watermark) break;
+            emit(min);
+        }
+
+        if (anyRemoved) dropDrained();
+    }
+
+    private void emit(Source s) {
+        int i = s.head;
+        long t = s.time[i];
+        scratch.deviceTimeMs = t;
+        scratch.seq = s.seq[i];
+        scratch.mask = s.fields[i];
+        scratch.battery = s.battery[i];
+        scratch.gforce = s.gforce[i];
+        scratch.temp = s.temp[i];
+        scratch.speed = s.speed[i];
+        scratch.volt = s.volt[i];
+        scratch.tilt = s.tilt[i];
+        scratch.lean = s.lean[i];
+        scratch.jerk = s.jerk[i];
+        scratch.smoothG = s.smoothG[i];
+        scratch.dynamicG = s.dynamicG[i];
+        s.head = (s.head + 1) & s.mask;
+        s.size--;
+        if (t < lastEmittedMs) late = late + 1;
+        else lastEmittedMs = t;
+        emitted = emitted + 1;
+        sink.onSample(s.id, t, scratch);
+    }
+
+    private synchronized void dropDrained() {
+        Source[] cur = sources;
+        Source[] next = new Source[cur.length];
+        int n = 0;
+        for (Source s : cur) if (!s.removed || s.size > 0 || s.ring.size() > 0) next[n++] = s;
+        if (n < cur.length) sources = Arrays.copyOf(next, n);
+    }
+
+    public long emitted() { return emitted; }
+    public long late()    { return late; }
+}
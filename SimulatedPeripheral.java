@@ -0,0 +1,431 @@
+package com.example.neuroridev2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Stand-in for the ESP32: emits the firmware's payloads from a thread of its own, the way GATT
+// notifications arrive on the BLE thread. Batching mirrors esp32code2 (flush when the batch
+// fills the MTU or its oldest sample is maxBatchLatencyMs old); rate, jitter, loss and disconnects
+// are configurable. As a LinkControl it takes the firmware's control writes (sample rate) and models
+// a link of linkBytesPerSec that 2M PHY and connection priority widen or narrow; frames beyond it
+// are lost. Plain Java, no Android classes.
+public final class SimulatedPeripheral implements TelemetryTransport, TelemetryTransport.LinkControl {
+
+    public enum Format { BATCH, SAMPLE, JSON, ACCEL }
+
+    public static final class Config {
+        public int sampleHz = 50;                // 1 .. 1000
+        public Format format = Format.BATCH;
+        public int mtu = 247;
+        public long maxBatchLatencyMs = 300;
+        public int fields = TelemetrySample.GFORCE | TelemetrySample.TEMP | TelemetrySample.SPEED
+                | TelemetrySample.BAT | TelemetrySample.VOLT;
+        public long jitterMs = 0;                // extra random delay before each notification
+        public double lossRate = 0;              // fraction of notifications that never arrive
+        public long disconnectEveryMs = 0;       // 0 = never drop the link
+        public long disconnectForMs = 2000;
+        public long durationMs = 0;              // 0 = until stop()
+        public long seed = 1;
+        public double linkBytesPerSec = 0;       // 1M PHY, balanced; 0 = unlimited
+        public boolean controlCharacteristic = true;   // false: firmware without rate control
+        public double vibrationG = 0.25;         // riding buzz, sd of |g|; ~0 when parked
+        public int batteryPct = -1;              // fixed battery level; -1 = drains over the run
+        public String schema;                    // advertised TelemetrySchema, JSON keys in its order; null = none
+        public boolean rebootOnReconnect;        // the board restarts while the link is down: seq and millis() from 0
+
+        @Override public String toString() {
+            return String.format(Locale.US, "%s %dHz mtu=%d jitter=%dms loss=%.1f%% drop=%s%s",
+                    format, sampleHz, mtu, jitterMs, lossRate * 100,
+                    disconnectEveryMs > 0 ? disconnectForMs + "ms/" + disconnectEveryMs + "ms" : "never",
+                    rebootOnReconnect ? " reboot" : "");
+        }
+    }
+
+    private static final int STAMP_CAPACITY = 1 << 16;   // power of two
+    private static final int STATUS_TIMEOUT = 8;
+
+    private final Config cfg;
+    private final Random rnd;
+    private final byte[] buf = new byte[512];
+    private final long[] sampledAt = new long[STAMP_CAPACITY];   // nanoTime per seq, for latency
+
+    private volatile Listener listener;
+    private volatile boolean running;
+    private volatile boolean connected;
+    private Thread thread;
+
+    // ===== Link, set from any thread =====
+    private volatile int sampleHz;
+    private volatile int priority = PRIORITY_BALANCED;
+    private volatile boolean phy2M;
+    private volatile double vibrationG;
+    private volatile int batteryPct;
+    private double tokens;
+    private long tokensAtNanos;
+
+    // ===== Firmware state =====
+    private long startNanos;
+    private long nextSeq;
+    private int batchCount;
+    private long batchBase;
+    private int batchFields;
+    private double speedKmh = 25;
+    private double leanRad;
+    private double batchTemp;
+    private int hz;   // rate the loop runs at; follows sampleHz between frames
+    private final byte[][] jsonKeys;   // cfg.schema's keys in order, or the old firmware's
+    private final int[] jsonFields;
+
+    // Written by the peripheral thread only
+    private volatile long samplesSent, framesSent, framesLost, disconnects;
+
+    public SimulatedPeripheral(Config cfg) {
+        if (cfg.sampleHz < 1 || cfg.sampleHz > 1000) throw new IllegalArgumentException("sampleHz: " + cfg.sampleHz);
+        if (cfg.format == Format.ACCEL && cfg.sampleHz < TelemetryCodec.MIN_RATE_HZ) {
+            throw new IllegalArgumentException("ACCEL below " + TelemetryCodec.MIN_RATE_HZ + " Hz: " + cfg.sampleHz);
+        }
+        this.cfg = cfg;
+        this.rnd = new Random(cfg.seed);
+        this.sampleHz = cfg.sampleHz;
+        this.vibrationG = cfg.vibrationG;
+        this.batteryPct = cfg.batteryPct;
+        String[] names = cfg.schema != null
+                ? cfg.schema.substring(cfg.schema.indexOf(';') + 1).split(",")
+                : new String[]{"temp", "speed", "gforce", "bat"};
+        jsonKeys = new byte[names.length][];
+        jsonFields = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            jsonKeys[i] = names[i].trim().getBytes(StandardCharsets.US_ASCII);
+            jsonFields[i] = TelemetrySchema.fieldFor(names[i].trim());
+        }
+    }
+
+    // ===== TelemetryTransport =====
+
+    @Override public synchronized void start(Listener l) {
+        if (running) return;
+        listener = l;
+        running = true;
+        thread = new Thread(this::run, "sim-peripheral");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override public void stop() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t == null || t == Thread.currentThread()) return;
+        LockSupport.unpark(t);
+        try { t.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+    @Override public boolean isConnected() { return connected; }
+
+    // ===== LinkControl =====
+
+    @Override public void setConnectionPriority(int p) { priority = p; }
+    @Override public void setPhy2M(boolean prefer2M)   { phy2M = prefer2M; }
+
+    @Override public boolean requestSampleRate(int hz) {
+        if (!cfg.controlCharacteristic) return false;
+        onControlWrite(TelemetryCodec.encodeSetRate(hz));
+        return true;
+    }
+
+    // As the firmware's control characteristic parses it
+    private void onControlWrite(byte[] d) {
+        if (d.length < TelemetryCodec.CONTROL_LEN || d[0] != TelemetryCodec.MAGIC
+                || d[2] != TelemetryCodec.TYPE_SET_RATE) return;
+        int hz = (d[4] & 0xFF) | (d[5] & 0xFF) << 8;
+        sampleHz = Math.max(TelemetryCodec.MIN_RATE_HZ, Math.min(1000, hz));
+        Thread t = thread;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    public int sampleHz()    { return sampleHz; }
+    public int priority()    { return priority; }
+    public boolean phy2M()   { return phy2M; }
+    public void setVibration(double g)  { vibrationG = g; }
+    public void setBattery(int pct)     { batteryPct = pct; }
+
+    // When sample `seq` was taken (System.nanoTime); valid for the last STAMP_CAPACITY samples.
+    public long sampledAtNanos(long seq) { return sampledAt[(int) seq & (STAMP_CAPACITY - 1)]; }
+
+    public long samplesSent() { return samplesSent; }
+    public long framesSent()  { return framesSent; }
+    public long framesLost()  { return framesLost; }
+    public long disconnects() { return disconnects; }
+
+    // Blocks until a finite run (durationMs > 0) is over.
+    public void await() throws InterruptedException {
+        Thread t = thread;
+        if (t != null) t.join();
+    }
+
+    // ===== Peripheral loop =====
+
+    private void run() {
+        hz = sampleHz;
+        long period = TimeUnit.SECONDS.toNanos(1) / hz;
+        long latency = TimeUnit.MILLISECONDS.toNanos(cfg.maxBatchLatencyMs);
+        startNanos = System.nanoTime();
+        long end = cfg.durationMs > 0 ? startNanos + TimeUnit.MILLISECONDS.toNanos(cfg.durationMs) : Long.MAX_VALUE;
+        long nextSample = startNanos;
+        long nextDrop = cfg.disconnectEveryMs > 0
+                ? startNanos + TimeUnit.MILLISECONDS.toNanos(cfg.disconnectEveryMs) : Long.MAX_VALUE;
+        long batchStartNanos = 0;
+
+        connect();
+        while (running) {
+            long now = System.nanoTime();
+            if (now >= end) break;
+            if (hz != sampleHz) {
+                flushBatch();   // a frame carries one period
+                hz = sampleHz;
+                period = TimeUnit.SECONDS.toNanos(1) / hz;
+                nextSample = now;
+            }
+            if (now >= nextDrop) {
+                dropLink();
+                park(TimeUnit.MILLISECONDS.toNanos(cfg.disconnectForMs));
+                if (!running) break;
+                if (cfg.rebootOnReconnect) {
+                    nextSeq = 0;
+                    startNanos = System.nanoTime();
+                }
+                connect();
+                nextSample = System.nanoTime();
+                nextDrop = nextSample + TimeUnit.MILLISECONDS.toNanos(cfg.disconnectEveryMs);
+                continue;
+            }
+            if (now >= nextSample) {
+                if (batched() && batchCount == 0) batchStartNanos = now;
+                sample(now);
+                nextSample += period;
+                if (now - nextSample > TimeUnit.SECONDS.toNanos(1)) nextSample = now;   // fell behind, don't burst
+            }
+            if (batchCount > 0 && (batchCount >= batchCapacity() || now - batchStartNanos >= latency)) {
+                flushBatch();
+            }
+            long wake = Math.min(nextSample, nextDrop);
+            if (batchCount > 0) wake = Math.min(wake, batchStartNanos + latency);
+            long wait = Math.min(wake, end) - System.nanoTime();
+            if (wait > 0) park(wait);
+        }
+        flushBatch();
+        if (connected) dropLink();
+        running = false;
+    }
+
+    private void connect() {
+        connected = true;
+        tokensAtNanos = System.nanoTime();
+        tokens = 2.0 * cfg.mtu;
+        if (cfg.schema != null) {
+            byte[] schema = cfg.schema.getBytes(StandardCharsets.US_ASCII);
+            listener.onSchema(schema, schema.length);
+        }
+        listener.onConnected(cfg.mtu);
+    }
+
+    private void dropLink() {
+        batchCount = 0;   // firmware drops the partial batch on disconnect
+        connected = false;
+        disconnects = disconnects + 1;
+        listener.onDisconnected(STATUS_TIMEOUT);
+    }
+
+    // Sleeps, but returns early once stop() is called
+    private void park(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        for (long left = nanos; left > 0 && running; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+        }
+    }
+
+    // ===== Signal: riding vibration, potholes, slowly drifting temperature and speed =====
+
+    private void sample(long nowNanos) {
+        long deviceMs = TimeUnit.NANOSECONDS.toMillis(nowNanos - startNanos);
+        double vib = vibrationG;
+        double g = Math.max(0, 1.0 + rnd.nextGaussian() * vib + (vib > 0.05 && rnd.nextInt(hz * 20) == 0 ? 1.5 : 0));
+        double temp = 31.0 + 2.0 * Math.sin(deviceMs / 600_000.0);
+        speedKmh = Math.max(0, Math.min(60, speedKmh + rnd.nextGaussian() * 0.05));
+        int bat = batteryPct >= 0 ? batteryPct : (int) Math.max(0, 100 - deviceMs / 120_000);
+        double volt = 3.3 + bat * 0.009;
+
+        long seq = batched() ? nextSeq + batchCount : nextSeq;
+        sampledAt[(int) seq & (STAMP_CAPACITY - 1)] = nowNanos;
+        samplesSent = samplesSent + 1;
+        switch (cfg.format) {
+            case BATCH:  addSample(deviceMs, g, temp, bat, volt); break;
+            case SAMPLE: sendSample(deviceMs, g, temp, bat, volt); nextSeq++; break;
+            case JSON:   sendJson(g, temp, bat, volt); nextSeq++; break;
+            case ACCEL:  addAccel(deviceMs, g, temp, bat, volt); break;
+        }
+    }
+
+    private boolean batched() { return cfg.format == Format.BATCH || cfg.format == Format.ACCEL; }
+
+    // ===== Frame encoding, as in the firmware (see TelemetryCodec for the layout) =====
+
+    private int batchCapacity() {
+        if (cfg.format == Format.ACCEL) {
+            int cap = TelemetryCodec.accelCapacity(cfg.mtu);
+            return Math.max(1, Math.min(cap, (buf.length - TelemetryCodec.ACCEL_HEADER_LEN) / TelemetryCodec.ACCEL_SAMPLE_LEN));
+        }
+        int cap = TelemetryCodec.batchCapacity(cfg.mtu);
+        return Math.max(1, Math.min(cap, (buf.length - TelemetryCodec.BATCH_HEADER_LEN) / TelemetryCodec.BATCH_SAMPLE_LEN));
+    }
+
+    // Raw axes: gravity tilted by a slowly wandering lean, with the vibration of `g` along z
+    private void addAccel(long t, double g, double temp, int bat, double volt) {
+        if (batchCount == 0) {
+            batchBase = t;
+            batchFields = (cfg.fields & (TelemetrySample.TEMP | TelemetrySample.BAT | TelemetrySample.VOLT)) | TelemetrySample.ACCEL;
+            batchTemp = temp;
+            buf[13] = (byte) bat;
+            putU16(buf, 14, (int) Math.round(volt * 1000));
+        }
+        leanRad = Math.max(-0.6, Math.min(0.6, leanRad * 0.999 + rnd.nextGaussian() * 0.004));
+        double x = rnd.nextGaussian() * 0.05;
+        double y = Math.sin(leanRad);
+        double z = Math.cos(leanRad) + (g - 1.0);
+        int o = TelemetryCodec.ACCEL_HEADER_LEN + batchCount * TelemetryCodec.ACCEL_SAMPLE_LEN;
+        putU16(buf, o, (int) Math.round(x * 1000));
+        putU16(buf, o + 2, (int) Math.round(y * 1000));
+        putU16(buf, o + 4, (int) Math.round(z * 1000));
+        batchCount++;
+    }
+
+    private void addSample(long t, double g, double temp, int bat, double volt) {
+        if (batchCount == 0) {
+            batchBase = t;
+            batchFields = cfg.fields;
+            buf[13] = (byte) bat;
+            putU16(buf, 14, (int) Math.round(volt * 1000));
+        }
+        int o = TelemetryCodec.BATCH_HEADER_LEN + batchCount * TelemetryCodec.BATCH_SAMPLE_LEN;
+        putU16(buf, o, (int) (t - batchBase));
+        putU16(buf, o + 2, (int) Math.round(g * 1000));
+        putU16(buf, o + 4, (int) Math.round(temp * 100));
+        putU16(buf, o + 6, (int) Math.round(speedKmh * 100));
+        batchCount++;
+    }
+
+    private void flushBatch() {
+        if (batchCount == 0) return;
+        boolean accel = cfg.format == Format.ACCEL;
+        buf[0] = TelemetryCodec.MAGIC;
+        buf[1] = TelemetryCodec.VERSION;
+        buf[2] = (byte) (accel ? TelemetryCodec.TYPE_ACCEL : TelemetryCodec.TYPE_BATCH);
+        buf[3] = (byte) batchFields;
+        putU32(buf, 4, nextSeq);
+        putU32(buf, 8, batchBase);
+        buf[12] = (byte) batchCount;
+        int len;
+        if (accel) {
+            putU16(buf, 16, 1_000_000 / hz);
+            putU16(buf, 18, (int) Math.round(batchTemp * 100));
+            len = TelemetryCodec.ACCEL_HEADER_LEN + batchCount * TelemetryCodec.ACCEL_SAMPLE_LEN;
+        } else {
+            len = TelemetryCodec.BATCH_HEADER_LEN + batchCount * TelemetryCodec.BATCH_SAMPLE_LEN;
+        }
+        nextSeq += batchCount;
+        batchCount = 0;
+        deliver(len);
+    }
+
+    private void sendSample(long t, double g, double temp, int bat, double volt) {
+        buf[0] = TelemetryCodec.MAGIC;
+        buf[1] = TelemetryCodec.VERSION;
+        buf[2] = TelemetryCodec.TYPE_SAMPLE;
+        buf[3] = (byte) cfg.fields;
+        putU32(buf, 4, t);
+        putU16(buf, 8, (int) Math.round(g * 1000));
+        putU16(buf, 10, (int) Math.round(temp * 100));
+        putU16(buf, 12, (int) Math.round(speedKmh * 100));
+        buf[14] = (byte) bat;
+        buf[15] = 0;
+        putU16(buf, 16, (int) Math.round(volt * 1000));
+        deliver(TelemetryCodec.SAMPLE_FRAME_LEN);
+    }
+
+    // Old firmware's text, written straight into buf so the load test's allocation gate sees only
+    // the app's side: the keys in order, ones the app doesn't know with a placeholder value
+    private void sendJson(double g, double temp, int bat, double volt) {
+        int o = 0;
+        buf[o++] = '{';
+        for (int i = 0; i < jsonKeys.length; i++) {
+            if (jsonFields[i] == TelemetrySample.ACCEL) continue;
+            if (o > 1) buf[o++] = ',';
+            buf[o++] = '"';
+            System.arraycopy(jsonKeys[i], 0, buf, o, jsonKeys[i].length);
+            o += jsonKeys[i].length;
+            buf[o++] = '"';
+            buf[o++] = ':';
+            switch (jsonFields[i]) {
+                case TelemetrySample.GFORCE: o = putDecimal(buf, o, g, 3); break;
+                case TelemetrySample.TEMP:   o = putDecimal(buf, o, temp, 2); break;
+                case TelemetrySample.SPEED:  o = putDecimal(buf, o, speedKmh, 2); break;
+                case TelemetrySample.BAT:    o = putDecimal(buf, o, bat, 0); break;
+                case TelemetrySample.VOLT:   o = putDecimal(buf, o, volt, 2); break;
+                default:                     o = putDecimal(buf, o, 0, 0); break;
+            }
+        }
+        buf[o++] = '}';
+        deliver(o);
+    }
+
+    // v with `decimals` digits after the point, as the firmware's %.Nf prints it
+    private static int putDecimal(byte[] b, int o, double v, int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        long fixed = Math.round(Math.abs(v) * scale);
+        if (v < 0 && fixed != 0) b[o++] = '-';
+        long whole = fixed / scale, frac = fixed % scale;
+        int start = o;
+        do { b[o++] = (byte) ('0' + whole % 10); whole /= 10; } while (whole > 0);
+        for (int i = start, j = o - 1; i < j; i++, j--) { byte x = b[i]; b[i] = b[j]; b[j] = x; }
+        if (decimals > 0) {
+            b[o++] = '.';
+            for (long d = scale / 10; d > 0; d /= 10) b[o++] = (byte) ('0' + (frac / d) % 10);
+        }
+        return o;
+    }
+
+    private void deliver(int len) {
+        if ((cfg.lossRate > 0 && rnd.nextDouble() < cfg.lossRate) || !linkHasRoom(len)) {
+            framesLost = framesLost + 1;
+            return;
+        }
+        if (cfg.jitterMs > 0) park(TimeUnit.MICROSECONDS.toNanos((long) (rnd.nextDouble() * cfg.jitterMs * 1000)));
+        framesSent = framesSent + 1;
+        listener.onFrame(buf, len);
+    }
+
+    // Token bucket at the link's current capacity, a few frames deep
+    private boolean linkHasRoom(int len) {
+        if (cfg.linkBytesPerSec <= 0) return true;
+        double rate = cfg.linkBytesPerSec * (phy2M ? 1.6 : 1.0)
+                * (priority == PRIORITY_HIGH ? 1.5 : priority == PRIORITY_LOW_POWER ? 0.4 : 1.0);
+        long now = System.nanoTime();
+        tokens = Math.min(4.0 * cfg.mtu, tokens + rate * (now - tokensAtNanos) / 1e9);
+        tokensAtNanos = now;
+        if (tokens < len) return false;
+        tokens -= len;
+        return true;
+    }
+
+    private static void putU16(byte[] b, int o, int v) { b[o] = (byte) v; b[o + 1] = (byte) (v >> 8); }
+    private static void putU32(byte[] b, int o, long v) {
+        b[o] = (byte) v; b[o + 1] = (byte) (v >> 8); b[o + 2] = (byte) (v >> 16); b[o + 3] = (byte) (v >> 24);
+    }
+}
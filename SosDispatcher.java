@@ -0,0 +1,212 @@
+package com.example.neuroridev2;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+// Sends the SOS the moment it is asked to: contacts come from ContactsIndex (already parsed),
+// the location from LastFixCache (already there), and the message is rendered whenever a new
+// fix arrives, not at press time.
+//
+// With SEND_SMS granted every contact gets a direct SMS from the "sos-dispatch" thread. The
+// sends are handed to the radio one after another without waiting for delivery, so they go
+// out together. If the fix they went with was missing, old or coarse, LastFixCache is asked for
+// a fresh one, and when it comes in every contact also gets an updated location, with or
+// without a screen. Without the permission the user has to confirm in a messaging app: WhatsApp for a
+// single contact, otherwise one group SMS ("smsto:a;b;c") to all of them.
+//
+// Press-to-send latency (press until the last SMS is handed off, or until the messaging app is
+// opened) is logged and kept in prefs sos/last_latency_ms and sos/worst_latency_ms.
+public final class SosDispatcher {
+
+    public static final int SENT_SMS = 0;      // direct SMS to every contact
+    public static final int OPENED_APP = 1;    // user confirms in WhatsApp / the SMS app
+    public static final int NO_CONTACTS = 2;
+    public static final int NO_APP = 3;
+
+    // A fix older or coarser than this is sent anyway, but followed up with a fresh one
+    public static final long FRESH_MS = 60_000;
+    public static final float FRESH_ACCURACY_M = 100f;
+
+    private static final String TAG = "NeuroRideSOS";
+    private static final String PREFS = "sos";
+    private static final String HEADER = "🚨 SOS! I need help.\n• App: NeuroRide V2\n• Location: ";
+    private static final String FOOTER = "\nPlease call me ASAP.";
+
+    private final Context ctx;
+    private final ContactsIndex contacts;
+    private final LastFixCache fixes;
+    private final SharedPreferences prefs;
+    private final HandlerThread thread = new HandlerThread("sos-dispatch");
+    private final Handler worker;
+
+    private volatile String payload = HEADER + "unavailable" + FOOTER;
+    private volatile boolean sentBySms;
+    // Follow-up armed by dispatch(): sent with the first fix newer than followUpAfterMs
+    private volatile boolean followUpPending;
+    private volatile long followUpAfterMs;
+
+    public SosDispatcher(Context ctx, ContactsIndex contacts, LastFixCache fixes) {
+        this.ctx = ctx.getApplicationContext();
+        this.contacts = contacts;
+        this.fixes = fixes;
+        this.prefs = this.ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        thread.start();
+        worker = new Handler(thread.getLooper());
+        LastFixCache.Fix f = fixes.fix();
+        if (f != null) payload = render(f);
+        fixes.setListener(this::onFix);
+    }
+
+    public void release() {
+        fixes.setListener(null);
+        thread.quitSafely();
+    }
+
+    // ===== Dispatch (main thread) =====
+
+    // pressedMs: SystemClock.elapsedRealtime() of the button press or countdown end.
+    public int dispatch(long pressedMs) {
+        ContactsIndex.Contact[] cs = contacts.all();
+        if (cs.length == 0) return NO_CONTACTS;
+        String msg = payload;
+
+        SmsManager sms = canSendSms() ? SmsManager.getDefault() : null;
+        if (sms != null) {
+            sentBySms = true;
+            worker.post(() -> {
+                int ok = sendAll(sms, cs, msg);
+                record(pressedMs, "sms x" + ok + "/" + cs.length);
+            });
+            if (needsFreshFix()) {
+                LastFixCache.Fix f = fixes.fix();
+                followUpAfterMs = f != null ? f.elapsedMs : Long.MIN_VALUE;
+                followUpPending = true;
+                fixes.requestFresh();
+            }
+            return SENT_SMS;
+        }
+
+        sentBySms = false;
+        boolean opened = cs.length == 1 ? openWhatsAppOrSms(cs[0], msg) : openGroupSms(cs, msg);
+        if (!opened) return NO_APP;
+        record(pressedMs, "app");
+        return OPENED_APP;
+    }
+
+    // True when the fix the SOS went out with is missing, old or coarse.
+    private boolean needsFreshFix() {
+        LastFixCache.Fix f = fixes.fix();
+        return f == null || f.ageMs() > FRESH_MS || f.accuracyM > FRESH_ACCURACY_M;
+    }
+
+    private void onFix(LastFixCache.Fix f) {
+        payload = render(f);
+        if (followUpPending && f.elapsedMs > followUpAfterMs) {
+            followUpPending = false;
+            followUp(f.lat, f.lng);
+        }
+    }
+
+    // Second message with the fresh location. Only possible over direct SMS: a second app screen
+    // would just bury the first one.
+    private void followUp(double lat, double lng) {
+        ContactsIndex.Contact[] cs = contacts.all();
+        if (!sentBySms || cs.length == 0) return;
+        SmsManager sms = canSendSms() ? SmsManager.getDefault() : null;
+        if (sms == null) return;
+        String msg = "📍 Updated location: " + mapLink(lat, lng);
+        worker.post(() -> sendAll(sms, cs, msg));
+    }
+
+    // ===== Channels =====
+
+    private boolean canSendSms() {
+        return ctx.checkSelfPermission(Manifest.permission.SEND_SMS) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private int sendAll(SmsManager sms, ContactsIndex.Contact[] cs, String msg) {
+        ArrayList<String> parts = sms.divideMessage(msg);
+        int ok = 0;
+        for (ContactsIndex.Contact c : cs) {
+            try {
+                sms.sendMultipartTextMessage(c.dial, null, parts, null, null);
+                ok++;
+            } catch (RuntimeException e) {   // SecurityException, or IllegalArgumentException on a bad number
+                Log.w(TAG, "SMS to " + c.name + " failed", e);
+            }
+        }
+        return ok;
+    }
+
+    private boolean openWhatsAppOrSms(ContactsIndex.Contact c, String msg) {
+        Intent wa = new Intent(Intent.ACTION_VIEW, Uri.parse("https://wa.me/" + c.digits + "?text=" + Uri.encode(msg)));
+        if (appInstalled("com.whatsapp.w4b")) wa.setPackage("com.whatsapp.w4b");
+        else if (appInstalled("com.whatsapp")) wa.setPackage("com.whatsapp");
+        else return openSms(c.dial, msg);
+        return start(wa) || openSms(c.dial, msg);
+    }
+
+    private boolean openGroupSms(ContactsIndex.Contact[] cs, String msg) {
+        StringBuilder to = new StringBuilder();
+        for (ContactsIndex.Contact c : cs) {
+            if (to.length() > 0) to.append(';');
+            to.append(c.dial);
+        }
+        return openSms(to.toString(), msg);
+    }
+
+    private boolean openSms(String to, String msg) {
+        Intent i = new Intent(Intent.ACTION_SENDTO, Uri.parse("smsto:" + to));
+        i.putExtra("sms_body", msg);
+        return start(i);
+    }
+
+    private boolean start(Intent i) {
+        try {
+            i.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            ctx.startActivity(i);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private boolean appInstalled(String pkg) {
+        try { ctx.getPackageManager().getPackageInfo(pkg, 0); return true; }
+        catch (Exception e) { return false; }
+    }
+
+    // ===== Payload and latency =====
+
+    private static String render(LastFixCache.Fix f) {
+        StringBuilder sb = new StringBuilder(HEADER).append(mapLink(f.lat, f.lng));
+        if (f.accuracyM > 0) sb.append(" (±").append(Math.round(f.accuracyM)).append(" m)");
+        return sb.append(FOOTER).toString();
+    }
+
+    private static String mapLink(double lat, double lng) {
+        return String.format(Locale.US, "https://maps.google.com/?q=%.6f,%.6f", lat, lng);
+    }
+
+    private void record(long pressedMs, String via) {
+        long ms = SystemClock.elapsedRealtime() - pressedMs;
+        LastFixCache.Fix f = fixes.fix();
+        Log.i(TAG, "SOS out in " + ms + " ms via " + via + ", fix " + (f == null ? "none" : f.ageMs() / 1000 + " s old"));
+        prefs.edit()
+                .putLong("last_latency_ms", ms)
+                .putLong("worst_latency_ms", Math.max(ms, prefs.getLong("worst_latency_ms", 0)))
+                .apply();
+    }
+}
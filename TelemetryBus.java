@@ -0,0 +1,329 @@
+package com.example.neuroridev2;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fan-out of the merged stream to its consumers, shaped like java.util.concurrent.Flow
+// (Subscriber / Subscription with request(n) demand) but zero-allocation and on every API level.
+// publish() runs on the merge thread and never waits for a subscriber: each subscription has its
+// own queue, delivery policy and executor, and counts what it had to drop.
+//
+//   BUFFER  every sample in order, through a ring of `capacity`; what doesn't fit is dropped
+//   LATEST  only the newest sample per board; replaced ones count as dropped
+//   SAMPLE  at most one sample per board every sampleEveryMs of sample time, then as BUFFER
+//
+// Delivery runs on the subscription's executor (a thread of its own by default), one drain at a
+// time, so onNext calls never overlap. Options.inline delivers on the publishing thread instead,
+// for subscribers that only hand off to a queue of their own (TelemetryCoalescer, the uplink).
+// Samples passed to onNext are scratch. Plain Java; BusTestRunner runs it against slow subscribers.
+public final class TelemetryBus {
+
+    public interface Subscriber {
+        void onSubscribe(Subscription s);   // call request() here to start the flow
+        void onNext(int device, long tMs, TelemetrySample s);
+        void onComplete();                  // after close(), once the queue is delivered
+    }
+
+    public interface Subscription {
+        void request(long n);               // Long.MAX_VALUE = unbounded
+        void cancel();
+
+        // Any thread
+        String name();
+        Delivery delivery();
+        int queued();
+        long delivered();
+        long dropped();
+    }
+
+    public enum Delivery { BUFFER, LATEST, SAMPLE }
+
+    public interface Sink {
+        void onNext(int device, long tMs, TelemetrySample s);
+    }
+
+    // A subscriber that takes everything it is offered and ignores completion
+    public static Subscriber unbounded(Sink sink) {
+        return new Subscriber() {
+            @Override public void onSubscribe(Subscription s) { s.request(Long.MAX_VALUE); }
+            @Override public void onNext(int device, long tMs, TelemetrySample s) { sink.onNext(device, tMs, s); }
+            @Override public void onComplete() {}
+        };
+    }
+
+    public static Options inline(String name) {
+        Options o = new Options();
+        o.name = name;
+        o.inline = true;
+        return o;
+    }
+
+    public static final class Options {
+        public String name = "subscriber";
+        public Delivery delivery = Delivery.BUFFER;
+        public int capacity = 1024;         // BUFFER / SAMPLE, power of two
+        public long sampleEveryMs = 100;    // SAMPLE
+        public int device = -1;             // only this board's samples, filtered before queueing; -1: all
+        public Executor executor;           // null: a thread of its own, "bus-<name>"
+        public boolean inline;              // deliver on the publishing thread, no queue
+        public int maxBatch = 256;          // per drain, so a shared executor stays fair
+    }
+
+    private final int devices;
+    private final Object lock = new Object();
+    private volatile Sub[] subs = new Sub[0];
+    private volatile boolean closed;
+
+    public TelemetryBus(int devices) { this.devices = devices; }
+
+    // ===== Subscribing (any thread) =====
+
+    public Subscription subscribe(Subscriber subscriber, Options opts) {
+        Sub sub = new Sub(subscriber, opts);
+        synchronized (lock) {
+            if (closed) throw new IllegalStateException("bus closed");
+            Sub[] next = Arrays.copyOf(subs, subs.length + 1);
+            next[subs.length] = sub;
+            subs = next;
+        }
+        subscriber.onSubscribe(sub);
+        return sub;
+    }
+
+    private void remove(Sub sub) {
+        synchronized (lock) {
+            Sub[] cur = subs;
+            Sub[] next = new Sub[cur.length];
+            int n = 0;
+            for (Sub x : cur) if (x != sub) next[n++] = x;
+            subs = Arrays.copyOf(next, n);
+        }
+    }
+
+    // ===== Publishing (one thread) =====
+
+    public void publish(int device, long tMs, TelemetrySample s) {
+        for (Sub sub : subs) sub.offer(device, tMs, s);
+    }
+
+    // Completes every subscriber once it has taken what is queued for it
+    public void close() {
+        Sub[] cur;
+        synchronized (lock) {
+            closed = true;
+            cur = subs;
+        }
+        for (Sub sub : cur) sub.complete();
+    }
+
+    public Subscription[] subscriptions() { return subs.clone(); }
+
+    // One line per subscriber, for TelemetryMetrics
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Sub s : subs) {
+            sb.append(String.format(Locale.US, "bus %-10s %-6s queued %4d/%-4d delivered %d dropped %d%n",
+                    s.name(), s.delivery(), s.queued(), s.opts.inline ? 0 : s.capacity(), s.delivered(), s.dropped()));
+        }
+        return sb.toString();
+    }
+
+    // ===== One subscription =====
+
+    private static final int FRESH = 4;   // LATEST: set on a middle buffer not yet delivered
+
+    private final class Sub implements Subscription, Runnable, TelemetryCodec.SampleSink {
+        final Subscriber subscriber;
+        final Options opts;
+        final Executor executor;
+        final ExecutorService ownExecutor;   // shut down with the subscription
+        final IngestRing ring;               // BUFFER, SAMPLE
+        final long[] lastSampledMs;          // SAMPLE, per board
+
+        // LATEST: a triple buffer per board. The publisher fills its back buffer and swaps it into
+        // the middle (marked fresh); the consumer swaps a fresh middle for its front buffer. Three
+        // samples per board, allocated here, so neither side allocates or waits.
+        final TelemetrySample[][] buffers;
+        final AtomicIntegerArray middle;     // buffer index, | FRESH when not yet delivered
+        final int[] back, front;             // publisher's / consumer's buffer index
+        private int nextBoard;               // round-robin start, consumer side
+
+        final AtomicLong demand = new AtomicLong();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final TelemetrySample scratch = new TelemetrySample();
+        volatile boolean cancelled, completing;
+        final AtomicBoolean completed = new AtomicBoolean();
+        volatile long delivered, conflated, inlineDropped;
+
+        Sub(Subscriber subscriber, Options opts) {
+            this.subscriber = subscriber;
+            this.opts = opts;
+            if (opts.inline) {
+                executor = null;
+                ownExecutor = null;
+            } else if (opts.executor != null) {
+                executor = opts.executor;
+                ownExecutor = null;
+            } else {
+                ownExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "bus-" + opts.name);
+                    t.setDaemon(true);
+                    return t;
+                });
+                executor = ownExecutor;
+            }
+            boolean queued = !opts.inline && opts.delivery != Delivery.LATEST;
+            ring = queued ? new IngestRing(opts.capacity, IngestRing.Policy.DROP_NEWEST) : null;
+            lastSampledMs = new long[devices];
+            Arrays.fill(lastSampledMs, Long.MIN_VALUE);
+            boolean conflate = !opts.inline && opts.delivery == Delivery.LATEST;
+            buffers = conflate ? new TelemetrySample[devices][3] : null;
+            middle = conflate ? new AtomicIntegerArray(devices) : null;
+            back = conflate ? new int[devices] : null;
+            front = conflate ? new int[devices] : null;
+            if (conflate) {
+                for (int d = 0; d < devices; d++) {
+                    for (int i = 0; i < 3; i++) buffers[d][i] = new TelemetrySample();
+                    back[d] = 0;
+                    middle.set(d, 1);
+                    front[d] = 2;
+                }
+            }
+        }
+
+        // ----- Publisher thread -----
+
+        void offer(int device, long tMs, TelemetrySample s) {
+            if (cancelled || completing || device < 0 || device >= devices) return;
+            if (opts.device >= 0 && device != opts.device) return;
+            if (opts.delivery == Delivery.SAMPLE) {
+                long last = lastSampledMs[device];
+                if (last != Long.MIN_VALUE && tMs - last < opts.sampleEveryMs) return;
+                lastSampledMs[device] = tMs;
+            }
+            if (opts.inline) {
+                if (demand.get() <= 0) { inlineDropped = inlineDropped + 1; return; }
+                if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                subscriber.onNext(device, tMs, s);
+                delivered = delivered + 1;
+                return;
+            }
+            if (ring != null) {
+                ring.offer(s, tMs, device);
+            } else {
+                TelemetrySample next = buffers[device][back[device]];
+                next.set(s);
+                next.deviceTimeMs = tMs;
+                next.device = device;
+                int prev = middle.getAndSet(device, back[device] | FRESH);
+                back[device] = prev & ~FRESH;
+                if ((prev & FRESH) != 0) conflated = conflated + 1;
+            }
+            schedule();
+        }
+
+        // ----- Any thread -----
+
+        @Override public void request(long n) {
+            if (n <= 0 || cancelled) return;
+            demand.getAndUpdate(d -> d + n < d ? Long.MAX_VALUE : d + n);   // saturate
+            if (!opts.inline) schedule();
+        }
+
+        @Override public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            remove(this);
+            if (ownExecutor != null) ownExecutor.shutdown();
+        }
+
+        void complete() {
+            completing = true;
+            if (opts.inline) { finish(); return; }
+            if (scheduled.compareAndSet(false, true)) execute();
+        }
+
+        private void schedule() {
+            if (demand.get() > 0 && scheduled.compareAndSet(false, true)) execute();
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);   // executor shut down: the subscriber is gone
+            }
+        }
+
+        private void finish() {
+            if (!cancelled && completed.compareAndSet(false, true)) {
+                subscriber.onComplete();
+                if (ownExecutor != null) ownExecutor.shutdown();
+            }
+        }
+
+        // ----- Executor: drain -----
+
+        @Override public void run() {
+            int n = 0;
+            try {
+                while (!cancelled && n < opts.maxBatch && demand.get() > 0 && deliverOne()) {
+                    n++;
+                    if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            if (cancelled) return;
+            if (queued() > 0) schedule();
+            else if (completing) finish();   // nothing is offered once completing
+        }
+
+        private boolean deliverOne() {
+            if (ring != null) return ring.drain(scratch, this, 1) == 1;
+            for (int k = 0; k < devices; k++) {
+                int d = (nextBoard + k) % devices;
+                if ((middle.get(d) & FRESH) == 0) continue;   // only the publisher sets FRESH
+                front[d] = middle.getAndSet(d, front[d]) & ~FRESH;
+                nextBoard = d + 1;
+                TelemetrySample s = buffers[d][front[d]];
+                subscriber.onNext(d, s.deviceTimeMs, s);
+                delivered = delivered + 1;
+                return true;
+            }
+            return false;
+        }
+
+        @Override public void onSample(TelemetrySample s) {
+            subscriber.onNext(s.device, s.deviceTimeMs, s);
+            delivered = delivered + 1;
+        }
+
+        // ----- Stats -----
+
+        @Override public String name()         { return opts.name; }
+        @Override public Delivery delivery()   { return opts.delivery; }
+        @Override public long delivered()      { return delivered; }
+
+        int capacity() { return ring != null ? ring.capacity() : devices; }
+
+        @Override public int queued() {
+            if (ring != null) return ring.size();
+            if (middle == null) return 0;
+            int n = 0;
+            for (int d = 0; d < devices; d++) if ((middle.get(d) & FRESH) != 0) n++;
+            return n;
+        }
+
+        @Override public long dropped() {
+            return ring != null ? ring.dropped() : middle != null ? conflated : inlineDropped;
+        }
+    }
+}
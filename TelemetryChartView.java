@@ -0,0 +1,209 @@
+package com.example.neuroridev2;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.View;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Scrolling chart of g-force, temperature and speed, one lane each, over the last windowMs of
+// sample time. Subscribe it to the TelemetryBus inline: samples go into an IngestRing, and at most
+// once per vsync the ring is drained into each lane's ChartSeries and the view invalidated, so
+// nothing is drawn between frames or while no samples arrive. Paints, vertex arrays and label
+// buffers are made up front (vertex arrays again on a size change); onDraw allocates nothing and
+// its cost is bounded by the width, not the sample rate. Draw time goes to TelemetryMetrics.
+public final class TelemetryChartView extends View implements Choreographer.FrameCallback, TelemetryBus.Subscriber {
+
+    private static final int HISTORY = 1 << 13;   // per lane: 40 s at 200 Hz
+    private static final int[] COLORS = {Color.rgb(0xE5, 0x39, 0x35), Color.rgb(0xFB, 0x8C, 0x00), Color.rgb(0x1E, 0x88, 0xE5)};
+
+    private final ChartSeries[] lanes = {
+            new ChartSeries("G", " g", 2, 0, 2, HISTORY),
+            new ChartSeries("Temp", " °C", 1, 20, 40, HISTORY),
+            new ChartSeries("Speed", " km/h", 0, 0, 30, HISTORY),
+    };
+    private final int[] fields = {TelemetrySample.GFORCE, TelemetrySample.TEMP, TelemetrySample.SPEED};
+
+    private final IngestRing ring = new IngestRing(1024, IngestRing.Policy.OVERWRITE_OLDEST);
+    private final TelemetrySample scratch = new TelemetrySample();
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean frameRequested = new AtomicBoolean();
+    private volatile boolean attached;
+    private volatile int device;                 // which board to plot
+    private long windowMs = 10_000;
+
+    private final Paint[] linePaints = new Paint[lanes.length];
+    private final Paint gridPaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint axisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float density;
+    private float[][] vertices = new float[lanes.length][0];
+    private float[] grid = new float[0];
+    private int gridFloats;
+    private final char[] label = new char[64];
+    private final TelemetryMetrics metrics = TelemetryMetrics.get();
+
+    private final TelemetryCodec.SampleSink toLanes = s -> {
+        if (s.device != device) return;
+        for (int i = 0; i < lanes.length; i++) {
+            if (!s.has(fields[i])) continue;
+            double val = fields[i] == TelemetrySample.GFORCE ? s.gforce : fields[i] == TelemetrySample.TEMP ? s.temp : s.speed;
+            lanes[i].add(s.deviceTimeMs, (float) val);
+        }
+    };
+
+    private final Runnable postFrame = () -> {
+        if (attached) Choreographer.getInstance().postFrameCallback(this);
+        else frameRequested.set(false);
+    };
+
+    public TelemetryChartView(Context context) { this(context, null); }
+
+    public TelemetryChartView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        density = context.getResources().getDisplayMetrics().density;
+        for (int i = 0; i < lanes.length; i++) {
+            Paint p = new Paint(Paint.ANTI_ALIAS_FLAG);
+            p.setColor(COLORS[i]);
+            p.setStrokeWidth(1.5f * density);
+            p.setStyle(Paint.Style.STROKE);
+            linePaints[i] = p;
+        }
+        gridPaint.setColor(Color.rgb(0xDD, 0xDD, 0xDD));
+        gridPaint.setStrokeWidth(1);
+        textPaint.setColor(Color.rgb(0x21, 0x21, 0x21));
+        textPaint.setTextSize(14 * density);
+        axisPaint.setColor(Color.rgb(0x75, 0x75, 0x75));
+        axisPaint.setTextSize(10 * density);
+    }
+
+    // ===== Settings (UI thread) =====
+
+    @MainThread public void setWindowMs(long ms) {
+        windowMs = Math.max(1000, ms);
+        allocGrid();
+        invalidate();
+    }
+
+    @MainThread public void setDevice(int d) {
+        device = d;
+        for (ChartSeries s : lanes) s.clear();
+        invalidate();
+    }
+
+    // ===== As a TelemetryBus subscriber: subscribe inline, the ring is the queue =====
+
+    @Override public void onSubscribe(TelemetryBus.Subscription s) { s.request(Long.MAX_VALUE); }
+    @Override public void onNext(int dev, long tMs, TelemetrySample s) {
+        ring.offer(s, tMs, dev);
+        if (attached && frameRequested.compareAndSet(false, true)) main.post(postFrame);
+    }
+    @Override public void onComplete() {}
+
+    // ===== Frame =====
+
+    @Override public void doFrame(long frameTimeNanos) {
+        frameRequested.set(false);   // before draining, so a sample offered now schedules the next frame
+        if (!attached) return;
+        if (ring.drain(scratch, toLanes, ring.capacity()) > 0) invalidate();   // drawn in this frame's traversal
+    }
+
+    @Override protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        attached = true;
+        if (ring.size() > 0 && frameRequested.compareAndSet(false, true)) main.post(postFrame);
+    }
+
+    @Override protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        attached = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        main.removeCallbacks(postFrame);
+        frameRequested.set(false);
+    }
+
+    @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        int cols = Math.max(1, (int) (w - labelWidth()));
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i].setColumns(cols);
+            vertices[i] = new float[lanes[i].maxVertexFloats()];
+        }
+        allocGrid();
+    }
+
+    // Lane separators and a vertical line every second of the window
+    private void allocGrid() {
+        grid = new float[4 * (lanes.length + 1 + (int) (windowMs / 1000))];
+        gridFloats = 0;
+    }
+
+    private float labelWidth() { return 56 * density; }
+
+    @Override protected void onDraw(Canvas canvas) {
+        long t0 = System.nanoTime();
+        super.onDraw(canvas);
+        int w = getWidth(), h = getHeight();
+        if (w == 0 || h == 0) return;
+        float plotLeft = labelWidth(), plotW = w - plotLeft;
+        float laneH = (float) h / lanes.length, pad = 4 * density;
+
+        long end = Long.MIN_VALUE;
+        for (ChartSeries s : lanes) end = Math.max(end, s.lastTimeMs());
+
+        buildGrid(plotLeft, plotW, laneH, h, end);
+        canvas.drawLines(grid, 0, gridFloats, gridPaint);
+
+        for (int i = 0; i < lanes.length; i++) {
+            ChartSeries s = lanes[i];
+            float top = i * laneH + pad, height = laneH - 2 * pad;
+            int n = end == Long.MIN_VALUE ? 0 : s.layout(end, windowMs, plotLeft, top, plotW, height, vertices[i]);
+            if (n > 0) canvas.drawLines(vertices[i], 0, n, linePaints[i]);
+
+            // "G 1.23 g" and the lane's range
+            int len = label(s.name, s.lastValue(), s.decimals, s.unit);
+            canvas.drawText(label, 0, len, pad, top + textPaint.getTextSize(), textPaint);
+            if (n > 0) {
+                len = ChartSeries.format(s.shownMax(), s.decimals, label, 0);
+                canvas.drawText(label, 0, len, pad, top + height - axisPaint.getTextSize() - pad, axisPaint);
+                len = ChartSeries.format(s.shownMin(), s.decimals, label, 0);
+                canvas.drawText(label, 0, len, pad, top + height, axisPaint);
+            }
+        }
+        if (metrics.isEnabled()) metrics.draw.record((System.nanoTime() - t0) / 1000);
+    }
+
+    private int label(String name, double value, int decimals, String unit) {
+        int n = 0;
+        for (int i = 0; i < name.length(); i++) label[n++] = name.charAt(i);
+        label[n++] = ' ';
+        n = ChartSeries.format(value, decimals, label, n);
+        if (!Double.isNaN(value)) for (int i = 0; i < unit.length(); i++) label[n++] = unit.charAt(i);
+        return n;
+    }
+
+    // Vertical lines stay on whole seconds of sample time, so they scroll with the data
+    private void buildGrid(float left, float width, float laneH, int h, long end) {
+        int n = 0;
+        for (int i = 1; i < lanes.length; i++) {
+            grid[n++] = 0; grid[n++] = i * laneH; grid[n++] = left + width; grid[n++] = i * laneH;
+        }
+        if (end != Long.MIN_VALUE) {
+            long from = end - windowMs;
+            for (long s = (from / 1000 + 1) * 1000; s <= end && n + 4 <= grid.length; s += 1000) {
+                float x = left + (float) ((s - from) * (double) width / windowMs);
+                grid[n++] = x; grid[n++] = 0; grid[n++] = x; grid[n++] = h;
+            }
+        }
+        gridFloats = n;
+    }
+}
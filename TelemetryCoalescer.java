@@ -0,0 +1,143 @@
+package com.example.neuroridev2;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Bridges the BLE thread to the UI: samples go into an IngestRing, and at most once per
+// display frame the ring is drained and folded into a single TelemetrySnapshot.
+//
+// Publish and render latency go to TelemetryMetrics; they assume sample times are on the
+// SystemClock.elapsedRealtime() timeline (as the merged stream's are).
+//
+// Mode.SNAPSHOT publishes only snapshot(). Mode.FIELDS additionally mirrors changed values into
+// the per-field TelemetryViewModel setters for screens that still observe those, still once per frame.
+public final class TelemetryCoalescer implements Choreographer.FrameCallback, TelemetryBus.Subscriber {
+
+    public enum Mode { SNAPSHOT, FIELDS }
+
+    private final IngestRing ring;
+    private final Mode mode;
+    private final TelemetryViewModel vm;   // only used in FIELDS mode
+    private final long minIntervalNanos;
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean frameRequested = new AtomicBoolean();
+    private volatile boolean running = true;
+    private final MutableLiveData<TelemetrySnapshot> snapshot = new MutableLiveData<>(TelemetrySnapshot.EMPTY);
+
+    // ===== UI-thread fold state =====
+    private final TelemetrySample scratch = new TelemetrySample();
+    private int foldMask;
+    private long foldTime;
+    private double foldG = Double.NaN, foldTemp = Double.NaN, foldSpeed = Double.NaN, foldVolt = Double.NaN;
+    private int foldBat = -1;
+    private double foldPeak = Double.NaN;
+    private int foldCount;
+    private long lastPublishNanos;
+    private final TelemetryMetrics metrics = TelemetryMetrics.get();
+    private long renderFromNanos;
+    private final Choreographer.FrameCallback renderProbe = frameTimeNanos -> {
+        metrics.render.record(Math.max(0, frameTimeNanos - renderFromNanos) / 1000);
+        renderFromNanos = 0;
+    };
+    private final TelemetryCodec.SampleSink fold = s -> {
+        foldCount++;
+        foldTime = s.deviceTimeMs;
+        if (s.has(TelemetrySample.GFORCE)) {
+            foldG = s.gforce;
+            if (Double.isNaN(foldPeak) || s.gforce > foldPeak) foldPeak = s.gforce;
+        }
+        if (s.has(TelemetrySample.TEMP))  foldTemp = s.temp;
+        if (s.has(TelemetrySample.SPEED)) foldSpeed = s.speed;
+        if (s.has(TelemetrySample.VOLT))  foldVolt = s.volt;
+        if (s.has(TelemetrySample.BAT))   foldBat = s.battery;
+        foldMask |= s.mask;
+    };
+
+    private final Runnable postFrame = () -> {
+        if (running) Choreographer.getInstance().postFrameCallback(this);
+        else frameRequested.set(false);
+    };
+
+    // maxRateHz caps publishes below the display rate; 0 means once per frame.
+    public TelemetryCoalescer(int ringCapacity, IngestRing.Policy policy, Mode mode,
+                              TelemetryViewModel vm, int maxRateHz) {
+        this.ring = new IngestRing(ringCapacity, policy);
+        this.mode = mode;
+        this.vm = vm;
+        this.minIntervalNanos = maxRateHz > 0 ? TimeUnit.SECONDS.toNanos(1) / maxRateHz : 0;
+    }
+
+    public LiveData<TelemetrySnapshot> snapshot() { return snapshot; }
+    public IngestRing ring() { return ring; }
+
+    // ===== Producer side (any single thread) =====
+    public void offer(TelemetrySample s) {
+        ring.offer(s);
+        if (running && frameRequested.compareAndSet(false, true)) main.post(postFrame);
+    }
+
+    // ===== As a TelemetryBus subscriber: subscribe inline, the ring is the queue =====
+    @Override public void onSubscribe(TelemetryBus.Subscription s) { s.request(Long.MAX_VALUE); }
+    @Override public void onNext(int device, long tMs, TelemetrySample s) { offer(s); }
+    @Override public void onComplete() {}
+
+    // ===== UI side =====
+    @Override public void doFrame(long frameTimeNanos) {
+        if (!running) { frameRequested.set(false); return; }
+        if (frameTimeNanos - lastPublishNanos < minIntervalNanos) {
+            Choreographer.getInstance().postFrameCallback(this);
+            return;
+        }
+        // Clear before draining so a sample offered during the drain schedules the next frame
+        frameRequested.set(false);
+        foldCount = 0;
+        foldPeak = Double.NaN;
+        ring.drain(scratch, fold, ring.capacity());
+        if (foldCount == 0) return;
+
+        lastPublishNanos = frameTimeNanos;
+        TelemetrySnapshot prev = snapshot.getValue();
+        TelemetrySnapshot next = new TelemetrySnapshot(foldMask, foldTime,
+                foldG, foldTemp, foldSpeed, foldVolt, foldBat, foldPeak, foldCount);
+        snapshot.setValue(next);
+        if (mode == Mode.FIELDS && vm != null) mirror(prev, next);
+        if (metrics.isEnabled()) {
+            metrics.onPublish();
+            metrics.publish.recordMs(SystemClock.elapsedRealtime() - foldTime);
+            if (renderFromNanos == 0) {   // on screen at the next vsync
+                renderFromNanos = System.nanoTime();
+                Choreographer.getInstance().postFrameCallback(renderProbe);
+            }
+        }
+    }
+
+    private void mirror(TelemetrySnapshot prev, TelemetrySnapshot next) {
+        if (changed(prev.temp, next.temp))     vm.setTemp(next.temp);
+        if (changed(prev.speed, next.speed))   vm.setSpeed(next.speed);
+        if (changed(prev.gforce, next.gforce)) vm.setGforce(next.gforce);
+        if (next.battery >= 0 && next.battery != prev.battery) vm.setBattery(next.battery);
+    }
+
+    private static boolean changed(double a, double b) {
+        return !Double.isNaN(b) && Double.compare(a, b) != 0;
+    }
+
+    @MainThread public void stop() {
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        Choreographer.getInstance().removeFrameCallback(renderProbe);
+        renderFromNanos = 0;
+        main.removeCallbacks(postFrame);
+        frameRequested.set(false);
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.neuroridev2;
+
+// Decoder for ESP32 telemetry notifications.
+//
+// Binary frame v1 (little-endian, 18 bytes), emitted by esp32code2 / hardware code:
+//   [0]     magic 'N' (0x4E)
+//   [1]     version (1)
+//   [2]     frame type (0x01 = single sample)
+//   [3]     field mask (TelemetrySample.GFORCE | TEMP | SPEED | BAT | VOLT)
+//   [4..7]  uint32 device millis
+//   [8..9]  int16  gforce, milli-g
+//   [10..11] int16 temp, centi-°C
+//   [12..13] uint16 speed, centi-km/h
+//   [14]    uint8  battery %
+//   [15]    reserved
+//   [16..17] uint16 battery voltage, mV
+//
+// Batch frame (type 0x02), as many samples as fit in the negotiated MTU:
+//   [0..3]  magic, version, type 0x02, field mask (same for every sample)
+//   [4..7]  uint32 seq, running index of the first sample in this batch
+//   [8..11] uint32 device millis of the batch base
+//   [12]    uint8  sample count
+//   [13]    uint8  battery %
+//   [14..15] uint16 battery voltage, mV
+//   then count x 8 bytes: uint16 dt ms from base, int16 gforce mg, int16 temp c°C, uint16 speed c-km/h
+//
+// Raw accelerometer batch (type 0x03), fixed-rate 3-axis samples (100-200 Hz):
+//   [0..15] as the batch header, mask has ACCEL (plus TEMP / BAT / VOLT)
+//   [16..17] uint16 sample period, µs; sample i was taken at base + i * period (so MIN_RATE_HZ at the slowest)
+//   [18..19] int16 temp c°C, once per batch
+//   then count x 6 bytes: int16 ax, ay, az, milli-g
+// Samples come out with ACCEL | GFORCE, gforce = |a|; AccelDsp derives the rest.
+//
+// Anything starting with '{' is treated as a legacy JSON payload from old firmware, decoded through
+// the board's TelemetrySchema (its key names, read at connect; TelemetrySchema.DEFAULT otherwise).
+//
+// Control write (phone -> board, written to the control characteristic), type 0x10:
+//   [0..3]  magic, version, type 0x10, reserved
+//   [4..5]  uint16 requested sample rate, Hz, at least MIN_RATE_HZ; the board clamps it to what it supports
+public final class TelemetryCodec {
+
+    public static final byte MAGIC = 0x4E;
+    public static final int VERSION = 1;
+    public static final int TYPE_SAMPLE = 0x01;
+    public static final int TYPE_BATCH = 0x02;
+    public static final int TYPE_ACCEL = 0x03;
+    public static final int TYPE_SET_RATE = 0x10;
+    public static final int CONTROL_LEN = 6;
+    public static final int SAMPLE_FRAME_LEN = 18;
+    public static final int BATCH_HEADER_LEN = 16;
+    public static final int BATCH_SAMPLE_LEN = 8;
+    public static final int ACCEL_HEADER_LEN = 20;
+    public static final int ACCEL_SAMPLE_LEN = 6;
+    public static final int MIN_RATE_HZ = 16;   // 1e6 / 16 = 62500 µs, the longest period [16..17] holds
+
+    // Called once per decoded sample; the instance is the caller's scratch and is overwritten next call.
+    public interface SampleSink {
+        void onSample(TelemetrySample s);
+    }
+
+    private TelemetryCodec() {}
+
+    // Max samples per batch for a negotiated ATT MTU (3 bytes of ATT header per notification).
+    public static int batchCapacity(int mtu) {
+        return Math.max(0, (mtu - 3 - BATCH_HEADER_LEN) / BATCH_SAMPLE_LEN);
+    }
+
+    public static int accelCapacity(int mtu) {
+        return Math.max(0, Math.min(255, (mtu - 3 - ACCEL_HEADER_LEN) / ACCEL_SAMPLE_LEN));
+    }
+
+    // Frame type of a binary frame, or -1 for JSON / garbage
+    public static int frameType(byte[] data, int len) {
+        return len >= 4 && data[0] == MAGIC ? data[2] & 0xFF : -1;
+    }
+
+    // Sample period of a type 0x03 frame in µs
+    public static int accelPeriodUs(byte[] data) { return u16(data, 16); }
+
+    // Single-sample view: for a batch frame `out` holds the last sample.
+    // Returns false for truncated, unknown or unparsable payloads; `out` is then left cleared.
+    public static boolean decode(byte[] data, int len, TelemetrySample out) {
+        return decode(data, len, out, null) > 0;
+    }
+
+    // Decodes every sample in the frame into `scratch` and hands each one to `sink` (may be null).
+    // Returns the number of samples, or -1 if the frame is bad.
+    public static int decode(byte[] data, int len, TelemetrySample scratch, SampleSink sink) {
+        return decode(data, len, scratch, sink, TelemetrySchema.DEFAULT);
+    }
+
+    public static int decode(byte[] data, int len, TelemetrySample scratch, SampleSink sink, TelemetrySchema schema) {
+        scratch.clear();
+        if (data == null || len <= 0) return -1;
+        boolean ok;
+        if (data[0] == MAGIC) {
+            if (len >= 4 && (data[2] & 0xFF) == TYPE_BATCH) return decodeBatch(data, len, scratch, sink);
+            if (len >= 4 && (data[2] & 0xFF) == TYPE_ACCEL) return decodeAccel(data, len, scratch, sink);
+            ok = decodeBinary(data, len, scratch);
+        } else if (data[0] == '{') {
+            ok = schema.decodeJson(data, len, scratch);
+        } else {
+            ok = false;
+        }
+        if (!ok) return -1;
+        if (sink != null) sink.onSample(scratch);
+        return 1;
+    }
+
+    // ===== Binary path: straight from byte[] into primitives =====
+    private static boolean decodeBinary(byte[] d, int len, TelemetrySample out) {
+        if (len < 4 || (d[1] & 0xFF) != VERSION) return false;
+        if ((d[2] & 0xFF) != TYPE_SAMPLE || len < SAMPLE_FRAME_LEN) return false;
+
+        int mask = d[3] & 0xFF;
+        out.deviceTimeMs = u32(d, 4);
+        if ((mask & TelemetrySample.GFORCE) != 0) out.gforce = s16(d, 8) / 1000.0;
+        if ((mask & TelemetrySample.TEMP) != 0)   out.temp = s16(d, 10) / 100.0;
+        if ((mask & TelemetrySample.SPEED) != 0)  out.speed = u16(d, 12) / 100.0;
+        if ((mask & TelemetrySample.BAT) != 0)    out.battery = d[14] & 0xFF;
+        if ((mask & TelemetrySample.VOLT) != 0)   out.volt = u16(d, 16) / 1000.0;
+        out.mask = mask;
+        return true;
+    }
+
+    private static int decodeBatch(byte[] d, int len, TelemetrySample out, SampleSink sink) {
+        if ((d[1] & 0xFF) != VERSION || len < BATCH_HEADER_LEN) return -1;
+        int count = d[12] & 0xFF;
+        if (len < BATCH_HEADER_LEN + count * BATCH_SAMPLE_LEN) return -1;
+
+        int mask = d[3] & 0xFF;
+        long seq = u32(d, 4);
+        long base = u32(d, 8);
+        int bat = d[13] & 0xFF;
+        double volt = u16(d, 14) / 1000.0;
+
+        int o = BATCH_HEADER_LEN;
+        for (int i = 0; i < count; i++, o += BATCH_SAMPLE_LEN) {
+            out.clear();
+            out.mask = mask;
+            out.seq = seq + i;
+            out.deviceTimeMs = base + u16(d, o);
+            if ((mask & TelemetrySample.GFORCE) != 0) out.gforce = s16(d, o + 2) / 1000.0;
+            if ((mask & TelemetrySample.TEMP) != 0)   out.temp = s16(d, o + 4) / 100.0;
+            if ((mask & TelemetrySample.SPEED) != 0)  out.speed = u16(d, o + 6) / 100.0;
+            if ((mask & TelemetrySample.BAT) != 0)    out.battery = bat;
+            if ((mask & TelemetrySample.VOLT) != 0)   out.volt = volt;
+            if (sink != null) sink.onSample(out);
+        }
+        return count;
+    }
+
+    // ===== Encoder: a type 0x01 frame, as old firmware sent it (used for flight recorder dumps) =====
+
+    // Writes SAMPLE_FRAME_LEN bytes at out[off]. Values are clamped to the field ranges.
+    public static void encodeSample(TelemetrySample s, byte[] out, int off) {
+        out[off] = MAGIC;
+        out[off + 1] = VERSION;
+        out[off + 2] = TYPE_SAMPLE;
+        out[off + 3] = (byte) (s.mask & ~TelemetrySample.ACCEL);   // a 0x01 frame keeps |a| only
+        long t = s.deviceTimeMs;
+        out[off + 4] = (byte) t; out[off + 5] = (byte) (t >> 8); out[off + 6] = (byte) (t >> 16); out[off + 7] = (byte) (t >> 24);
+        put16(out, off + 8, s.has(TelemetrySample.GFORCE) ? clamp(Math.round(s.gforce * 1000), -32768, 32767) : 0);
+        put16(out, off + 10, s.has(TelemetrySample.TEMP) ? clamp(Math.round(s.temp * 100), -32768, 32767) : 0);
+        put16(out, off + 12, s.has(TelemetrySample.SPEED) ? clamp(Math.round(s.speed * 100), 0, 65535) : 0);
+        out[off + 14] = (byte) (s.has(TelemetrySample.BAT) ? clamp(s.battery, 0, 255) : 0);
+        out[off + 15] = 0;
+        put16(out, off + 16, s.has(TelemetrySample.VOLT) ? clamp(Math.round(s.volt * 1000), 0, 65535) : 0);
+    }
+
+    // ===== Encoder: control writes =====
+
+    public static byte[] encodeSetRate(int hz) {
+        byte[] out = new byte[CONTROL_LEN];
+        out[0] = MAGIC;
+        out[1] = VERSION;
+        out[2] = TYPE_SET_RATE;
+        put16(out, 4, clamp(hz, MIN_RATE_HZ, 65535));
+        return out;
+    }
+
+    private static void put16(byte[] d, int o, int v) { d[o] = (byte) v; d[o + 1] = (byte) (v >> 8); }
+    private static int clamp(long v, int lo, int hi) { return (int) Math.max(lo, Math.min(hi, v)); }
+
+    private static int decodeAccel(byte[] d, int len, TelemetrySample out, SampleSink sink) {
+        if ((d[1] & 0xFF) != VERSION || len < ACCEL_HEADER_LEN) return -1;
+        int count = d[12] & 0xFF;
+        if (len < ACCEL_HEADER_LEN + count * ACCEL_SAMPLE_LEN) return -1;
+
+        int mask = (d[3] & 0xFF) | TelemetrySample.ACCEL | TelemetrySample.GFORCE;
+        long seq = u32(d, 4);
+        long base = u32(d, 8);
+        int bat = d[13] & 0xFF;
+        double volt = u16(d, 14) / 1000.0;
+        int periodUs = u16(d, 16);
+        double temp = s16(d, 18) / 100.0;
+
+        int o = ACCEL_HEADER_LEN;
+        for (int i = 0; i < count; i++, o += ACCEL_SAMPLE_LEN) {
+            out.clear();
+            out.mask = mask;
+            out.seq = seq + i;
+            out.deviceTimeMs = base + (long) i * periodUs / 1000;
+            double x = s16(d, o) / 1000.0, y = s16(d, o + 2) / 1000.0, z = s16(d, o + 4) / 1000.0;
+            out.ax = x;
+            out.ay = y;
+            out.az = z;
+            out.gforce = Math.sqrt(x * x + y * y + z * z);
+            if ((mask & TelemetrySample.TEMP) != 0) out.temp = temp;
+            if ((mask & TelemetrySample.BAT) != 0)  out.battery = bat;
+            if ((mask & TelemetrySample.VOLT) != 0) out.volt = volt;
+            if (sink != null) sink.onSample(out);
+        }
+        return count;
+    }
+
+    static int s16(byte[] d, int o) { return (short) ((d[o] & 0xFF) | (d[o + 1] << 8)); }
+    static int u16(byte[] d, int o) { return (d[o] & 0xFF) | ((d[o + 1] & 0xFF) << 8); }
+    static long u32(byte[] d, int o) {
+        return ((d[o] & 0xFFL)) | ((d[o + 1] & 0xFFL) << 8)
+                | ((d[o + 2] & 0xFFL) << 16) | ((d[o + 3] & 0xFFL) << 24);
+    }
+}
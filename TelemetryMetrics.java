@@ -0,0 +1,159 @@
+package com.example.neuroridev2;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Process-wide counters and per-stage latency histograms for the telemetry path:
+//
+//   decode   notify received -> frame decoded (per frame, device thread)
+//   merge    sample time -> leaves SessionMerger (per sample, merge thread)
+//   publish  sample time -> folded into the ViewModel snapshot (per display frame)
+//   render   ViewModel publish -> next vsync, when the new values are on screen
+//   draw     TelemetryChartView.onDraw, per frame drawn
+//
+// "Sample time" is the sample's phone-clock time from DeviceClock, i.e. about when it arrived.
+// Recording is a few atomic adds with no allocation; with setEnabled(false) the call sites
+// skip even the clock reads. Schema negotiation (TelemetrySchema) is counted per connect: what
+// the board advertised, how its names mapped, and data that didn't match it. Shown by MetricsFragment, which can also export it to a file, along
+// with each TelemetryBus subscriber's queue depth and drops.
+public final class TelemetryMetrics {
+
+    private static final String TAG = "NeuroRideBLE";
+    private static final TelemetryMetrics INSTANCE = new TelemetryMetrics();
+
+    public static TelemetryMetrics get() { return INSTANCE; }
+
+    private static final long MAX_US = 60_000_000L;
+
+    public final LatencyHistogram decode  = new LatencyHistogram("decode", MAX_US);
+    public final LatencyHistogram merge   = new LatencyHistogram("merge", MAX_US);
+    public final LatencyHistogram publish = new LatencyHistogram("publish", MAX_US);
+    public final LatencyHistogram render  = new LatencyHistogram("render", MAX_US);
+    public final LatencyHistogram draw    = new LatencyHistogram("draw", MAX_US);
+
+    private final AtomicLong frames = new AtomicLong(), samples = new AtomicLong(), badFrames = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong(), reconnects = new AtomicLong(), publishes = new AtomicLong();
+    private final AtomicLong schemas = new AtomicLong(), noSchema = new AtomicLong(), badSchema = new AtomicLong();
+    private final AtomicLong renamedKeys = new AtomicLong(), unmappedKeys = new AtomicLong(), newerSchema = new AtomicLong();
+    private final AtomicLong unknownKeys = new AtomicLong(), unadvertised = new AtomicLong();
+    private volatile long schemaCompileUs;
+    private volatile boolean enabled = true;
+    private volatile TelemetryBus bus;
+    private volatile long sinceNanos = System.nanoTime();
+
+    // Report window for the per-second rates
+    private long windowNanos = sinceNanos, windowFrames, windowSamples;
+
+    private TelemetryMetrics() {}
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean on) { enabled = on; }
+
+    // ===== Recording =====
+
+    public void onFrame(long decodeNanos, int decoded) {
+        frames.incrementAndGet();
+        if (decoded < 0) { badFrames.incrementAndGet(); return; }
+        samples.addAndGet(decoded);
+        decode.record(decodeNanos / 1000);
+    }
+
+    public void onLost(long n)   { lost.addAndGet(n); }
+    public void onReconnect()    { reconnects.incrementAndGet(); }
+    public void setBus(TelemetryBus b) { bus = b; }
+    public void onPublish()      { publishes.incrementAndGet(); }
+
+    // A board's schema at connect; null if it advertised none, compileUs spent mapping it
+    public void onSchema(TelemetrySchema s, long compileUs) {
+        if (s == null || !s.advertised()) { noSchema.incrementAndGet(); return; }
+        schemas.incrementAndGet();
+        renamedKeys.addAndGet(s.renamed());
+        unmappedKeys.addAndGet(s.unmapped());
+        if (s.newer()) newerSchema.incrementAndGet();
+        schemaCompileUs = compileUs;
+    }
+    public void onBadSchema()     { badSchema.incrementAndGet(); }
+    public void onUnknownKeys(long n) { unknownKeys.addAndGet(n); }   // JSON keys the schema didn't list
+    public void onUnadvertised()  { unadvertised.incrementAndGet(); }  // a field the schema didn't list, per link
+
+    public long frames()     { return frames.get(); }
+    public long samples()    { return samples.get(); }
+    public long badFrames()  { return badFrames.get(); }
+    public long lost()       { return lost.get(); }
+    public long reconnects() { return reconnects.get(); }
+
+    public void reset() {
+        decode.reset(); merge.reset(); publish.reset(); render.reset(); draw.reset();
+        frames.set(0); samples.set(0); badFrames.set(0); lost.set(0); reconnects.set(0); publishes.set(0);
+        schemas.set(0); noSchema.set(0); badSchema.set(0); renamedKeys.set(0); unmappedKeys.set(0); newerSchema.set(0);
+        unknownKeys.set(0); unadvertised.set(0);
+        synchronized (this) {
+            sinceNanos = windowNanos = System.nanoTime();
+            windowFrames = windowSamples = 0;
+        }
+    }
+
+    // ===== Sampled logging =====
+
+    public static final int LOG_BAD_FRAME = 0;
+    public static final int LOG_LOSS = 1;
+    private static final long LOG_INTERVAL_NANOS = 5_000_000_000L;
+    private final AtomicLongArray lastLog = new AtomicLongArray(2);
+
+    // True when a warning of this kind may be logged now: always with `adb shell setprop
+    // log.tag.NeuroRideBLE DEBUG`, otherwise at most once per 5 s. Build the message only if true.
+    public boolean shouldLog(int kind) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) return true;
+        long now = System.nanoTime();
+        long last = lastLog.get(kind);
+        return (last == 0 || now - last >= LOG_INTERVAL_NANOS) && lastLog.compareAndSet(kind, last, now);
+    }
+
+    // ===== Report / export =====
+
+    public synchronized String report() {
+        long now = System.nanoTime();
+        long f = frames.get(), s = samples.get();
+        double secs = Math.max(1e-3, (now - windowNanos) / 1e9);
+        double fps = (f - windowFrames) / secs, sps = (s - windowSamples) / secs;
+        windowNanos = now;
+        windowFrames = f;
+        windowSamples = s;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "uptime     %.0f s%n", (now - sinceNanos) / 1e9));
+        sb.append(String.format(Locale.US, "packets/s  %.1f   samples/s %.1f%n", fps, sps));
+        sb.append(String.format(Locale.US, "frames     %d   samples %d   published %d%n", f, s, publishes.get()));
+        sb.append(String.format(Locale.US, "bad frames %d   lost %d   reconnects %d%n", badFrames.get(), lost.get(), reconnects.get()));
+        sb.append(String.format(Locale.US, "schema     advertised %d (newer %d, bad %d) none %d, compile %d us%n",
+                schemas.get(), newerSchema.get(), badSchema.get(), noSchema.get(), schemaCompileUs));
+        sb.append(String.format(Locale.US, "mapping    renamed %d unmapped %d, unknown keys %d, unadvertised fields %d%n",
+                renamedKeys.get(), unmappedKeys.get(), unknownKeys.get(), unadvertised.get()));
+        for (LatencyHistogram h : new LatencyHistogram[]{decode, merge, publish, render, draw}) sb.append(h.summary()).append('\n');
+        TelemetryBus b = bus;
+        if (b != null) sb.append(b.report());
+        return sb.toString();
+    }
+
+    // Writes the report plus every histogram's buckets (upperUs,count) to dir/metrics-<millis>.txt
+    public File export(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        StringBuilder sb = new StringBuilder(report());
+        for (LatencyHistogram h : new LatencyHistogram[]{decode, merge, publish, render, draw}) {
+            sb.append("\n# ").append(h.name).append(" upperUs,count\n");
+            h.appendBuckets(sb);
+        }
+        File out = new File(dir, "metrics-" + System.currentTimeMillis() + ".txt");
+        try (FileOutputStream os = new FileOutputStream(out)) {
+            os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.neuroridev2;
+
+// Transport-independent half of the telemetry path: frame -> TelemetryCodec -> sequence
+// accounting -> phone clock -> Output. Plain Java so LoadTestRunner can drive it off-device.
+// Single-threaded: call onFrame from the thread that receives notifications.
+//
+// JSON frames go through the board's TelemetrySchema (setSchema(), from the connect); fields
+// a frame carries that the schema didn't list are collected in unadvertisedFields(), keys it
+// doesn't know at all are counted in unknownKeys().
+//
+// Raw accelerometer frames (type 0x03) are decoded into AccelDsp's arrays first and processed
+// as a whole frame, so each sample reaches Output with tilt / lean / jerk and the low- and
+// high-passed g-force (smoothG / dynamicG) filled in.
+public final class TelemetryPipeline {
+
+    public interface Output {
+        // tMs is on the receiver's clock; `s` is scratch and is overwritten by the next sample.
+        void onSample(long tMs, TelemetrySample s);
+    }
+
+    private final Output out;
+    private final TelemetrySample sample = new TelemetrySample();
+    private final SequenceTracker seqTracker = new SequenceTracker();
+    private final DeviceClock deviceClock = new DeviceClock();
+    private long rxMs;   // receive time of the frame being decoded
+    private long frames, badFrames;
+    private final TelemetryCodec.SampleSink sink;
+    private volatile TelemetrySchema schema = TelemetrySchema.DEFAULT;
+    private volatile int unadvertised;
+    private volatile long unknownKeys;   // single writer
+
+    // Type 0x03: one frame's samples, collected for AccelDsp
+    private final AccelDsp dsp = new AccelDsp(new AccelDsp.Config());
+    private final long[] accelSeq = new long[AccelDsp.CAPACITY], accelTime = new long[AccelDsp.CAPACITY];
+    private final TelemetryCodec.SampleSink accelSink;
+    private int accelCount;
+    private long nextAccelSeq = -1;
+
+    public TelemetryPipeline(Output out) {
+        this.out = out;
+        this.sink = s -> {
+            if (!seqTracker.accept(s.seq)) return;
+            out.onSample(deviceClock.toLocal(s.deviceTimeMs, rxMs), s);
+        };
+        this.accelSink = s -> {
+            int i = accelCount++;
+            accelSeq[i] = s.seq;
+            accelTime[i] = s.deviceTimeMs;
+            dsp.ax[i] = (float) s.ax;
+            dsp.ay[i] = (float) s.ay;
+            dsp.az[i] = (float) s.az;
+        };
+    }
+
+    // Returns the number of samples in the frame, or -1 if it could not be decoded.
+    public int onFrame(byte[] data, int len, long rxElapsedMs) {
+        rxMs = rxElapsedMs;
+        frames++;
+        if (TelemetryCodec.frameType(data, len) == TelemetryCodec.TYPE_ACCEL) return onAccelFrame(data, len);
+        TelemetrySchema sc = schema;
+        int n = TelemetryCodec.decode(data, len, sample, sink, sc);
+        if (n < 0) badFrames++;
+        else if (n > 0) {
+            checkAdvertised(sc, sample.mask);
+            if (sample.unknownKeys != 0) unknownKeys = unknownKeys + sample.unknownKeys;
+        }
+        return n;
+    }
+
+    private void checkAdvertised(TelemetrySchema sc, int mask) {
+        if (!sc.advertised()) return;
+        int extra = mask & TelemetrySchema.KNOWN & ~sc.fieldMask();
+        if ((extra & ~unadvertised) != 0) unadvertised |= extra;
+    }
+
+    // The board's schema for this link; DEFAULT for boards that don't advertise one. Any thread.
+    public void setSchema(TelemetrySchema s) {
+        schema = s != null ? s : TelemetrySchema.DEFAULT;
+        unadvertised = 0;
+    }
+
+    public TelemetrySchema schema() { return schema; }
+
+    // Fields seen in frames that the schema didn't list (TelemetrySample bits)
+    public int unadvertisedFields() { return unadvertised; }
+
+    // JSON keys, since reset(), that the schema didn't list. Any thread.
+    public long unknownKeys() { return unknownKeys; }
+
+    private int onAccelFrame(byte[] data, int len) {
+        accelCount = 0;
+        int n = TelemetryCodec.decode(data, len, sample, accelSink);
+        if (n < 0) { badFrames++; return n; }
+        if (n == 0) return 0;
+        checkAdvertised(schema, sample.mask);
+        if (accelSeq[0] != nextAccelSeq) dsp.reset();   // lost frame or new link: don't filter across the gap
+        nextAccelSeq = accelSeq[n - 1] + 1;
+        dsp.process(n, TelemetryCodec.accelPeriodUs(data) / 1e6);
+
+        // `sample` still holds the header fields (temp, battery, volt, mask) of the frame
+        TelemetrySample s = sample;
+        for (int i = 0; i < n; i++) {
+            s.seq = accelSeq[i];
+            s.deviceTimeMs = accelTime[i];
+            s.ax = dsp.ax[i];
+            s.ay = dsp.ay[i];
+            s.az = dsp.az[i];
+            s.gforce = dsp.mag[i];
+            s.tilt = dsp.tilt[i];
+            s.lean = dsp.lean[i];
+            s.jerk = dsp.jerk[i];
+            s.smoothG = dsp.smooth[i];
+            s.dynamicG = dsp.dyn[i];
+            sink.onSample(s);
+        }
+        return n;
+    }
+
+    public SequenceTracker sequence() { return seqTracker; }
+    public long frames()    { return frames; }
+    public long badFrames() { return badFrames; }
+
+    // New link: the board may have restarted (seq and millis() from 0 again), so forget the
+    // expected seq, the clock offset and the filter state. Totals stay.
+    public void rearm() {
+        seqTracker.rearm();
+        deviceClock.reset();
+        dsp.reset();
+        nextAccelSeq = -1;
+    }
+
+    public void reset() {
+        seqTracker.reset();
+        deviceClock.reset();
+        dsp.reset();
+        nextAccelSeq = -1;
+        frames = badFrames = 0;
+        unknownKeys = 0;
+    }
+}
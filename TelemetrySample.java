@@ -0,0 +1,62 @@
+package com.example.neuroridev2;
+
+// Mutable holder for one decoded telemetry sample.
+// One instance is reused for every notification so the hot path never allocates.
+public final class TelemetrySample {
+
+    // ===== Field presence bits (same values as the firmware frame mask) =====
+    public static final int GFORCE = 1;
+    public static final int TEMP   = 1 << 1;
+    public static final int SPEED  = 1 << 2;
+    public static final int BAT    = 1 << 3;
+    public static final int VOLT   = 1 << 4;
+    public static final int ACCEL  = 1 << 5;   // raw ax/ay/az (frame type 0x03); gforce is then |a|
+
+    public int mask;
+    public long seq = -1;       // running sample index from batch frames, -1 when the frame has none
+    public long deviceTimeMs;   // ESP32 millis() at sampling, 0 for JSON frames
+    public double gforce = Double.NaN;
+    public double temp   = Double.NaN;
+    public double speed  = Double.NaN;
+    public double volt   = Double.NaN;
+    public int battery   = -1;
+    public int device    = -1;  // board index in the merged stream (TelemetryBus), -1 before merging
+    public int unknownKeys;     // JSON frames: keys the schema didn't list; set by decode, never merged
+
+    // Raw axes in g, with ACCEL
+    public double ax = Double.NaN, ay = Double.NaN, az = Double.NaN;
+    // Derived by AccelDsp from the raw axes, NaN otherwise
+    public double tilt = Double.NaN;   // degrees from upright (board z axis against gravity)
+    public double lean = Double.NaN;   // degrees, signed roll about the board's x (forward) axis
+    public double jerk = Double.NaN;   // g/s, magnitude of the change of the acceleration vector
+    public double smoothG = Double.NaN;   // gforce low-passed: the road buzz removed
+    public double dynamicG = Double.NaN;  // |a - gravity|, the high-passed part on top of 1 g
+
+    public boolean has(int field) { return (mask & field) != 0; }
+
+    public void clear() {
+        mask = 0;
+        seq = -1;
+        deviceTimeMs = 0;
+        gforce = temp = speed = volt = Double.NaN;
+        battery = -1;
+        device = -1;
+        unknownKeys = 0;
+        ax = ay = az = tilt = lean = jerk = smoothG = dynamicG = Double.NaN;
+    }
+
+    public void set(TelemetrySample o) {
+        mask = o.mask;
+        seq = o.seq;
+        deviceTimeMs = o.deviceTimeMs;
+        gforce = o.gforce;
+        temp = o.temp;
+        speed = o.speed;
+        volt = o.volt;
+        battery = o.battery;
+        device = o.device;
+        ax = o.ax; ay = o.ay; az = o.az;
+        tilt = o.tilt; lean = o.lean; jerk = o.jerk;
+        smoothG = o.smoothG; dynamicG = o.dynamicG;
+    }
+}
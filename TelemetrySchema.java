@@ -0,0 +1,271 @@
+package com.example.neuroridev2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// What a board sends and what it calls each field, read once per connect from the schema
+// characteristic and compiled into a dispatch table for the JSON path. The payload is ASCII:
+//
+//   <version>;<key>,<key>,...        e.g. "1;accel,gforce,temp,volt,batpct"
+//
+// keys in the order the board writes them. Each key is looked up once, here, against the names
+// the app knows for every TelemetrySample field (the first is the app's own, the rest are names
+// firmware has used), giving one slot per key: its bytes and the field it fills. decodeJson()
+// then walks the payload bytes and matches each key against the slot expected next (one byte
+// compare in the usual case, every slot if the board reorders), with no String or hash per key.
+// Keys the schema didn't list are skipped and counted (TelemetrySample.unknownKeys), never guessed.
+//
+// Boards without the characteristic get DEFAULT: every known name, so old firmware still works.
+// Immutable; one instance may be shared by several devices' threads. SchemaTestRunner checks it.
+public final class TelemetrySchema {
+
+    public static final int VERSION = 1;   // highest schema version this app knows
+
+    private static final int[] FIELDS = {TelemetrySample.GFORCE, TelemetrySample.TEMP, TelemetrySample.SPEED,
+            TelemetrySample.BAT, TelemetrySample.VOLT, TelemetrySample.ACCEL};
+    private static final String[][] NAMES = {
+            {"gforce", "g"},
+            {"temp", "tempc"},
+            {"speed", "kmh"},
+            {"bat", "batpct", "battery"},
+            {"volt", "vbat"},
+            {"accel"},   // raw frames (type 0x03) only; never a JSON number
+    };
+    public static final int KNOWN = TelemetrySample.GFORCE | TelemetrySample.TEMP | TelemetrySample.SPEED
+            | TelemetrySample.BAT | TelemetrySample.VOLT | TelemetrySample.ACCEL;
+
+    public static final TelemetrySchema DEFAULT = defaults();
+
+    public final int version;          // 0: not advertised (DEFAULT)
+    final byte[][] keys;               // per slot
+    final int[] field;                 // per slot, TelemetrySample bit; 0 = not one the app knows
+    private final String[] names;
+    private final int fieldMask;       // fields the board said it sends
+    private final int renamed, unmapped;
+
+    private TelemetrySchema(int version, String[] names, boolean countRenames) {
+        this.version = version;
+        this.names = names;
+        keys = new byte[names.length][];
+        field = new int[names.length];
+        int mask = 0, ren = 0, unm = 0;
+        for (int i = 0; i < names.length; i++) {
+            keys[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+            field[i] = fieldFor(names[i]);
+            if (field[i] == 0) unm++;
+            else if (!names[i].equals(canonicalName(field[i]))) ren++;
+            mask |= field[i];
+        }
+        fieldMask = mask;
+        renamed = countRenames ? ren : 0;
+        unmapped = unm;
+    }
+
+    private static TelemetrySchema defaults() {
+        int n = 0;
+        for (String[] a : NAMES) n += a.length;
+        String[] all = new String[n];
+        n = 0;
+        for (String[] a : NAMES) for (String s : a) all[n++] = s;
+        return new TelemetrySchema(0, all, false);
+    }
+
+    // Compiles the schema characteristic's value; null if it isn't one
+    public static TelemetrySchema parse(byte[] data, int len) {
+        if (data == null || len <= 0) return null;
+        String s = new String(data, 0, len, StandardCharsets.US_ASCII).trim();
+        int semi = s.indexOf(';');
+        if (semi <= 0) return null;
+        int version;
+        try { version = Integer.parseInt(s.substring(0, semi).trim()); } catch (NumberFormatException e) { return null; }
+        if (version < 1) return null;
+        String[] names = s.substring(semi + 1).split(",");
+        int n = 0;
+        for (String name : names) {
+            String k = name.trim().toLowerCase(Locale.US);
+            if (!k.isEmpty()) names[n++] = k;
+        }
+        if (n == 0) return null;
+        String[] keys = new String[n];
+        System.arraycopy(names, 0, keys, 0, n);
+        return new TelemetrySchema(version, keys, true);
+    }
+
+    // TelemetrySample bit for a field name, 0 if the app doesn't know it
+    public static int fieldFor(String name) {
+        for (int f = 0; f < NAMES.length; f++) for (String n : NAMES[f]) if (n.equals(name)) return FIELDS[f];
+        return 0;
+    }
+
+    static String canonicalName(int field) {
+        for (int f = 0; f < FIELDS.length; f++) if (FIELDS[f] == field) return NAMES[f][0];
+        return null;
+    }
+
+    // ===== About the mapping =====
+
+    public boolean advertised()  { return version > 0; }
+    public boolean newer()       { return version > VERSION; }   // mapped by name all the same
+    public int fieldMask()       { return fieldMask; }
+    public int slots()           { return keys.length; }
+    public String key(int slot)  { return names[slot]; }
+    public int field(int slot)   { return field[slot]; }
+    public int renamed()         { return renamed; }    // known fields under another name (batpct)
+    public int unmapped()        { return unmapped; }   // keys the app has no field for
+    // Fields the app knows and the board didn't list (DEFAULT: none)
+    public int missing()         { return advertised() ? KNOWN & ~fieldMask & ~TelemetrySample.ACCEL : 0; }
+
+    @Override public String toString() {
+        if (!advertised()) return "schema: not advertised, all known names";
+        StringBuilder sb = new StringBuilder("schema v").append(version).append(':');
+        for (int i = 0; i < names.length; i++) {
+            sb.append(' ').append(names[i]);
+            if (field[i] == 0) sb.append("(?)");
+            else if (!names[i].equals(canonicalName(field[i]))) sb.append("->").append(canonicalName(field[i]));
+        }
+        return sb.toString();
+    }
+
+    // ===== JSON frames =====
+
+    // Flat object of numbers: {"key":number,...}. Strings, true / false / null are skipped; nested
+    // values or anything else malformed fail the frame, whether or not the schema lists the key.
+    // Returns false with `out` cleared on failure; keys not in the schema are counted in out.unknownKeys.
+    public boolean decodeJson(byte[] d, int len, TelemetrySample out) {
+        int i = skipWs(d, 0, len);
+        if (i >= len || d[i] != '{') return fail(out);
+        i = skipWs(d, i + 1, len);
+        int mask = 0, expect = 0, unknown = 0;
+        if (i < len && d[i] == '}') { out.mask = 0; return true; }
+        while (true) {
+            if (i >= len || d[i] != '"') return fail(out);
+            int ks = ++i;
+            while (i < len && d[i] != '"') { if (d[i] == '\\') return fail(out); i++; }
+            if (i >= len) return fail(out);
+            int kl = i - ks;
+            i = skipWs(d, i + 1, len);
+            if (i >= len || d[i] != ':') return fail(out);
+            i = skipWs(d, i + 1, len);
+            if (i >= len) return fail(out);
+
+            int slot = find(d, ks, kl, expect);
+            byte c = d[i];
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                int end = numberEnd(d, i, len);
+                double v = parseNumber(d, i, end);
+                if (Double.isNaN(v)) return fail(out);
+                if (slot >= 0 && field[slot] != 0 && field[slot] != TelemetrySample.ACCEL) {
+                    set(out, field[slot], v);
+                    mask |= field[slot];
+                }
+                i = end;
+            } else if (c == '"') {
+                i++;
+                while (i < len && d[i] != '"') i += d[i] == '\\' ? 2 : 1;
+                if (i >= len) return fail(out);
+                i++;
+            } else if (c == 't' || c == 'f' || c == 'n') {
+                byte[] lit = c == 't' ? TRUE : c == 'f' ? FALSE : NULL;
+                if (len - i < lit.length || !same(lit, d, i, lit.length)) return fail(out);
+                i += lit.length;
+            } else {
+                return fail(out);
+            }
+            if (slot < 0) unknown++;
+            else expect = slot + 1;
+
+            i = skipWs(d, i, len);
+            if (i >= len) return fail(out);
+            if (d[i] == '}') break;
+            if (d[i] != ',') return fail(out);
+            i = skipWs(d, i + 1, len);
+        }
+        out.mask = mask;
+        out.unknownKeys = unknown;
+        return true;
+    }
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'}, FALSE = {'f', 'a', 'l', 's', 'e'}, NULL = {'n', 'u', 'l', 'l'};
+
+    // The handlers: one per field the app knows
+    private static void set(TelemetrySample out, int field, double v) {
+        switch (field) {
+            case TelemetrySample.GFORCE: out.gforce = v; break;
+            case TelemetrySample.TEMP:   out.temp = v; break;
+            case TelemetrySample.SPEED:  out.speed = v; break;
+            case TelemetrySample.BAT:    out.battery = (int) Math.round(v); break;
+            case TelemetrySample.VOLT:   out.volt = v; break;
+        }
+    }
+
+    private int find(byte[] d, int off, int n, int expect) {
+        if (expect < keys.length && same(keys[expect], d, off, n)) return expect;
+        for (int s = 0; s < keys.length; s++) if (s != expect && same(keys[s], d, off, n)) return s;
+        return -1;
+    }
+
+    private static boolean same(byte[] key, byte[] d, int off, int n) {
+        if (key.length != n) return false;
+        for (int j = 0; j < n; j++) if (key[j] != d[off + j]) return false;
+        return true;
+    }
+
+    private static boolean fail(TelemetrySample out) {
+        out.clear();
+        return false;
+    }
+
+    private static int skipWs(byte[] d, int i, int len) {
+        while (i < len && (d[i] == ' ' || d[i] == '\n' || d[i] == '\r' || d[i] == '\t')) i++;
+        return i;
+    }
+
+    private static int numberEnd(byte[] d, int i, int len) {
+        while (i < len) {
+            byte c = d[i];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') i++;
+            else break;
+        }
+        return i;
+    }
+
+    private static final double[] POW10 = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    // JSON number in d[i, end); NaN if it isn't one. Up to 18 significant digits, plenty for sensors.
+    static double parseNumber(byte[] d, int i, int end) {
+        boolean neg = d[i] == '-';
+        if (neg) i++;
+        long mant = 0;
+        int digits = 0, scale = 0;
+        boolean any = false;
+        for (; i < end && d[i] >= '0' && d[i] <= '9'; i++) {
+            any = true;
+            if (digits < 18) { mant = mant * 10 + (d[i] - '0'); if (mant != 0) digits++; }
+            else scale++;
+        }
+        if (i < end && d[i] == '.') {
+            i++;
+            for (; i < end && d[i] >= '0' && d[i] <= '9'; i++) {
+                any = true;
+                if (digits < 18) { mant = mant * 10 + (d[i] - '0'); if (mant != 0) digits++; scale--; }
+            }
+        }
+        if (!any) return Double.NaN;
+        if (i < end && (d[i] == 'e' || d[i] == 'E')) {
+            i++;
+            boolean eneg = i < end && d[i] == '-';
+            if (i < end && (d[i] == '-' || d[i] == '+')) i++;
+            int e = 0;
+            boolean edigits = false;
+            for (; i < end && d[i] >= '0' && d[i] <= '9'; i++) { edigits = true; if (e < 1000) e = e * 10 + (d[i] - '0'); }
+            if (!edigits) return Double.NaN;
+            scale += eneg ? -e : e;
+        }
+        if (i != end) return Double.NaN;
+        double v = scale == 0 ? mant
+                : scale > 0 ? (scale < POW10.length ? mant * POW10[scale] : mant * Math.pow(10, scale))
+                : (-scale < POW10.length ? mant / POW10[-scale] : mant / Math.pow(10, -scale));
+        return neg ? -v : v;
+    }
+}
@@ -0,0 +1,463 @@
+package com.example.neuroridev2;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Binder;
+import android.os.Build;
+import android.os.CountDownTimer;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+// Owns the boards and everything that has to keep running without a screen: the ingest
+// pipeline, ride recording, the black box, crash detection with its SOS countdown, and the
+// uplink. Fragments and activities bind to it and only subscribe (Listener for events, bus() for
+// samples), so rotation, navigation and screen-off neither drop the links nor repeat scan +
+// connect + MTU + discovery. Every consumer of the merged stream is a TelemetryBus subscriber
+// with its own delivery policy, so none of them can hold up the merge thread.
+//
+// connect() starts it as a foreground service (connectedDevice, plus location when granted, so
+// the last fix stays fresh for an SOS); disconnect() stops the boards and lets it go once the
+// last client unbinds. While nobody is subscribed the merge thread ticks every BACKGROUND_TICK_MS
+// instead of every frame, so the stream is processed in larger batches with fewer wakeups.
+public class TelemetryService extends Service {
+
+    // Main thread
+    public interface Listener {
+        void onConnectionChanged(boolean anyConnected);
+        void onStateChanged(DeviceSession d, int state, int status);   // see MultiDeviceSessions.Callbacks
+        void onCrashCountdown(double peakG, int secondsLeft);
+        void onCrashCountdownCancelled();
+        void onSosSent(int result);   // SosDispatcher result, automatic or not
+    }
+
+    public final class LocalBinder extends Binder {
+        public TelemetryService service() { return TelemetryService.this; }
+    }
+
+    // ===== Boards =====
+    public static final String TARGET_NAME = "ESP32C3_JSON"; // change if your ESP name differs
+    static final UUID SERVICE_UUID = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
+    static final UUID CHAR_UUID    = UUID.fromString("6E400002-B5A3-F393-E0A9-E50E24DCCA9E");
+    static final UUID CONTROL_UUID = UUID.fromString("6E400003-B5A3-F393-E0A9-E50E24DCCA9E");
+    static final UUID SCHEMA_UUID  = UUID.fromString("6E400004-B5A3-F393-E0A9-E50E24DCCA9E");
+
+    // n8n webhook for the phone's batches. The board's SIM fallback posts single flat samples to
+    // .../MyEsp; these are gzipped columnar batches (see TelemetryUplink), so they get their own path.
+    private static final String UPLINK_URL = "http://n8n.nrv2.xyz/webhook-test/MyEspBatch";
+
+    private static final String TAG = "NeuroRideBLE";
+    private static final String ACTION_CONNECT = "com.example.neuroridev2.action.CONNECT";
+    private static final String ACTION_SIMULATE = "com.example.neuroridev2.action.SIMULATE";
+    private static final String ACTION_CANCEL_SOS = "com.example.neuroridev2.action.CANCEL_SOS";
+    private static final String ACTION_SOS = "com.example.neuroridev2.action.SOS";
+    private static final String CHANNEL_RIDE = "ride";
+    private static final String CHANNEL_ALERT = "crash";
+    private static final int NOTIF_RIDE = 1;
+    private static final int NOTIF_CRASH = 2;
+    private static final long FOREGROUND_TICK_MS = 10;
+    private static final long BACKGROUND_TICK_MS = 250;
+    public static final int SOS_COUNTDOWN_SEC = 15;
+    // A ride outlives every board dropping out (a tunnel, a power blip) for this long; disconnect()
+    // ends it at once
+    private static final long RIDE_IDLE_CLOSE_MS = 5 * 60_000;
+
+    private final LocalBinder binder = new LocalBinder();
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private volatile Listener[] listeners = new Listener[0];
+    private final TelemetryBus bus = new TelemetryBus(MultiDeviceSessions.MAX_DEVICES);
+
+    private MultiDeviceSessions sessions;
+    private volatile boolean anyConnected;
+    private boolean foreground;
+
+    // ===== Ride recording (files/rides/*.nrl) =====
+    private volatile RideRecorder recorder;
+    private final Runnable closeIdleRide = () -> {
+        RideRecorder r = recorder;
+        if (r != null && !anyConnected) r.stop();
+    };
+
+    // ===== Uplink: durable batched upload while a phone is connected (files/uplink/) =====
+    private volatile TelemetryUplink uplink;
+    private final long wallOffsetMs = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+    private ConnectivityManager connectivity;
+    private final ConnectivityManager.NetworkCallback onNetwork = new ConnectivityManager.NetworkCallback() {
+        @Override public void onAvailable(Network n) {
+            TelemetryUplink u = uplink;
+            if (u != null) u.kick();   // resume right away instead of after the backoff
+        }
+    };
+
+    // ===== Black box: last seconds before an SOS or a hard hit (files/blackbox/*.bin) =====
+    private volatile FlightRecorder blackBox;
+
+    // ===== Automatic crash detection → cancellable SOS countdown (one detector per board) =====
+    private final CrashDetector[] crashDetectors = newCrashDetectors();
+    private CountDownTimer crashTimer;
+    private double crashPeakG;
+    private int crashSecondsLeft;
+
+    // ===== SOS: cached fix + contacts, dispatch without waiting =====
+    private LastFixCache fixes;
+    private ContactsIndex contacts;
+    private SosDispatcher sos;
+
+    // Per board on its own thread, then merged across boards in time order
+    private final MultiDeviceSessions.Callbacks deviceCallbacks = new MultiDeviceSessions.Callbacks() {
+        @Override public void onDeviceSample(DeviceSession d, long t, TelemetrySample s) {
+            if (s.has(TelemetrySample.GFORCE)) crashDetectors[d.index].onSample(t, s.gforce, s.tilt);
+            FlightRecorder bb = blackBox;
+            if (bb != null) bb.onSample(d.index, t, s);
+        }
+
+        @Override public void onMergedSample(DeviceSession d, long t, TelemetrySample s) {
+            bus.publish(d.index, t, s);
+        }
+
+        @Override public void onLinkChanged(DeviceSession d, boolean up, int status) {
+            FlightRecorder bb = blackBox;
+            if (bb != null) bb.onLink(d.index, up, status, SystemClock.elapsedRealtime());
+            MultiDeviceSessions all = sessions;
+            boolean any = up || (all != null && all.anyConnected());
+            anyConnected = any;
+            TelemetryUplink u = uplink;
+            if (u != null && !any) u.flush();
+            RideRecorder r = recorder;
+            if (r != null) {
+                main.removeCallbacks(closeIdleRide);
+                if (up) r.start();
+                else if (!any) main.postDelayed(closeIdleRide, RIDE_IDLE_CLOSE_MS);
+            }
+            main.post(() -> {
+                if (fixes != null) { if (any) fixes.start(); else fixes.stop(); }   // low-power updates while riding
+                if (foreground) notifyRide();
+                for (Listener l : listeners) l.onConnectionChanged(any);
+            });
+        }
+
+        @Override public void onStateChanged(DeviceSession d, int state, int status) {
+            main.post(() -> { for (Listener l : listeners) l.onStateChanged(d, state, status); });
+        }
+    };
+
+    private CrashDetector[] newCrashDetectors() {
+        CrashDetector[] out = new CrashDetector[MultiDeviceSessions.MAX_DEVICES];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = new CrashDetector(new CrashDetector.Config(),
+                    (impactTimeMs, peakG, detectTimeMs) -> main.post(() -> startCrashCountdown(peakG)));
+        }
+        return out;
+    }
+
+    // ===== Clients =====
+
+    // Starts the service in the foreground and connects every board (remembered ones first).
+    // The caller checks the Bluetooth permissions.
+    public static void connect(Context ctx) { start(ctx, ACTION_CONNECT); }
+
+    // Bench testing without the ESP32
+    public static void simulate(Context ctx) { start(ctx, ACTION_SIMULATE); }
+
+    // Sends the SOS right away, starting the service if it isn't running (no ride, nothing bound).
+    // Bound clients get the result through Listener.onSosSent.
+    public static void sos(Context ctx) { start(ctx, ACTION_SOS); }
+
+    private static void start(Context ctx, String action) {
+        ContextCompat.startForegroundService(ctx, new Intent(ctx, TelemetryService.class).setAction(action));
+    }
+
+    public static boolean bind(Context ctx, android.content.ServiceConnection conn) {
+        return ctx.bindService(new Intent(ctx, TelemetryService.class), conn, Context.BIND_AUTO_CREATE);
+    }
+
+    // The listener also gets the current link state and any running countdown right away.
+    @MainThread public void addListener(Listener l) {
+        Listener[] next = Arrays.copyOf(listeners, listeners.length + 1);
+        next[next.length - 1] = l;
+        listeners = next;
+        if (sessions != null) sessions.setMergeTickMs(FOREGROUND_TICK_MS);
+        l.onConnectionChanged(anyConnected);
+        if (crashTimer != null) l.onCrashCountdown(crashPeakG, crashSecondsLeft);
+    }
+
+    @MainThread public void removeListener(Listener l) {
+        Listener[] cur = listeners;
+        Listener[] next = new Listener[cur.length];
+        int n = 0;
+        for (Listener x : cur) if (x != l) next[n++] = x;
+        listeners = Arrays.copyOf(next, n);
+        if (n == 0 && sessions != null) sessions.setMergeTickMs(BACKGROUND_TICK_MS);
+    }
+
+    // Merged samples, every board in time order; see TelemetryBus for the delivery policies
+    public TelemetryBus bus() { return bus; }
+
+    // Statistics of the ride in progress (a snapshot), or of every ride started in [fromEpochMs, toEpochMs)
+    @Nullable public RideStats rideStats() {
+        RideRecorder r = recorder;
+        RideStats st = r != null ? r.stats() : null;
+        return st != null ? st.snapshot() : null;
+    }
+
+    @WorkerThread public RideStats rideStats(long fromEpochMs, long toEpochMs) {
+        return RideStats.rollup(new File(getFilesDir(), "rides"), fromEpochMs, toEpochMs);
+    }
+
+    public boolean isConnected() { return anyConnected; }
+    public List<DeviceSession> devices() { return sessions.sessions(); }
+
+    // Forgets every remembered board; the next connect() discovers from scratch.
+    @MainThread public void forgetDevices() { sessions.forgetDevices(); }
+
+    // Stops every board; the service goes away once the last client unbinds.
+    @MainThread public void disconnect() {
+        sessions.stop();
+        main.removeCallbacks(closeIdleRide);
+        RideRecorder r = recorder;
+        if (r != null) r.stop();
+        anyConnected = false;
+        for (Listener l : listeners) l.onConnectionChanged(false);
+        if (foreground) {
+            ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+            foreground = false;
+        }
+        stopSelf();
+    }
+
+    // ===== Service =====
+
+    @Override public void onCreate() {
+        super.onCreate();
+        createChannels();
+        fixes = new LastFixCache(this);
+        contacts = new ContactsIndex(this);
+        sos = new SosDispatcher(this, contacts, fixes);
+        recorder = new RideRecorder(new File(getFilesDir(), "rides"));
+        blackBox = new FlightRecorder(new File(getFilesDir(), "blackbox"), new FlightRecorder.Config(),
+                (dump, records, error) -> {
+                    if (error != null) Log.w(TAG, "Black box dump failed", error);
+                    else Log.i(TAG, "Black box saved: " + dump.getName() + " (" + records + " records)");
+                });
+        startUplink();
+        // The ride log writes mapped blocks (remapping as the file grows), so it gets a queue of its
+        // own, drained on ride-io: the thread that also opens and saves the ride
+        TelemetryBus.Options rideLog = new TelemetryBus.Options();
+        rideLog.name = "ride log";
+        rideLog.executor = recorder.executor();
+        rideLog.device = 0;            // RideLog has no device column: first board only
+        rideLog.capacity = 1 << 13;    // ~40 s at 200 Hz, through a remap or the last ride's fsync
+        bus.subscribe(TelemetryBus.unbounded((device, t, s) -> {
+            RideRecorder r = recorder;
+            if (r != null) r.append(t, s);
+        }), rideLog);
+        // The uplink only copies into its in-memory batch; sealing and sending run on uplink-io
+        bus.subscribe(TelemetryBus.unbounded((device, t, s) -> {
+            TelemetryUplink u = uplink;
+            if (u != null) u.offer(device, wallOffsetMs + t, s);
+        }), TelemetryBus.inline("uplink"));
+        TelemetryMetrics.get().setBus(bus);
+        sessions = new MultiDeviceSessions(this, TARGET_NAME, SERVICE_UUID, CHAR_UUID, CONTROL_UUID, SCHEMA_UUID, deviceCallbacks);
+        sessions.setMergeTickMs(listeners.length > 0 ? FOREGROUND_TICK_MS : BACKGROUND_TICK_MS);
+    }
+
+    @Override public int onStartCommand(Intent intent, int flags, int startId) {
+        // A sticky restart after the process was killed mid-ride comes back with no intent: reconnect
+        String action = intent != null ? intent.getAction() : ACTION_CONNECT;
+        if (ACTION_CANCEL_SOS.equals(action)) {
+            cancelCrashCountdown();
+            return START_STICKY;
+        }
+        goForeground();
+        if (ACTION_SOS.equals(action)) {
+            sendSos();   // stays up for the fresh-fix follow-up; disconnect() ends it
+            return anyConnected ? START_STICKY : START_NOT_STICKY;
+        }
+        if (ACTION_SIMULATE.equals(action)) {
+            if (sessions.sessions().isEmpty()) {
+                sessions.add("Simulated " + TARGET_NAME, new SimulatedPeripheral(new SimulatedPeripheral.Config()));
+            }
+        } else {
+            sessions.start();   // keeps reconnecting every board until disconnect()
+        }
+        return START_STICKY;
+    }
+
+    @Override public IBinder onBind(Intent intent) { return binder; }
+
+    @Override public void onDestroy() {
+        super.onDestroy();
+        cancelCrashCountdown();
+        main.removeCallbacks(closeIdleRide);
+        if (sessions != null) { sessions.stop(); sessions = null; }
+        bus.close();
+        TelemetryMetrics.get().setBus(null);
+        if (recorder != null) { recorder.stop(); recorder.release(); recorder = null; }
+        if (blackBox != null) { blackBox.release(); blackBox = null; }
+        if (connectivity != null) { connectivity.unregisterNetworkCallback(onNetwork); connectivity = null; }
+        if (uplink != null) { uplink.stop(0); uplink = null; }
+        if (fixes != null) { fixes.stop(); fixes = null; }
+        if (sos != null) { sos.release(); sos = null; }
+        if (contacts != null) { contacts.release(); contacts = null; }
+    }
+
+    private void startUplink() {
+        TelemetryUplink.Config cfg = new TelemetryUplink.Config();
+        cfg.url = UPLINK_URL;
+        try {
+            uplink = new TelemetryUplink(new File(getFilesDir(), "uplink"), cfg);
+            uplink.start();   // also sends what earlier rides left queued
+        } catch (IOException e) {
+            Log.w(TAG, "Uplink disabled", e);
+            return;
+        }
+        connectivity = getSystemService(ConnectivityManager.class);
+        try {
+            if (connectivity != null) connectivity.registerDefaultNetworkCallback(onNetwork);
+        } catch (SecurityException se) {
+            connectivity = null;   // no ACCESS_NETWORK_STATE: the backoff still retries
+        }
+    }
+
+    // ===== Notifications =====
+
+    private void createChannels() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        NotificationManager nm = getSystemService(NotificationManager.class);
+        if (nm == null) return;
+        nm.createNotificationChannel(new NotificationChannel(CHANNEL_RIDE, "Ride telemetry", NotificationManager.IMPORTANCE_LOW));
+        nm.createNotificationChannel(new NotificationChannel(CHANNEL_ALERT, "Crash alerts", NotificationManager.IMPORTANCE_HIGH));
+    }
+
+    private void goForeground() {
+        int types = ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE;
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
+            types |= ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION;
+        }
+        try {
+            ServiceCompat.startForeground(this, NOTIF_RIDE, rideNotification(), types);
+            foreground = true;
+        } catch (RuntimeException e) {
+            // Not allowed from the background (Android 12+) or missing permission: run bound-only
+            Log.w(TAG, "Foreground start refused", e);
+        }
+    }
+
+    private void notifyRide() {
+        NotificationManager nm = getSystemService(NotificationManager.class);
+        if (nm != null) nm.notify(NOTIF_RIDE, rideNotification());
+    }
+
+    private Notification rideNotification() {
+        int n = 0;
+        MultiDeviceSessions all = sessions;
+        if (all != null) for (DeviceSession d : all.sessions()) if (d.isConnected()) n++;
+        return new NotificationCompat.Builder(this, CHANNEL_RIDE)
+                .setSmallIcon(getApplicationInfo().icon)
+                .setContentTitle("NeuroRide")
+                .setContentText(n == 0 ? "Connecting to " + TARGET_NAME + "..." : n == 1 ? "Board connected" : n + " boards connected")
+                .setContentIntent(openApp())
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setCategory(NotificationCompat.CATEGORY_SERVICE)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .build();
+    }
+
+    private PendingIntent openApp() {
+        Intent launch = getPackageManager().getLaunchIntentForPackage(getPackageName());
+        if (launch == null) return null;
+        launch.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        return PendingIntent.getActivity(this, 0, launch, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    // Only when no screen shows the countdown, e.g. phone in a pocket with the screen off
+    private void notifyCrash(int secondsLeft) {
+        NotificationManager nm = getSystemService(NotificationManager.class);
+        if (nm == null) return;
+        PendingIntent cancel = PendingIntent.getService(this, 1,
+                new Intent(this, TelemetryService.class).setAction(ACTION_CANCEL_SOS), PendingIntent.FLAG_IMMUTABLE);
+        nm.notify(NOTIF_CRASH, new NotificationCompat.Builder(this, CHANNEL_ALERT)
+                .setSmallIcon(getApplicationInfo().icon)
+                .setContentTitle("Crash detected")
+                .setContentText("Sending SOS in " + secondsLeft + " s")
+                .setContentIntent(openApp())
+                .setFullScreenIntent(openApp(), true)
+                .addAction(0, "I'm OK", cancel)
+                .setOnlyAlertOnce(true)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .build());
+    }
+
+    private void cancelCrashNotification() {
+        NotificationManager nm = getSystemService(NotificationManager.class);
+        if (nm != null) nm.cancel(NOTIF_CRASH);
+    }
+
+    // ===== Crash countdown / SOS =====
+
+    @MainThread private void startCrashCountdown(double peakG) {
+        if (crashTimer != null) return;
+        Log.w(TAG, "Crash detected, peak " + peakG + " g");
+        crashPeakG = peakG;
+        crashSecondsLeft = SOS_COUNTDOWN_SEC;
+        crashTimer = new CountDownTimer(SOS_COUNTDOWN_SEC * 1000L, 1000) {
+            @Override public void onTick(long left) {
+                crashSecondsLeft = (int) (left / 1000 + 1);
+                for (Listener l : listeners) l.onCrashCountdown(crashPeakG, crashSecondsLeft);
+                if (listeners.length == 0) notifyCrash(crashSecondsLeft);
+            }
+            @Override public void onFinish() {
+                crashTimer = null;
+                cancelCrashNotification();
+                sendSos();
+            }
+        }.start();
+    }
+
+    @MainThread public void cancelCrashCountdown() {
+        if (crashTimer == null) return;
+        crashTimer.cancel();
+        crashTimer = null;
+        cancelCrashNotification();
+        for (Listener l : listeners) l.onCrashCountdownCancelled();
+    }
+
+    // Freezes the black box and sends the SOS from the cached fix; SosDispatcher follows up with a
+    // fresh one by itself.
+    @MainThread public int sendSos() {
+        long pressedMs = SystemClock.elapsedRealtime();
+        cancelCrashCountdown();
+        FlightRecorder bb = blackBox;
+        if (bb != null) bb.freeze(FlightRecorder.REASON_SOS, pressedMs);   // the seconds before the press
+        int result = sos.dispatch(pressedMs);
+        for (Listener l : listeners) l.onSosSent(result);
+        return result;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.neuroridev2;
+
+// Immutable view of every telemetry field at one display frame.
+// Values are the newest seen for each field; peakGforce covers all samples folded in since the last snapshot.
+public final class TelemetrySnapshot {
+
+    public static final TelemetrySnapshot EMPTY =
+            new TelemetrySnapshot(0, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, -1, Double.NaN, 0);
+
+    public final int mask;             // TelemetrySample field bits seen so far
+    public final long deviceTimeMs;
+    public final double gforce, temp, speed, volt;
+    public final int battery;
+    public final double peakGforce;
+    public final int samples;          // samples coalesced into this snapshot
+
+    public TelemetrySnapshot(int mask, long deviceTimeMs, double gforce, double temp, double speed,
+                             double volt, int battery, double peakGforce, int samples) {
+        this.mask = mask;
+        this.deviceTimeMs = deviceTimeMs;
+        this.gforce = gforce;
+        this.temp = temp;
+        this.speed = speed;
+        this.volt = volt;
+        this.battery = battery;
+        this.peakGforce = peakGforce;
+        this.samples = samples;
+    }
+
+    public boolean has(int field) { return (mask & field) != 0; }
+}
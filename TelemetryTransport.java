@@ -0,0 +1,34 @@
+package com.example.neuroridev2;
+
+// Where telemetry notifications come from: the ESP32 over GATT, or SimulatedPeripheral on a
+// bench or in the load test. Callbacks arrive on the transport's own thread (BleConnectionManager's
+// handler thread for GATT), all of them on that one thread, one at a time and in order.
+public interface TelemetryTransport {
+
+    interface Listener {
+        // The board's TelemetrySchema payload, read before notifications are enabled; not called
+        // for boards without a schema characteristic. `data` is only valid during the call.
+        void onSchema(byte[] data, int len);
+        // Link is up and notifications are enabled; mtu is the negotiated ATT MTU.
+        void onConnected(int mtu);
+        // One notification payload; `data` is only valid during the call.
+        void onFrame(byte[] data, int len);
+        // status is the GATT status code (e.g. 8 = supervision timeout).
+        void onDisconnected(int status);
+    }
+
+    // Link knobs for LinkTuner, on transports that have them. Calls may come from any thread and
+    // are applied asynchronously; each one replaces the previous setting.
+    interface LinkControl {
+        int PRIORITY_BALANCED = 0, PRIORITY_HIGH = 1, PRIORITY_LOW_POWER = 2;   // BluetoothGatt values
+
+        void setConnectionPriority(int priority);
+        void setPhy2M(boolean prefer2M);
+        // Asks the board to sample at hz; false when it can't be told (no control characteristic).
+        boolean requestSampleRate(int hz);
+    }
+
+    void start(Listener listener);
+    void stop();
+    boolean isConnected();
+}
@@ -0,0 +1,368 @@
+package com.example.neuroridev2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+// Phone-side uplink to the webhook, so the board never has to bring up its SIM module while a
+// phone is connected. Offline first:
+//
+//   offer()  samples (optionally thinned to one per sampleEveryMs) go into an in-memory batch
+//   seal     a batch that is full or older than batchMaxAgeMs is delta-encoded, gzipped and
+//            written to dir as tmp + rename, so the queue survives restarts and crashes
+//   send     the "uplink-io" thread POSTs the oldest file over a kept-alive HttpURLConnection and
+//            deletes it on 2xx; network errors, 408/429 and 5xx back off (exponential, jittered)
+//            and retry the same file, other 4xx drop it. kick() retries right away (network back).
+//
+// Only the batch still in memory is lost if the process dies. Delivery is at least once; every
+// POST carries X-Batch-Id so the receiver can drop repeats. Plain Java, no Android classes, so
+// UplinkTestRunner can run it against a local stand-in webhook.
+//
+// Body (Content-Encoding: gzip, Content-Type: application/json), integers in codec units:
+//   {"v":1,"id":"...","n":N,"t0":wallMs,"dt":[ms...],"dev":[...],"mask":[...],
+//    "g":[Δmg...],"temp":[Δc°C...],"speed":[Δc-km/h...],"bat":[Δ%...],"volt":[ΔmV...]}
+// Each value column holds deltas from the previous sample's value (0 when the field is absent).
+// A receiver restores sample i as t = t0 + dt[0..i] and value = sum of the column's [0..i], then
+// divides by the unit (g /1000, temp and speed /100, volt /1000) for the fields set in mask[i]
+// (TelemetrySample bits). This is not the flat {"gforce":..,"batpct":..} the board's SIM fallback
+// posts, so it goes to a webhook path of its own (TelemetryService.UPLINK_URL).
+public final class TelemetryUplink {
+
+    public static final class Config {
+        public String url;
+        public int batchSamples = 1000;
+        public long batchMaxAgeMs = 30_000;
+        public long sampleEveryMs = 100;        // per device; 0 sends every sample
+        public int maxQueuedBatches = 2000;     // oldest dropped beyond this
+        public long backoffMinMs = 1_000;
+        public long backoffMaxMs = 5 * 60_000;
+        public int connectTimeoutMs = 10_000;
+        public int readTimeoutMs = 15_000;
+    }
+
+    private static final String PREFIX = "batch-";
+    private static final String SUFFIX = ".json.gz";
+    private static final int MAX_DEVICES = 8;
+
+    private final File dir;
+    private final Config cfg;
+    private final URL url;
+    private final Random jitter = new Random();
+    private final Object wake = new Object();
+
+    // ===== In-memory batch (guarded by this) =====
+    private static final class Batch {
+        final long[] t;
+        final int[] dev, mask, g, temp, speed, bat, volt;
+        int n;
+        long openedNanos;
+
+        Batch(int cap) {
+            t = new long[cap];
+            dev = new int[cap]; mask = new int[cap]; g = new int[cap]; temp = new int[cap];
+            speed = new int[cap]; bat = new int[cap]; volt = new int[cap];
+        }
+    }
+
+    private Batch open;
+    private final ArrayDeque<Batch> sealed = new ArrayDeque<>();   // waiting for the I/O thread
+    private final ArrayDeque<Batch> spares = new ArrayDeque<>();   // written out, reusable
+    private final long[] lastKeptMs = new long[MAX_DEVICES];
+    private int batchCounter;                 // I/O thread only
+
+    private Thread thread;
+    private volatile boolean running;
+    private boolean kicked;                   // guarded by wake
+
+    private volatile long sentBatches, sentSamples, failures, dropped, bytesRaw, bytesQueued;
+    private volatile int lastStatus;
+
+    public TelemetryUplink(File dir, Config cfg) throws IOException {
+        this.dir = dir;
+        this.cfg = cfg;
+        this.url = new URL(cfg.url);
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        open = new Batch(cfg.batchSamples);
+        Arrays.fill(lastKeptMs, Long.MIN_VALUE);
+    }
+
+    // ===== Producer side (any thread) =====
+
+    // wallMs: wall-clock time of the sample.
+    public void offer(int device, long wallMs, TelemetrySample s) {
+        Batch full = null;
+        synchronized (this) {
+            int d = device & (MAX_DEVICES - 1);
+            if (cfg.sampleEveryMs > 0 && wallMs - lastKeptMs[d] < cfg.sampleEveryMs) return;
+            lastKeptMs[d] = wallMs;
+            Batch b = open;
+            int i = b.n;
+            if (i == 0) b.openedNanos = System.nanoTime();
+            b.t[i] = wallMs;
+            b.dev[i] = device;
+            b.mask[i] = s.mask;
+            b.g[i] = s.has(TelemetrySample.GFORCE) ? (int) Math.round(s.gforce * 1000) : 0;
+            b.temp[i] = s.has(TelemetrySample.TEMP) ? (int) Math.round(s.temp * 100) : 0;
+            b.speed[i] = s.has(TelemetrySample.SPEED) ? (int) Math.round(s.speed * 100) : 0;
+            b.bat[i] = s.has(TelemetrySample.BAT) ? s.battery : 0;
+            b.volt[i] = s.has(TelemetrySample.VOLT) ? (int) Math.round(s.volt * 1000) : 0;
+            b.n = i + 1;
+            if (b.n == b.t.length) full = sealLocked();
+        }
+        if (full != null) wake();
+    }
+
+    // Seal what is buffered now (ride ended, app going away).
+    public void flush() {
+        synchronized (this) { if (open.n > 0) sealLocked(); }
+        wake();
+    }
+
+    private Batch sealLocked() {
+        Batch b = open;
+        sealed.add(b);
+        open = spares.isEmpty() ? new Batch(cfg.batchSamples) : spares.poll();
+        open.n = 0;
+        return b;
+    }
+
+    // ===== Sender thread =====
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::loop, "uplink-io");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Seals the open batch and stops sending; the I/O thread writes what is left to disk on its way
+    // out. Waits up to waitMs for that (0: don't wait, e.g. on the main thread).
+    public void stop(long waitMs) {
+        flush();
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t == null) { sealPending(); return; }
+        wake();
+        if (waitMs <= 0) return;
+        try { t.join(waitMs); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+    // Retry now instead of waiting out the backoff, e.g. when the network comes back.
+    public void kick() { wake(); }
+
+    private void wake() {
+        synchronized (wake) { kicked = true; wake.notifyAll(); }
+    }
+
+    private void loop() {
+        int attempt = 0;
+        while (running) {
+            sealPending();
+            File next = oldest();
+            if (next == null) { sleep(cfg.batchMaxAgeMs / 4); continue; }
+            int result = send(next);
+            if (result == SENT || result == REJECTED) {
+                attempt = 0;
+                continue;
+            }
+            long cap = Math.min(cfg.backoffMaxMs, cfg.backoffMinMs << Math.min(attempt++, 20));
+            sleep(cap / 2 + (long) (jitter.nextDouble() * cap / 2));
+        }
+        sealPending();
+    }
+
+    // Writes sealed batches (and an open one past batchMaxAgeMs) to disk, outside the producer lock.
+    private void sealPending() {
+        while (true) {
+            Batch b;
+            synchronized (this) {
+                if (sealed.isEmpty() && open.n > 0
+                        && System.nanoTime() - open.openedNanos >= cfg.batchMaxAgeMs * 1_000_000L) {
+                    sealLocked();
+                }
+                b = sealed.poll();
+            }
+            if (b == null) return;
+            writeBatch(b);
+            synchronized (this) { spares.add(b); }
+        }
+    }
+
+    private void sleep(long ms) {
+        synchronized (wake) {
+            if (!kicked && running) {
+                try { wake.wait(Math.max(1, ms)); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+            kicked = false;
+        }
+    }
+
+    // ===== Durable queue =====
+
+    // File name: batch-<first sample wall ms>-<counter>_<samples>.json.gz
+    private void writeBatch(Batch b) {
+        if (b.n == 0) return;
+        String id = String.format(Locale.US, "%013d-%04d", b.t[0], batchCounter++ % 10_000);
+        byte[] json = encode(id, b).getBytes(StandardCharsets.UTF_8);
+        File tmp = new File(dir, PREFIX + id + ".tmp");
+        File out = new File(dir, PREFIX + id + "_" + b.n + SUFFIX);
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp); GZIPOutputStream gz = new GZIPOutputStream(fos)) {
+                gz.write(json);
+                gz.finish();
+                fos.getFD().sync();
+            }
+            if (!tmp.renameTo(out)) throw new IOException("Cannot rename to " + out);
+            bytesRaw += json.length;
+            bytesQueued += out.length();
+        } catch (IOException e) {
+            failures++;
+            tmp.delete();
+        }
+        b.n = 0;
+        trim();
+    }
+
+    private File[] queued() {
+        File[] fs = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (fs == null) return new File[0];
+        Arrays.sort(fs, (a, b) -> a.getName().compareTo(b.getName()));   // first sample time in the name
+        return fs;
+    }
+
+    private File oldest() {
+        File[] fs = queued();
+        return fs.length == 0 ? null : fs[0];
+    }
+
+    private void trim() {
+        File[] fs = queued();
+        for (int i = 0; i < fs.length - cfg.maxQueuedBatches; i++) {
+            if (fs[i].delete()) dropped++;
+        }
+    }
+
+    public int queuedBatches() { return queued().length; }
+
+    // ===== HTTP =====
+
+    private static final int SENT = 0, RETRY = 1, REJECTED = 2;
+
+    private int send(File f) {
+        byte[] body;
+        try { body = readAll(f); } catch (IOException e) { f.delete(); return REJECTED; }
+        String name = f.getName();
+        int us = name.lastIndexOf('_');
+        String id = name.substring(PREFIX.length(), us);
+        int samples = Integer.parseInt(name.substring(us + 1, name.length() - SUFFIX.length()));
+
+        HttpURLConnection c = null;
+        try {
+            c = (HttpURLConnection) url.openConnection();
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            c.setConnectTimeout(cfg.connectTimeoutMs);
+            c.setReadTimeout(cfg.readTimeoutMs);
+            c.setRequestProperty("Content-Type", "application/json");
+            c.setRequestProperty("Content-Encoding", "gzip");
+            c.setRequestProperty("X-Batch-Id", id);
+            c.setFixedLengthStreamingMode(body.length);
+            try (OutputStream os = c.getOutputStream()) { os.write(body); }
+            int code = c.getResponseCode();
+            lastStatus = code;
+            drain(code < 400 ? c.getInputStream() : c.getErrorStream());   // fully read: the socket goes back to the pool
+
+            if (code >= 200 && code < 300) {
+                f.delete();
+                sentBatches++;
+                sentSamples += samples;
+                return SENT;
+            }
+            failures++;
+            if (code == 408 || code == 429 || code >= 500) return RETRY;
+            f.delete();   // the server will never take this one
+            dropped++;
+            return REJECTED;
+        } catch (IOException e) {
+            failures++;
+            lastStatus = -1;
+            if (c != null) c.disconnect();   // don't hand a broken socket back to the pool
+            return RETRY;
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) return;
+        byte[] buf = new byte[512];
+        try { while (in.read(buf) >= 0) { /* discard */ } } finally { in.close(); }
+    }
+
+    private static byte[] readAll(File f) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream((int) f.length());
+        try (InputStream in = new FileInputStream(f)) {
+            byte[] buf = new byte[8192];
+            int r;
+            while ((r = in.read(buf)) > 0) bos.write(buf, 0, r);
+        }
+        return bos.toByteArray();
+    }
+
+    // ===== Encoding =====
+
+    static String encode(String id, Batch b) {
+        StringBuilder sb = new StringBuilder(64 + b.n * 24);
+        sb.append("{\"v\":1,\"id\":\"").append(id).append("\",\"n\":").append(b.n).append(",\"t0\":").append(b.t[0]);
+        sb.append(",\"dt\":[");
+        for (int i = 0; i < b.n; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(i == 0 ? 0 : b.t[i] - b.t[i - 1]);
+        }
+        sb.append(']');
+        column(sb, "dev", b.dev, b.n, false);
+        column(sb, "mask", b.mask, b.n, false);
+        column(sb, "g", b.g, b.n, true);
+        column(sb, "temp", b.temp, b.n, true);
+        column(sb, "speed", b.speed, b.n, true);
+        column(sb, "bat", b.bat, b.n, true);
+        column(sb, "volt", b.volt, b.n, true);
+        return sb.append('}').toString();
+    }
+
+    private static void column(StringBuilder sb, String name, int[] v, int n, boolean delta) {
+        sb.append(",\"").append(name).append("\":[");
+        int prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(delta ? v[i] - prev : v[i]);
+            prev = v[i];
+        }
+        sb.append(']');
+    }
+
+    // ===== Status (any thread) =====
+
+    public long sentBatches() { return sentBatches; }
+    public long sentSamples() { return sentSamples; }
+    public long failures()    { return failures; }
+    public long dropped()     { return dropped; }
+    public int lastStatus()   { return lastStatus; }
+    // gzipped bytes / JSON bytes of everything queued so far
+    public double compressionRatio() { return bytesRaw == 0 ? 0 : (double) bytesQueued / bytesRaw; }
+}
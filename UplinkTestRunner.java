@@ -0,0 +1,227 @@
+package com.example.neuroridev2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// Runs TelemetryUplink against a local stand-in for the n8n webhook (the JDK's built-in HTTP
+// server) that can go down or answer 5xx, and checks that every sample arrives exactly once after
+// de-duplicating on X-Batch-Id, that the queue survives an uplink restart, and that connections
+// are reused.
+//
+//   java com.example.neuroridev2.UplinkTestRunner
+public final class UplinkTestRunner {
+
+    // ===== Stand-in webhook =====
+
+    static final class Webhook {
+        final HttpServer server;
+        final Set<String> batches = new HashSet<>();
+        final Set<Long> times = new HashSet<>();
+        final Set<Integer> clientPorts = new HashSet<>();
+        final Random rnd = new Random(7);
+        volatile boolean down;             // 503 for everything
+        volatile double failRate;          // share of POSTs answered 500 after reading them
+        int posts, duplicates, samples, badSamples;
+        long wireBytes;
+
+        Webhook() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/webhook/MyEspBatch", this::handle);
+            server.start();
+        }
+
+        String url() { return "http://127.0.0.1:" + server.getAddress().getPort() + "/webhook/MyEspBatch"; }
+        void close() { server.stop(0); }
+
+        private synchronized void handle(HttpExchange ex) throws IOException {
+            byte[] body = readAll(ex.getRequestBody());
+            posts++;
+            clientPorts.add(ex.getRemoteAddress().getPort());
+            if (down) { reply(ex, 503); return; }
+            int code = rnd.nextDouble() < failRate ? 500 : 200;   // 500: stored anyway, the sender can't know
+
+            wireBytes += body.length;
+            String json = new String(readAll(new GZIPInputStream(new java.io.ByteArrayInputStream(body))), StandardCharsets.UTF_8);
+            String id = ex.getRequestHeaders().getFirst("X-Batch-Id");
+            if (!batches.add(id)) { duplicates++; reply(ex, code); return; }
+            long t0 = Long.parseLong(field(json, "\"t0\":(\\d+)"));
+            long t = t0;
+            for (String dt : field(json, "\"dt\":\\[([^\\]]*)\\]").split(",")) {
+                t += Long.parseLong(dt);
+                if (!times.add(t)) badSamples++;
+                samples++;
+            }
+            reply(ex, code);
+        }
+
+        private static void reply(HttpExchange ex, int code) throws IOException {
+            byte[] ok = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(code, ok.length);
+            ex.getResponseBody().write(ok);
+            ex.close();
+        }
+
+        private static String field(String json, String regex) {
+            Matcher m = Pattern.compile(regex).matcher(json);
+            if (!m.find()) throw new IllegalStateException("missing " + regex);
+            return m.group(1);
+        }
+    }
+
+    // ===== Scenarios =====
+
+    public static void main(String[] args) throws Exception {
+        steady();
+        outage();
+        flaky();
+        restartWhileOffline();
+        Checks.exit();
+    }
+
+    private static TelemetryUplink.Config config(String url) {
+        TelemetryUplink.Config c = new TelemetryUplink.Config();
+        c.url = url;
+        c.batchSamples = 500;
+        c.batchMaxAgeMs = 200;
+        c.sampleEveryMs = 0;
+        c.backoffMinMs = 20;
+        c.backoffMaxMs = 300;
+        c.connectTimeoutMs = 1000;
+        c.readTimeoutMs = 1000;
+        return c;
+    }
+
+    // 50 Hz samples with realistic values; wall times are unique so the webhook can spot duplicates
+    private static void feed(TelemetryUplink up, long fromMs, int n) {
+        TelemetrySample s = new TelemetrySample();
+        Random r = new Random(fromMs);
+        for (int i = 0; i < n; i++) {
+            s.clear();
+            s.mask = TelemetrySample.GFORCE | TelemetrySample.TEMP | TelemetrySample.BAT | TelemetrySample.VOLT;
+            s.gforce = 1.0 + r.nextGaussian() * 0.05;
+            s.temp = 24.0 + i * 0.0001;
+            s.battery = 80;
+            s.volt = 3.9;
+            up.offer(i % 2, fromMs + i * 20L, s);
+        }
+    }
+
+    private static void steady() throws Exception {
+        Webhook w = new Webhook();
+        TelemetryUplink up = new TelemetryUplink(tempDir("steady"), config(w.url()));
+        up.start();
+        feed(up, 1_000_000, 20_000);
+        up.flush();
+        awaitDelivered(w, up, 20_000, 10_000);
+        up.stop(5000);
+        report("steady", w, up, 20_000);
+        Checks.check("steady: connections reused", w.clientPorts.size() <= 3);
+        Checks.check("steady: gzip+delta at most 25% of JSON", up.compressionRatio() < 0.25);
+        w.close();
+    }
+
+    private static void outage() throws Exception {
+        Webhook w = new Webhook();
+        TelemetryUplink up = new TelemetryUplink(tempDir("outage"), config(w.url()));
+        up.start();
+        w.down = true;
+        feed(up, 2_000_000, 10_000);
+        up.flush();
+        Thread.sleep(1500);
+        Checks.check("outage: nothing accepted while down", w.samples == 0);
+        w.down = false;
+        up.kick();
+        awaitDelivered(w, up, 10_000, 10_000);
+        up.stop(5000);
+        report("outage", w, up, 10_000);
+        w.close();
+    }
+
+    private static void flaky() throws Exception {
+        Webhook w = new Webhook();
+        w.failRate = 0.3;
+        TelemetryUplink up = new TelemetryUplink(tempDir("flaky"), config(w.url()));
+        up.start();
+        feed(up, 3_000_000, 15_000);
+        up.flush();
+        awaitDelivered(w, up, 15_000, 20_000);
+        up.stop(5000);
+        report("flaky", w, up, 15_000);
+        w.close();
+    }
+
+    // Server down, uplink stopped with everything still queued, new uplink on the same dir later
+    private static void restartWhileOffline() throws Exception {
+        Webhook w = new Webhook();
+        File dir = tempDir("restart");
+        w.down = true;
+        TelemetryUplink first = new TelemetryUplink(dir, config(w.url()));
+        first.start();
+        feed(first, 4_000_000, 7_321);
+        first.stop(5000);
+        Checks.check("restart: batches persisted", first.queuedBatches() > 0);
+
+        w.down = false;
+        TelemetryUplink second = new TelemetryUplink(dir, config(w.url()));
+        second.start();
+        awaitDelivered(w, second, 7_321, 10_000);
+        second.stop(5000);
+        report("restart", w, second, 7_321);
+        w.close();
+    }
+
+    // ===== Helpers =====
+
+    // Until the webhook has every sample and the uplink knows it (a stored batch may still be retried)
+    private static void awaitDelivered(Webhook w, TelemetryUplink up, int samples, long timeoutMs) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMs;
+        while (System.currentTimeMillis() < end) {
+            synchronized (w) { if (w.samples >= samples && up.queuedBatches() == 0) return; }
+            Thread.sleep(20);
+        }
+    }
+
+    private static void report(String name, Webhook w, TelemetryUplink up, int expected) {
+        synchronized (w) {
+            System.out.println(String.format(Locale.US,
+                    "%-8s delivered %d/%d, posts %d, dup batches %d, dup samples %d, connections %d, wire %.1f B/sample, gzip/json %.2f",
+                    name, w.samples, expected, w.posts, w.duplicates, w.badSamples, w.clientPorts.size(),
+                    w.samples == 0 ? 0 : (double) w.wireBytes / w.samples, up.compressionRatio()));
+            Checks.check(name + ": every sample delivered", w.samples == expected);
+            Checks.check(name + ": no sample twice", w.badSamples == 0);
+            Checks.check(name + ": queue drained", up.queuedBatches() == 0);
+        }
+    }
+
+
+    private static File tempDir(String name) throws IOException {
+        File d = File.createTempFile("uplink-" + name, "");
+        if (!d.delete() || !d.mkdirs()) throw new IOException("Cannot create " + d);
+        d.deleteOnExit();
+        return d;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int r;
+        while ((r = in.read(buf)) > 0) bos.write(buf, 0, r);
+        return bos.toByteArray();
+    }
+
+    private UplinkTestRunner() {}
+}